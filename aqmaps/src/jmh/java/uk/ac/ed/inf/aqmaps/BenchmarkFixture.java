@@ -0,0 +1,90 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import com.google.gson.JsonParser;
+import com.mapbox.geojson.Point;
+import com.mapbox.geojson.Polygon;
+
+/**
+ * Loads the map of a single day bundled with the benchmarks, so that they run without a server.
+ * The no-fly zones and the sensors are synthetic but have the size and layout of a real day.
+ */
+public class BenchmarkFixture {
+
+    private static final String DIRECTORY = "fixture/";
+
+    // The position where the drone starts on the bundled day
+    public static final Point START = Point.fromLngLat(-3.188396, 55.944425);
+
+    /**
+     * @param name the name of a bundled file
+     * @return stream of the file
+     */
+    private static InputStream open(String name) {
+
+        var input = BenchmarkFixture.class.getResourceAsStream(DIRECTORY + name);
+        if (input == null) {
+            throw new IllegalStateException("Missing benchmark fixture " + name);
+        }
+        return input;
+    }
+
+    /**
+     * @param name the name of a bundled file
+     * @return content of the file
+     */
+    private static String read(String name) {
+
+        try (var input = open(name)) {
+            return new String(input.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the no-fly zones together with the confinement area, as App loads them
+     */
+    public static ArrayList<Polygon> loadNoFlyZones() {
+
+        var noFlyZones = App.parsePolygons(read("no-fly-zones.geojson"));
+        noFlyZones.add(App.getConfinementArea());
+        return noFlyZones;
+    }
+
+    /**
+     * @return the sensors with their locations resolved from the bundled details of the words
+     */
+    public static ArrayList<AirQualitySensor> loadSensors() {
+
+        var details = new HashMap<String, String>();
+        for (var element : JsonParser.parseString(read("words.json")).getAsJsonArray()) {
+            details.put(element.getAsJsonObject().get("words").getAsString(), element.toString());
+        }
+        try {
+            return AirQualitySensor.loadList(open("air-quality-data.json"), location -> {
+                location.resolve(details.get(location.getWords()));
+                return CompletableFuture.completedFuture(null);
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the start position followed by the locations of the sensors
+     */
+    public static ArrayList<Point> loadPoints() {
+
+        var points = AirQualitySensor.toPoints(loadSensors());
+        points.add(0, START);
+        return points;
+    }
+
+}
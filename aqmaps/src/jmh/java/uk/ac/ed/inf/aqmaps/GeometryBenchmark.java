@@ -0,0 +1,87 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import com.mapbox.geojson.Point;
+import com.mapbox.geojson.Polygon;
+
+/**
+ * Measures the collision test of line segments against the no-fly zones, which the path search
+ * runs for every move it considers. Every benchmark tests the segments between all pairs of points
+ * of the bundled day and returns the number of segments that cross a no-fly zone.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GeometryBenchmark {
+
+    private ArrayList<Polygon> noFlyZones;
+    private ObstacleIndex obstacleIndex;
+    private Point[] starts;
+    private Point[] ends;
+
+    @Setup
+    public void setUp() {
+
+        this.noFlyZones = BenchmarkFixture.loadNoFlyZones();
+        this.obstacleIndex = new ObstacleIndex(this.noFlyZones);
+
+        var points = BenchmarkFixture.loadPoints();
+        var segmentCount = points.size() * (points.size() - 1) / 2;
+        this.starts = new Point[segmentCount];
+        this.ends = new Point[segmentCount];
+        var segment = 0;
+
+        for (int i = 0; i < points.size(); i++) {
+            for (int j = 0; j < i; j++) {
+                this.starts[segment] = points.get(i);
+                this.ends[segment] = points.get(j);
+                segment++;
+            }
+        }
+    }
+
+    /**
+     * Tests every segment against every polygon edge.
+     */
+    @Benchmark
+    public int lineIntersectPolygons() {
+
+        var intersecting = 0;
+        for (int i = 0; i < this.starts.length; i++) {
+            if (Utils2D.lineIntersectPolygons(this.starts[i], this.ends[i], this.noFlyZones)) {
+                intersecting++;
+            }
+        }
+        return intersecting;
+    }
+
+    /**
+     * Tests every segment against the edges near it, as the path search does.
+     */
+    @Benchmark
+    public int obstacleIndex() {
+
+        var intersecting = 0;
+        for (int i = 0; i < this.starts.length; i++) {
+            if (this.obstacleIndex.lineIntersects(this.starts[i], this.ends[i])) {
+                intersecting++;
+            }
+        }
+        return intersecting;
+    }
+
+}
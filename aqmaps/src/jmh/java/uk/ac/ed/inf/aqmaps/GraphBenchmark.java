@@ -0,0 +1,80 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import com.mapbox.geojson.Point;
+
+/**
+ * Measures building a graph of the bundled day and optimizing its visit order. The optimizations
+ * change the visit order, so each benchmark starts from a new graph over a precomputed distance
+ * matrix, which only costs allocating the initial visit order.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GraphBenchmark {
+
+    // The number of nearest nodes considered by the local search, the same as in Drone
+    private static final int NEIGHBOUR_COUNT = 10;
+    private static final int SWAP_TRIES = 100;
+
+    private ArrayList<Point> points;
+    private double[][] distances;
+
+    @Setup
+    public void setUp() {
+
+        this.points = BenchmarkFixture.loadPoints();
+        this.distances = new double[this.points.size()][this.points.size()];
+        for (int i = 0; i < this.points.size(); i++) {
+            for (int j = 0; j < this.points.size(); j++) {
+                this.distances[i][j] = Utils2D.distance(this.points.get(i), this.points.get(j));
+            }
+        }
+    }
+
+    @Benchmark
+    public Graph construct() {
+        return new Graph(this.points);
+    }
+
+    @Benchmark
+    public Graph toGreedyOrder() {
+
+        var graph = new Graph(this.distances);
+        graph.toGreedyOrder();
+        return graph;
+    }
+
+    @Benchmark
+    public Graph swapOptimizeOrder() {
+
+        var graph = new Graph(this.distances);
+        graph.toGreedyOrder();
+        graph.swapOptimizeOrder(SWAP_TRIES);
+        return graph;
+    }
+
+    @Benchmark
+    public Graph localSearchOptimizeOrder() {
+
+        var graph = new Graph(this.distances);
+        graph.toGreedyOrder();
+        graph.localSearchOptimizeOrder(NEIGHBOUR_COUNT);
+        return graph;
+    }
+
+}
@@ -0,0 +1,102 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import com.mapbox.geojson.Point;
+
+/**
+ * Measures the path search on representative legs of the bundled day: from the start position to
+ * the nearest sensor, between the pair of points at the median distance, between the farthest
+ * pair of points and between the farthest pair whose straight line crosses a no-fly zone. Each
+ * leg is searched with and without the occupancy grid that lets moves through free cells skip the
+ * exact collision tests.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PathBenchmark {
+
+    @Param({ "nearest", "median", "longest", "obstructed" })
+    public String leg;
+
+    @Param({ "false", "true" })
+    public boolean occupancyGrid;
+
+    private ObstacleIndex noFlyZones;
+    private SearchArena arena;
+    private Point start;
+    private Point target;
+
+    @Setup
+    public void setUp() {
+
+        this.noFlyZones = new ObstacleIndex(BenchmarkFixture.loadNoFlyZones());
+        this.arena = new SearchArena();
+        if (this.occupancyGrid) {
+            this.arena.setOccupancyGrid(new OccupancyGrid(this.noFlyZones, BenchmarkFixture.START,
+                    Drone.DEFAULT_OCCUPANCY_CELL_SIZE));
+        }
+        var points = BenchmarkFixture.loadPoints();
+
+        // Lists all pairs of points sorted by their distance
+        var pairs = new ArrayList<int[]>();
+        for (int i = 0; i < points.size(); i++) {
+            for (int j = 0; j < i; j++) {
+                pairs.add(new int[] { i, j });
+            }
+        }
+        pairs.sort((a, b) -> Double.compare(
+                Utils2D.distance(points.get(a[0]), points.get(a[1])),
+                Utils2D.distance(points.get(b[0]), points.get(b[1]))));
+
+        int[] chosen = null;
+        switch (this.leg) {
+        case "nearest":
+            for (var pair : pairs) {
+                if (pair[1] == 0) {
+                    chosen = pair;
+                    break;
+                }
+            }
+            break;
+        case "median":
+            chosen = pairs.get(pairs.size() / 2);
+            break;
+        case "longest":
+            chosen = pairs.get(pairs.size() - 1);
+            break;
+        case "obstructed":
+            for (var pair : pairs) {
+                if (this.noFlyZones.lineIntersects(points.get(pair[0]), points.get(pair[1]))) {
+                    chosen = pair;
+                }
+            }
+            break;
+        default:
+            throw new IllegalArgumentException("Unknown leg " + this.leg);
+        }
+        this.start = points.get(chosen[1]);
+        this.target = points.get(chosen[0]);
+    }
+
+    @Benchmark
+    public Path findPathToPoint() {
+        return Path.findPathToPoint(this.start, this.target, Drone.READING_RANGE,
+                Drone.MOVE_MODEL, this.noFlyZones, Drone.SEARCH_CELL_SIZE, this.arena);
+    }
+
+}
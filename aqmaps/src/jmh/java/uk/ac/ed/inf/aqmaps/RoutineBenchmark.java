@@ -0,0 +1,63 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the whole reading routine of the bundled day, from planning the visit order to
+ * returning to the start position, with each way of planning. A drone can fly only once, so a new
+ * one is created before every invocation. The flight path log is not kept.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RoutineBenchmark {
+
+    @Param({ "false", "true" })
+    public boolean flightCosts;
+
+    @Param({ "false", "true" })
+    public boolean visibilityGraph;
+
+    private ObstacleIndex noFlyZones;
+    private ArrayList<AirQualitySensor> sensors;
+    private Drone drone;
+
+    @Setup(Level.Trial)
+    public void loadFixture() {
+        this.noFlyZones = new ObstacleIndex(BenchmarkFixture.loadNoFlyZones());
+        this.sensors = BenchmarkFixture.loadSensors();
+    }
+
+    @Setup(Level.Invocation)
+    public void createDrone() {
+
+        this.drone = new Drone(BenchmarkFixture.START, this.noFlyZones, this.sensors);
+        this.drone.setFlightLog(new NullFlightLog());
+        this.drone.setUseFlightCosts(this.flightCosts);
+        this.drone.setUseVisibilityGraph(this.visibilityGraph);
+    }
+
+    @Benchmark
+    public int executeReadingRoutine() {
+
+        this.drone.executeReadingRoutine();
+        return this.drone.getMoveCount();
+    }
+
+}
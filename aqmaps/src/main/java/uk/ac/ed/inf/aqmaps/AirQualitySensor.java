@@ -1,8 +1,18 @@
 package uk.ac.ed.inf.aqmaps;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import com.google.gson.GsonBuilder;
-import com.google.gson.reflect.TypeToken;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import com.mapbox.geojson.Feature;
 import com.mapbox.geojson.Geometry;
 import com.mapbox.geojson.Point;
@@ -48,29 +58,59 @@ public class AirQualitySensor {
     
     /**
      * @param visited if true includes the reading representing pollution level
-     * @return point marker feature representing this sensor and its location
+     * @return properties of the point marker representing this sensor, in the order they appear
      */
-    public Feature toFeature(boolean visited) {
-        
-        var feature = Feature.fromGeometry((Geometry) this.getLocationAsPoint());
-        feature.addStringProperty("location", this.getLocation());
-        
+    public LinkedHashMap<String, String> getMarkerProperties(boolean visited) {
+
+        // The reading is only parsed if it is shown
+        var reading = visited && !this.hasLowBattery() ? this.getReading() : Double.NaN;
+        return markerProperties(this.getLocation(), visited, this.hasLowBattery(), reading);
+    }
+
+    /**
+     * @param location   the location of a sensor given in a what 3 words format
+     * @param visited    if true includes the reading representing pollution level
+     * @param lowBattery true if the battery of the sensor is low
+     * @param reading    the level of air pollution, only used if the sensor was visited and its
+     *                   battery is not low
+     * @return properties of the point marker representing the sensor, in the order they appear
+     */
+    static LinkedHashMap<String, String> markerProperties(String location, boolean visited,
+            boolean lowBattery, double reading) {
+
+        var properties = new LinkedHashMap<String, String>();
+        properties.put("location", location);
+
         if (visited) {
-            if (!this.hasLowBattery()) {
+            if (!lowBattery) {
                 // Battery is OK, visualize the reading
-                feature.addStringProperty("rgb-string", App.pollutionColor(this.getReading()));
-                feature.addStringProperty("marker-color", App.pollutionColor(this.getReading()));
-                feature.addStringProperty("marker-symbol", App.pollutionSymbol(this.getReading()));
+                properties.put("rgb-string", App.pollutionColor(reading));
+                properties.put("marker-color", App.pollutionColor(reading));
+                properties.put("marker-symbol", App.pollutionSymbol(reading));
             } else {
                 // Battery is low
-                feature.addStringProperty("rgb-string", "#000000");
-                feature.addStringProperty("marker-color", "#000000");
-                feature.addStringProperty("marker-symbol", "cross");
+                properties.put("rgb-string", "#000000");
+                properties.put("marker-color", "#000000");
+                properties.put("marker-symbol", "cross");
             }
         } else {
             // Sensor is not visited
-            feature.addStringProperty("rgb-string", "#aaaaaa");
-            feature.addStringProperty("marker-color", "#aaaaaa");
+            properties.put("rgb-string", "#aaaaaa");
+            properties.put("marker-color", "#aaaaaa");
+        }
+        return properties;
+    }
+
+    /**
+     * @param visited if true includes the reading representing pollution level
+     * @return point marker feature representing this sensor and its location
+     */
+    public Feature toFeature(boolean visited) {
+        
+        var feature = Feature.fromGeometry((Geometry) this.getLocationAsPoint());
+
+        for (var property : this.getMarkerProperties(visited).entrySet()) {
+            feature.addStringProperty(property.getKey(), property.getValue());
         }
         return feature;
     }
@@ -90,23 +130,93 @@ public class AirQualitySensor {
     }
 
     /**
-     * Loads a list of sensors from .json file on a server
+     * Reads a list of sensors in JSON format from a stream, passing each sensor on as soon as it is
+     * read, before the rest of the stream arrives. The locations of the sensors are not loaded.
      * 
-     * @param url  an URL address of the server
-     * @param port the port at which the connection to server is established
+     * @param input    the stream of the list of sensors, it is closed at the end
+     * @param consumer receives the sensors in the order of the list
+     * @throws IOException if the stream can not be read or is not a list of sensors
+     */
+    public static void readList(InputStream input, Consumer<AirQualitySensor> consumer)
+            throws IOException {
+
+        try (var reader = new JsonReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                var sensor = new AirQualitySensor();
+                reader.beginObject();
+
+                while (reader.hasNext()) {
+                    var name = reader.nextName();
+                    if (reader.peek() == JsonToken.NULL) {
+                        reader.nextNull();
+                    } else if (name.equals("location")) {
+                        sensor.location = new What3Words(reader.nextString());
+                    } else if (name.equals("battery")) {
+                        sensor.battery = reader.nextDouble();
+                    } else if (name.equals("reading")) {
+                        sensor.reading = reader.nextString();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+                consumer.accept(sensor);
+            }
+            reader.endArray();
+        }
+    }
+
+    /**
+     * Loads a list of sensors from .json file on a server. The list is read as it arrives and the
+     * location of each sensor starts loading as soon as the sensor is read, each distinct location
+     * only once.
+     * 
+     * @param url     an URL address of the server
+     * @param port    the port at which the connection to server is established
+     * @param metrics the metrics that receive the statistics of the requests, may be null
      * @return list of sensors obtained from the server
      */
-    public static ArrayList<AirQualitySensor> loadListFromURL(String url, String port) {
-        
-        // Uses the custom deserializer for location field which loads a What3Words object for
-        // each sensor
-        var gson = new GsonBuilder()
-                .registerTypeAdapter(What3Words.class, new W3WDeserializer(port)).create();
-        var jsonString = App.readStringFromURL(url);
-        var listType = new TypeToken<ArrayList<AirQualitySensor>>() {}.getType();
-        
-        ArrayList<AirQualitySensor> sensors = gson.fromJson(jsonString, listType);
-        
+    public static ArrayList<AirQualitySensor> loadListFromURL(String url, String port,
+            RunMetrics metrics) {
+
+        try {
+            return loadList(App.await(App.readStreamFromURLAsync(url, metrics)),
+                    location -> location.resolveAsync(port, metrics));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Reads a list of sensors from a stream and resolves their locations. The location of each
+     * sensor starts resolving as soon as the sensor is read, each distinct location only once.
+     * 
+     * @param input    the stream of the list of sensors, it is closed at the end
+     * @param resolver starts resolving a location, the returned future completes once it is done
+     * @return list of sensors with resolved locations
+     * @throws IOException if the stream can not be read or is not a list of sensors
+     */
+    static ArrayList<AirQualitySensor> loadList(InputStream input,
+            Function<What3Words, CompletableFuture<Void>> resolver) throws IOException {
+
+        var sensors = new ArrayList<AirQualitySensor>();
+        // Sensors at the same location share a single request
+        var requests = new HashMap<String, CompletableFuture<Void>>();
+        var resolved = new HashMap<String, What3Words>();
+
+        readList(input, sensor -> {
+            var words = sensor.location.getWords();
+            if (!requests.containsKey(words)) {
+                requests.put(words, resolver.apply(sensor.location));
+                resolved.put(words, sensor.location);
+            } else {
+                sensor.location = resolved.get(words);
+            }
+            sensors.add(sensor);
+        });
+        App.await(CompletableFuture.allOf(requests.values().toArray(new CompletableFuture<?>[0])));
+
         return sensors;
     }
     
@@ -3,11 +3,20 @@ package uk.ac.ed.inf.aqmaps;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
+import java.net.http.HttpResponse.BodyHandler;
 import java.net.http.HttpResponse.BodyHandlers;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 
 import com.mapbox.geojson.FeatureCollection;
 import com.mapbox.geojson.Point;
@@ -26,40 +35,212 @@ public class App {
     private static final double BOUND_LONGITUDE_EAST = -3.184319;
     private static final double BOUND_LONGITUDE_WEST = -3.192473;
 
+    // Limits of requests to the server
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(5);
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(10);
+    private static final int MAX_REQUEST_ATTEMPTS = 3;
+    private static final long RETRY_DELAY_MILLIS = 200;
+
+    // A single client keeps its connections to the server open for all requests
+    private static final HttpClient HTTP_CLIENT = HttpClient.newBuilder()
+            .connectTimeout(CONNECT_TIMEOUT).build();
+
+    // Names of optional system properties that configure the drone
+    private static final String FLIGHT_COSTS_PROPERTY = "aqmaps.flightCosts";
+    private static final String THREADS_PROPERTY = "aqmaps.threads";
+    private static final String TOUR_STARTS_PROPERTY = "aqmaps.tourStarts";
+    private static final String EXACT_TIME_LIMIT_PROPERTY = "aqmaps.exactTimeLimit";
+    private static final String VISIBILITY_GRAPH_PROPERTY = "aqmaps.visibilityGraph";
+    private static final String LEG_CACHE_PROPERTY = "aqmaps.legCache";
+    private static final String LEG_CACHE_SIZE_PROPERTY = "aqmaps.legCacheSize";
+    private static final String RESOURCE_CACHE_PROPERTY = "aqmaps.resourceCache";
+    private static final String VALIDATE_RESOURCES_PROPERTY = "aqmaps.validateResources";
+    private static final String CONFINEMENT_AREA_PROPERTY = "aqmaps.confinementArea";
+    private static final String LEG_EXPANSIONS_PROPERTY = "aqmaps.legExpansions";
+    private static final String LEG_TIME_LIMIT_PROPERTY = "aqmaps.legTimeLimit";
+    private static final String OCCUPANCY_CELL_SIZE_PROPERTY = "aqmaps.occupancyCellSize";
+    private static final String OCCUPANCY_CACHE_PROPERTY = "aqmaps.occupancyCache";
+    // The number of legs kept in the leg cache unless configured otherwise
+    private static final int DEFAULT_LEG_CACHE_SIZE = 100000;
+    // The budget of a search for a leg unless configured otherwise, far above what a reachable
+    // sensor takes. There is no time limit unless configured, so that runs are reproducible
+    private static final int DEFAULT_LEG_EXPANSIONS = 50000;
+    private static final long DEFAULT_LEG_TIME_LIMIT = 0;
+
+    // Local copies of resources of the server that never change, null if they are not kept
+    private static final ResourceCache RESOURCE_CACHE = System.getProperty(
+            RESOURCE_CACHE_PROPERTY) == null ? null
+                    : new ResourceCache(new File(System.getProperty(RESOURCE_CACHE_PROPERTY)),
+                            Boolean.getBoolean(VALIDATE_RESOURCES_PROPERTY));
+
     /**
-     * Connects to and copies the content of a URL address.
+     * Connects to and copies the content of a URL address, retrying a few times if the server does
+     * not respond or fails.
      * 
      * @param url an URL address of the server
      * @return string representing the content of the address
+     * @throws UncheckedIOException if the content can not be obtained
      */
     public static String readStringFromURL(String url) {
 
-        // Create a new HttpClient with default settings.
-        var client = HttpClient.newHttpClient();
-        // HttpClient assumes that it is a GET request by default.
-        var request = HttpRequest.newBuilder().uri(URI.create(url)).build();
+        return await(readStringFromURLAsync(url, null));
+    }
+
+    /**
+     * Starts copying the content of a URL address that never changes, taking it from the local
+     * resource cache if it is kept there.
+     * 
+     * @param url     an URL address of the server
+     * @param metrics the metrics that receive the statistics of the requests, may be null
+     * @return future completed with the content of the address, or exceptionally with an
+     *         UncheckedIOException if the content can not be obtained
+     */
+    public static CompletableFuture<String> readResourceFromURLAsync(String url,
+            RunMetrics metrics) {
+
+        if (RESOURCE_CACHE == null) {
+            return readStringFromURLAsync(url, metrics);
+        }
+        return RESOURCE_CACHE.readStringAsync(url, () -> readStringFromURLAsync(url, metrics));
+    }
+
+    /**
+     * Waits for a future loading data from the server.
+     * 
+     * @param <T>    the type of the loaded data
+     * @param future the future of the data
+     * @return the loaded data
+     * @throws UncheckedIOException if the data can not be obtained
+     */
+    public static <T> T await(CompletableFuture<T> future) {
 
         try {
-            var response = client.send(request, BodyHandlers.ofString());
-            return (response.body());
-            
-        } catch (Exception e) {
-            System.out.println("Fatal error: Unable to connect to " + url + ".");
-            e.printStackTrace();
-            System.exit(1);
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw (UncheckedIOException) e.getCause();
+            }
+            throw new UncheckedIOException(new IOException(e.getCause()));
         }
-        return null;
+    }
+
+    /**
+     * Starts copying the content of a URL address without waiting for it. Any number of requests
+     * can be in progress at the same time over the single shared client.
+     * 
+     * @param url     an URL address of the server
+     * @param metrics the metrics that receive the statistics of the requests, may be null
+     * @return future completed with the content of the address, or exceptionally with an
+     *         UncheckedIOException if the content can not be obtained
+     */
+    public static CompletableFuture<String> readStringFromURLAsync(String url,
+            RunMetrics metrics) {
+
+        // HttpClient assumes that it is a GET request by default.
+        var request = HttpRequest.newBuilder().uri(URI.create(url)).timeout(REQUEST_TIMEOUT)
+                .build();
+        return sendWithRetries(request, BodyHandlers.ofString(), 1, metrics);
+    }
+
+    /**
+     * Starts reading the content of a URL address as a stream without waiting for it. The stream is
+     * available as soon as the server starts responding, so its content can be processed while it
+     * is still arriving.
+     * 
+     * @param url     an URL address of the server
+     * @param metrics the metrics that receive the statistics of the requests, may be null
+     * @return future completed with the stream of the content of the address, which has to be
+     *         closed, or exceptionally with an UncheckedIOException if the server does not respond
+     */
+    public static CompletableFuture<InputStream> readStreamFromURLAsync(String url,
+            RunMetrics metrics) {
+
+        var request = HttpRequest.newBuilder().uri(URI.create(url)).timeout(REQUEST_TIMEOUT)
+                .build();
+        return sendWithRetries(request, BodyHandlers.ofInputStream(), 1, metrics);
+    }
+
+    /**
+     * Sends a request and retries it after a delay if it fails in a way that may be temporary,
+     * which is a connection problem, a timeout or an error of the server.
+     * 
+     * @param <T>         the type of the body of the response
+     * @param request     the request
+     * @param bodyHandler the handler of the body of the response
+     * @param attempt     the number of the attempt, starting from 1
+     * @param metrics     the metrics that receive the statistics of the requests, may be null
+     * @return future completed with the body of the response
+     */
+    private static <T> CompletableFuture<T> sendWithRetries(HttpRequest request,
+            BodyHandler<T> bodyHandler, int attempt, RunMetrics metrics) {
+
+        var event = new PlannerEvents.HttpRequest();
+        event.begin();
+        var startTime = System.nanoTime();
+
+        return HTTP_CLIENT.sendAsync(request, bodyHandler).handle((response, error) -> {
+            // Bodies read as a stream have only arrived up to the headers by now
+            var succeeded = error == null && response.statusCode() / 100 == 2;
+            if (metrics != null) {
+                metrics.recordRequest(succeeded, System.nanoTime() - startTime);
+            }
+            event.end();
+            if (event.shouldCommit()) {
+                event.url = request.uri().toString();
+                event.attempt = attempt;
+                event.status = error == null ? response.statusCode() : -1;
+                event.commit();
+            }
+            if (succeeded) {
+                return CompletableFuture.completedFuture(response.body());
+            }
+            // The body of a failed response is not needed
+            if (error == null && response.body() instanceof Closeable) {
+                try {
+                    ((Closeable) response.body()).close();
+                } catch (IOException e) {
+                    // Nothing more can be done about it
+                }
+            }
+            var failure = error != null
+                    ? new IOException("Unable to connect to " + request.uri() + ".", error)
+                    : new IOException("Server responded to " + request.uri() + " with status "
+                            + response.statusCode() + ".");
+
+            // Requests the server rejected would be rejected again
+            var temporary = error != null || response.statusCode() / 100 == 5;
+            if (!temporary || attempt == MAX_REQUEST_ATTEMPTS) {
+                return CompletableFuture.<T>failedFuture(new UncheckedIOException(failure));
+            }
+            var delayed = CompletableFuture.delayedExecutor(RETRY_DELAY_MILLIS * attempt,
+                    TimeUnit.MILLISECONDS);
+            return CompletableFuture.supplyAsync(() -> request, delayed)
+                    .thenCompose(retried -> sendWithRetries(retried, bodyHandler, attempt + 1,
+                            metrics));
+        }).thenCompose(result -> result);
     }
 
     /**
      * Loads a list of polygons from a .geojson file on a server.
      * 
-     * @param url an URL address of the server
+     * @param url     an URL address of the server
+     * @param metrics the metrics that receive the statistics of the requests, may be null
      * @return list of polygons obtained from the server
      */
-    private static ArrayList<Polygon> loadPolygonsFromURL(String url) {
+    private static ArrayList<Polygon> loadPolygonsFromURL(String url, RunMetrics metrics) {
+
+        // The no-fly zones never change
+        return parsePolygons(await(readResourceFromURLAsync(url, metrics)));
+    }
+
+    /**
+     * Reads a list of polygons from a feature collection in GeoJSON format.
+     * 
+     * @param geoJsonString the feature collection of polygons
+     * @return list of the polygons
+     */
+    static ArrayList<Polygon> parsePolygons(String geoJsonString) {
 
-        var geoJsonString = readStringFromURL(url);
         var featureCollection = FeatureCollection.fromJson(geoJsonString);
         var features = featureCollection.features();
         var polygons = new ArrayList<Polygon>();
@@ -76,20 +257,14 @@ public class App {
      * 
      * @param fileName the name including extension of the file that is to be created
      * @param content  the text that will be written to the file
+     * @throws IOException if the file can not be created or written
      */
-    private static void createAndWriteFile(String fileName, String content) {
+    private static void createAndWriteFile(String fileName, String content) throws IOException {
 
-        try {
-            var file = new File(fileName);
-            file.createNewFile();
-            var writer = new FileWriter(fileName);
+        var file = new File(fileName);
+        file.createNewFile();
+        try (var writer = new FileWriter(fileName)) {
             writer.write(content);
-            writer.close();
-
-        } catch (Exception e) {
-            System.out.println("Error in createAndWriteFile.");
-            e.printStackTrace();
-            System.exit(1);
         }
     }
 
@@ -146,7 +321,89 @@ public class App {
     }
     
     /**
-     * Loads data from server, puts it in the right format and forwards it to the drone.
+     * Loads the no-fly zones from server and adds the confinement area to them.
+     * 
+     * @param port    the port at which the connection to server is established
+     * @param metrics the metrics that receive the statistics of the requests, may be null
+     * @return polygons that the drone should never cross
+     */
+    public static ArrayList<Polygon> loadNoFlyZones(String port, RunMetrics metrics) {
+
+        // Loads the no fly zones from server
+        var noFlyZonesUrl = "http://localhost:" + port + "/buildings/no-fly-zones.geojson";
+        var noflyZones = loadPolygonsFromURL(noFlyZonesUrl, metrics);
+        
+        // The drone will never cross the borders of any polygon in no-fly zones, if started inside,
+        // it will never leave the polygon
+        noflyZones.add(getConfinementArea());
+
+        return noflyZones;
+    }
+
+    /**
+     * Gives the bounds of the area the drone is confined to. The constant bounds can be replaced by
+     * a system property listing the west, south, east and north bound separated by commas.
+     * 
+     * @return the west, south, east and north bound of the confinement area
+     */
+    static double[] getConfinementBounds() {
+
+        var property = System.getProperty(CONFINEMENT_AREA_PROPERTY);
+        if (property == null) {
+            return new double[] { BOUND_LONGITUDE_WEST, BOUND_LATITUDE_SOUTH, BOUND_LONGITUDE_EAST,
+                    BOUND_LATITUDE_NORTH };
+        }
+        var parts = property.split(",");
+        if (parts.length != 4) {
+            throw new IllegalArgumentException(CONFINEMENT_AREA_PROPERTY
+                    + " should list the west, south, east and north bound: " + property);
+        }
+        var bounds = new double[4];
+        for (int i = 0; i < bounds.length; i++) {
+            bounds[i] = Double.parseDouble(parts[i].trim());
+        }
+        if (bounds[0] >= bounds[2] || bounds[1] >= bounds[3]) {
+            throw new IllegalArgumentException(CONFINEMENT_AREA_PROPERTY + " is empty: "
+                    + property);
+        }
+        return bounds;
+    }
+
+    /**
+     * @return polygon bounding the area the drone is confined to
+     */
+    static Polygon getConfinementArea() {
+
+        var bounds = getConfinementBounds();
+        var boundPoints = new ArrayList<Point>();
+        boundPoints.add(Point.fromLngLat(bounds[0], bounds[3]));
+        boundPoints.add(Point.fromLngLat(bounds[2], bounds[3]));
+        boundPoints.add(Point.fromLngLat(bounds[2], bounds[1]));
+        boundPoints.add(Point.fromLngLat(bounds[0], bounds[1]));
+        return Polygon.fromLngLats(List.of(boundPoints));
+    }
+
+    /**
+     * Loads the sensors that are to be visited on a given day from server.
+     * 
+     * @param day   the day for which the data is obtained from server
+     * @param month the month for which the data is obtained from server
+     * @param year  the year for which the data is obtained from server
+     * @param port    the port at which the connection to server is established
+     * @param metrics the metrics that receive the statistics of the requests, may be null
+     * @return list of sensors
+     */
+    public static ArrayList<AirQualitySensor> loadSensors(String day, String month, String year,
+            String port, RunMetrics metrics) {
+
+        var sensorsUrl = "http://localhost:" + port + "/maps/" + year + "/" + month + "/" + day
+                + "/air-quality-data.json";
+        return AirQualitySensor.loadListFromURL(sensorsUrl, port, metrics);
+    }
+
+    /**
+     * Loads data from server, puts it in the right format and forwards it to the drone. The
+     * requests made for it are recorded in the metrics of the drone.
      * 
      * @param day            the day for which the data is obtained from server
      * @param month          the month for which the data is obtained from server
@@ -162,62 +419,243 @@ public class App {
         
         // The starting location of the drone
         var start = Point.fromLngLat(startLongitude, startLatitude);
-        
-        // Creates the confinement area polygon
-        var boundPoints = new ArrayList<Point>();
-        boundPoints.add(Point.fromLngLat(BOUND_LONGITUDE_WEST, BOUND_LATITUDE_NORTH));
-        boundPoints.add(Point.fromLngLat(BOUND_LONGITUDE_EAST, BOUND_LATITUDE_NORTH));
-        boundPoints.add(Point.fromLngLat(BOUND_LONGITUDE_EAST, BOUND_LATITUDE_SOUTH));
-        boundPoints.add(Point.fromLngLat(BOUND_LONGITUDE_WEST, BOUND_LATITUDE_SOUTH));
-        var confinementArea = (Polygon.fromLngLats(List.of(boundPoints)));
-        
-        // Loads the no fly zones from server
-        var noFlyZonesUrl = "http://localhost:" + port + "/buildings/no-fly-zones.geojson";
-        var noflyZones = loadPolygonsFromURL(noFlyZonesUrl);
-        
-        // The drone will never cross the borders of any polygon in no-fly zones, if started inside,
-        // it will never leave the polygon
-        noflyZones.add(confinementArea);
-
-        var sensorsUrl = "http://localhost:" + port + "/maps/" + year + "/" + month + "/" + day
-                + "/air-quality-data.json";
-        var sensors = AirQualitySensor.loadListFromURL(sensorsUrl, port);
+        var metrics = new RunMetrics();
+        var noflyZones = loadNoFlyZones(port, metrics);
+        var sensors = loadSensors(day, month, year, port, metrics);
         
         // Pass the data to the drone
         var drone = new Drone(start, noflyZones, sensors);
+        drone.setMetrics(metrics);
 
         return drone;
     }
 
+    /**
+     * Loads the leg cache named by the system property, if there is one.
+     * 
+     * @return the leg cache, null if none is configured
+     */
+    public static LegCache loadLegCache() {
+
+        if (System.getProperty(LEG_CACHE_PROPERTY) == null) {
+            return null;
+        }
+        return LegCache.load(new File(System.getProperty(LEG_CACHE_PROPERTY)),
+                Integer.getInteger(LEG_CACHE_SIZE_PROPERTY, DEFAULT_LEG_CACHE_SIZE));
+    }
+
+    /**
+     * Saves the leg cache for the next runs. Failing to do so does not affect the output, so it is
+     * only reported.
+     * 
+     * @param legCache the leg cache, may be null
+     */
+    public static void saveLegCache(LegCache legCache) {
+
+        if (legCache == null) {
+            return;
+        }
+        try {
+            legCache.save();
+        } catch (Exception e) {
+            System.out.println("Error: Unable to save the leg cache.");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return the side length of the cells of the occupancy grid given by the system property, the
+     *         default of the drone if there is none
+     */
+    private static double getOccupancyCellSize() {
+
+        var property = System.getProperty(OCCUPANCY_CELL_SIZE_PROPERTY);
+        return property == null ? Drone.DEFAULT_OCCUPANCY_CELL_SIZE : Double.parseDouble(property);
+    }
+
+    /**
+     * Builds the occupancy grid of the no-fly zones at a start position as configured by the
+     * system properties, so that it can be shared by the drones of many routines.
+     * 
+     * @param noFlyZones the index of the no-fly zones
+     * @param start      the starting point of the drones
+     * @return the occupancy grid
+     */
+    public static OccupancyGrid buildOccupancyGrid(ObstacleIndex noFlyZones, Point start) {
+
+        var cellSize = getOccupancyCellSize();
+        var occupancyCache = System.getProperty(OCCUPANCY_CACHE_PROPERTY);
+        return occupancyCache == null ? new OccupancyGrid(noFlyZones, start, cellSize)
+                : OccupancyGrid.loadOrBuild(new File(occupancyCache), noFlyZones, start, cellSize);
+    }
+
+    /**
+     * Applies the optional behaviour given by system properties to a drone.
+     * 
+     * @param drone    the drone that is configured
+     * @param seed     the seed of the randomized visit order optimization
+     * @param legCache the leg cache used by the drone, may be null
+     */
+    public static void configureDrone(Drone drone, long seed, LegCache legCache) {
+        configureDrone(drone, seed, legCache, 1);
+    }
+
+    /**
+     * Applies the optional behaviour given by system properties to a drone whose routine runs at
+     * the same time as others. Unless configured, the available processors are divided between
+     * the planners of the routines, so that they do not start more threads than there are
+     * processors.
+     * 
+     * @param drone       the drone that is configured
+     * @param seed        the seed of the randomized visit order optimization
+     * @param legCache    the leg cache used by the drone, may be null
+     * @param concurrency the number of routines that run at the same time
+     */
+    public static void configureDrone(Drone drone, long seed, LegCache legCache,
+            int concurrency) {
+
+        drone.setUseFlightCosts(Boolean.getBoolean(FLIGHT_COSTS_PROPERTY));
+        drone.setPlannerThreads(Integer.getInteger(THREADS_PROPERTY,
+                Math.max(1, Runtime.getRuntime().availableProcessors() / concurrency)));
+        drone.setMultiStart(seed, Integer.getInteger(TOUR_STARTS_PROPERTY, 1));
+        drone.setExactTimeLimit(Long.getLong(EXACT_TIME_LIMIT_PROPERTY, 0));
+        drone.setUseVisibilityGraph(Boolean.getBoolean(VISIBILITY_GRAPH_PROPERTY));
+        drone.setLegCache(legCache);
+        drone.setLegBudget(Integer.getInteger(LEG_EXPANSIONS_PROPERTY, DEFAULT_LEG_EXPANSIONS),
+                Long.getLong(LEG_TIME_LIMIT_PROPERTY, DEFAULT_LEG_TIME_LIMIT));
+        var occupancyCache = System.getProperty(OCCUPANCY_CACHE_PROPERTY);
+        drone.setOccupancyGrid(getOccupancyCellSize(),
+                occupancyCache == null ? null : new File(occupancyCache));
+    }
+
+    /**
+     * Creates the flight path log output file of a routine on a given day, to which a drone writes
+     * its moves while it flies.
+     * 
+     * @param day   the day of the routine
+     * @param month the month of the routine
+     * @param year  the year of the routine
+     * @return the flight path log, it has to be closed once the routine is finished
+     * @throws IOException if the file can not be created
+     */
+    public static FileFlightLog openFlightLog(String day, String month, String year)
+            throws IOException {
+        return new FileFlightLog(new File(flightPathFileName(day, month, year)));
+    }
+
+    /**
+     * @param day   the day of the routine
+     * @param month the month of the routine
+     * @param year  the year of the routine
+     * @return the name of the flight path log output file of a routine on a given day
+     */
+    private static String flightPathFileName(String day, String month, String year) {
+        return "flightpath-" + day + "-" + month + "-" + year + ".txt";
+    }
+
+    /**
+     * Writes the summary of the work done by a drone that finished its routine on a given day and
+     * of the requests made to load its data as a JSON file.
+     * 
+     * @param drone the drone that finished its routine
+     * @param day   the day of the routine
+     * @param month the month of the routine
+     * @param year  the year of the routine
+     * @throws IOException if the file can not be written
+     */
+    public static void writeMetrics(Drone drone, String day, String month, String year)
+            throws IOException {
+
+        var file = new File("metrics-" + day + "-" + month + "-" + year + ".json");
+        drone.getMetrics().writeSummary(file);
+    }
+
+    /**
+     * Creates the flight path log, unless it was already written while flying, the
+     * visualization of the flight path and sensor readings and the summary of the metrics of a
+     * drone that finished its routine on a given day.
+     * 
+     * @param drone the drone that finished its routine
+     * @param day   the day of the routine
+     * @param month the month of the routine
+     * @param year  the year of the routine
+     * @throws IOException if the flight path log or the visualization can not be written
+     */
+    public static void writeOutputFiles(Drone drone, String day, String month, String year)
+            throws IOException {
+
+        // Creates the flight path log output file if the log was kept in memory
+        var flightPathLog = drone.getFlightPathLog();
+        if (flightPathLog != null) {
+            createAndWriteFile(flightPathFileName(day, month, year), flightPathLog);
+        }
+        
+        // Creates a visualization of flight path and sensor readings as a geojson file, written
+        // feature by feature
+        var fileName = "readings-" + day + "-" + month + "-" + year + ".geojson";
+        try (var writer = new GeoJsonWriter(new File(fileName))) {
+            drone.writeFeatures(writer);
+        }
+
+        // The metrics only describe the run, so the outputs are kept even if they can not be
+        // written
+        try {
+            writeMetrics(drone, day, month, year);
+        } catch (IOException e) {
+            System.out.println("Error: Unable to write the metrics of the run.");
+            e.printStackTrace();
+        }
+    }
+
     public static void main(String[] args) {
         var day = args[0];
         var month = args[1];
         var year = args[2];
         var startLatitude = Double.parseDouble(args[3]);
         var startLongitude = Double.parseDouble(args[4]);
-        // var seed = args[5];
+        var seed = Long.parseLong(args[5]);
         var port = args[6];
         
         // Initializes and feeds data to the drone
-        var drone = initiateDrone(day, month, year, startLatitude, startLongitude, port);
-        // Starts the routine
-        drone.executeReadingRoutine();
+        Drone drone = null;
+        try {
+            drone = initiateDrone(day, month, year, startLatitude, startLongitude, port);
+        } catch (UncheckedIOException e) {
+            System.out.println("Fatal error: " + e.getCause().getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        }
+        var legCache = loadLegCache();
+        configureDrone(drone, seed, legCache);
+        // Starts the routine, the flight path log is written to its file while the drone flies
+        try (var flightLog = openFlightLog(day, month, year)) {
+            drone.setFlightLog(flightLog);
+            drone.executeReadingRoutine();
+        } catch (IOException | UncheckedIOException e) {
+            System.out.println("Error: Unable to write the flight path log.");
+            e.printStackTrace();
+            System.exit(1);
+        }
+        // Keeps the legs of this run for the next ones
+        saveLegCache(legCache);
         System.out.println("Finished routine on " + day + "/" + month + "/" + year + " with "
                 + drone.getMoveCount() + " moves");
-        
-        // Creates the flight path log output file
-        var flightPathLog = drone.getFlightPathLog();
-        var fileName = "flightpath-" + day + "-" + month + "-" + year + ".txt";
-        createAndWriteFile(fileName, flightPathLog);
-        
-        // Creates a visualization of flight path and sensor readings as a geojson file
-        var feature = drone.getFlightPathAsFeature();
-        var features = drone.getReadingsAsFeatures();
-        features.add(feature);
-        var featureCollection = FeatureCollection.fromFeatures(features);
-        var jsonString = featureCollection.toJson();
-        fileName = "readings-" + day + "-" + month + "-" + year + ".geojson";
-        createAndWriteFile(fileName, jsonString);
+        if (drone.getReadSensorCount() < drone.getSensorCount()) {
+            System.out.println("Read " + drone.getReadSensorCount() + " of "
+                    + drone.getSensorCount() + " sensors, the others could not be reached");
+        }
+        if (!Double.isNaN(drone.getTourOptimalityGap())) {
+            System.out.printf("Heuristic visit order is %s%.2f%% longer than the shortest one%n",
+                    drone.isTourProvenOptimal() ? "" : "at most ",
+                    100 * drone.getTourOptimalityGap());
+        }
+        try {
+            writeOutputFiles(drone, day, month, year);
+        } catch (IOException e) {
+            System.out.println("Error: Unable to write the output files.");
+            e.printStackTrace();
+            System.exit(1);
+        }
     }
 
 }
@@ -0,0 +1,173 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import com.mapbox.geojson.Point;
+
+/**
+ * Runs the reading routine for every day of a range of dates. The no-fly zones are loaded and
+ * indexed once, and their occupancy grid built once, and shared by the drones of all days, which
+ * are planned concurrently by a fixed number of threads. The available processors are divided
+ * between the planners of the days planned at the same time. Every day produces the same output files as a single run of App, and a
+ * summary of the move counts, running times and search work of all days is written at the end.
+ */
+public class BatchRunner {
+
+    // Name of an optional system property giving the number of days planned at the same time
+    private static final String BATCH_THREADS_PROPERTY = "aqmaps.batchThreads";
+
+    /**
+     * The outcome of the routine on a single day.
+     */
+    private static class DayResult {
+
+        private LocalDate date;
+        // -1 if the routine failed
+        private int moveCount;
+        private long milliseconds;
+        // Work of the path searches of the day, which explains most of its running time
+        private long nodesExpanded;
+        private long collisionTests;
+        private double searchMilliseconds;
+    }
+
+    /**
+     * Loads the sensors of a day, executes the routine and writes its output files.
+     *
+     * @param date       the date of the day
+     * @param start      the starting point of the drone
+     * @param noFlyZones the index of the no-fly zones shared by all days
+     * @param grid       the occupancy grid of the no-fly zones shared by all days
+     * @param seed       the seed of the randomized visit order optimization
+     * @param port       the port at which the connection to server is established
+     * @param legCache   the leg cache shared by all days, may be null
+     * @param threads    the number of days planned at the same time
+     * @return the outcome of the routine
+     */
+    private static DayResult runDay(LocalDate date, Point start, ObstacleIndex noFlyZones,
+            OccupancyGrid grid, long seed, String port, LegCache legCache, int threads) {
+
+        var day = String.format("%02d", date.getDayOfMonth());
+        var month = String.format("%02d", date.getMonthValue());
+        var year = String.valueOf(date.getYear());
+        var startTime = System.nanoTime();
+        var result = new DayResult();
+        result.date = date;
+
+        try {
+            // The requests of the day are recorded with the rest of its work
+            var metrics = new RunMetrics();
+            var sensors = App.loadSensors(day, month, year, port, metrics);
+            var drone = new Drone(start, noFlyZones, sensors);
+            drone.setMetrics(metrics);
+            App.configureDrone(drone, seed, legCache, threads);
+            drone.setOccupancyGrid(grid);
+            // The flight path log is written to its file while the drone flies
+            try (var flightLog = App.openFlightLog(day, month, year)) {
+                drone.setFlightLog(flightLog);
+                drone.executeReadingRoutine();
+            }
+            App.writeOutputFiles(drone, day, month, year);
+            result.moveCount = drone.getMoveCount();
+            result.nodesExpanded = drone.getMetrics().getNodesExpanded();
+            result.collisionTests = drone.getMetrics().getCollisionTests();
+            result.searchMilliseconds = drone.getMetrics().getSearchMillis();
+            System.out.println("Finished routine on " + day + "/" + month + "/" + year + " with "
+                    + drone.getMoveCount() + " moves");
+
+        } catch (Exception e) {
+            System.out.println("Error: Routine on " + day + "/" + month + "/" + year
+                    + " failed.");
+            e.printStackTrace();
+            result.moveCount = -1;
+        }
+        result.milliseconds = (System.nanoTime() - startTime) / 1000000;
+        return result;
+    }
+
+    /**
+     * Writes the move count, running time and work of the path searches of every day as comma
+     * separated values.
+     *
+     * @param fileName the name of the summary file
+     * @param results  the outcomes of the days in the order of their dates
+     * @throws IOException if the file can not be written
+     */
+    private static void writeSummary(String fileName, ArrayList<DayResult> results)
+            throws IOException {
+
+        try (var writer = new FileWriter(fileName)) {
+            writer.write("date,moves,milliseconds,nodesExpanded,collisionTests,"
+                    + "searchMilliseconds\n");
+            for (var result : results) {
+                writer.write(result.date + "," + result.moveCount + "," + result.milliseconds
+                        + "," + result.nodesExpanded + "," + result.collisionTests + ","
+                        + String.format(Locale.ROOT, "%.3f", result.searchMilliseconds) + "\n");
+            }
+        }
+    }
+
+    /**
+     * Arguments: first date, last date (both YYYY-MM-DD, inclusive), start latitude, start
+     * longitude, seed and port.
+     */
+    public static void main(String[] args) throws Exception {
+
+        var firstDate = LocalDate.parse(args[0]);
+        var lastDate = LocalDate.parse(args[1]);
+        var start = Point.fromLngLat(Double.parseDouble(args[3]), Double.parseDouble(args[2]));
+        var seed = Long.parseLong(args[4]);
+        var port = args[5];
+        var threads = Integer.getInteger(BATCH_THREADS_PROPERTY,
+                Runtime.getRuntime().availableProcessors());
+        var startTime = System.nanoTime();
+
+        // Data that is the same every day is loaded once and never modified
+        // The request for the no-fly zones belongs to no single day, so it is not recorded
+        var noFlyZones = new ObstacleIndex(App.loadNoFlyZones(port, null));
+        var grid = App.buildOccupancyGrid(noFlyZones, start);
+        var legCache = App.loadLegCache();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        var results = new ArrayList<DayResult>();
+
+        try {
+            var futures = new ArrayList<Future<DayResult>>();
+            for (var date = firstDate; !date.isAfter(lastDate); date = date.plusDays(1)) {
+                var day = date;
+                futures.add(executor.submit(() -> runDay(day, start, noFlyZones, grid, seed,
+                        port, legCache, threads)));
+            }
+            for (var future : futures) {
+                results.add(future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        App.saveLegCache(legCache);
+
+        var moveSum = 0;
+        var finished = 0;
+        for (var result : results) {
+            if (result.moveCount >= 0) {
+                moveSum += result.moveCount;
+                finished++;
+            }
+        }
+        var fileName = "summary-" + firstDate + "-" + lastDate + ".csv";
+        writeSummary(fileName, results);
+
+        System.out.println("Finished " + finished + " of " + results.size() + " days in "
+                + (System.nanoTime() - startTime) / 1000000 + " milliseconds");
+        if (finished > 0) {
+            System.out.println("Average move count: " + (double) moveSum / finished);
+        }
+    }
+
+}
@@ -0,0 +1,127 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Stands in for the server of the data the drone needs, so that the drone can be run offline. It
+ * serves the files of a local directory laid out the same way as the server, such as one written
+ * by ScenarioGenerator, but only at the three routes the drone requests: the sensors of a day, the
+ * details of what 3 words and the no-fly zones. The server listens on the loopback address only
+ * and can be embedded in other programs or run on its own.
+ */
+public class DataServer implements Closeable {
+
+    // The routes of the server, any other request is answered as not found
+    private static final Pattern ROUTES = Pattern.compile(
+            "/maps/\\d{4}/\\d{2}/\\d{2}/air-quality-data\\.json"
+                    + "|/words/[^/]+/[^/]+/[^/]+/details\\.json"
+                    + "|/buildings/no-fly-zones\\.geojson");
+
+    private File root;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /**
+     * Creates the server without starting it.
+     *
+     * @param root    the directory whose files are served
+     * @param port    the port at which the server listens, 0 to choose any free port
+     * @param threads the number of threads answering requests
+     * @throws IOException if the port can not be bound
+     */
+    public DataServer(File root, int port, int threads) throws IOException {
+
+        this.root = root.getAbsoluteFile();
+        this.server = HttpServer.create(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.executor = Executors.newFixedThreadPool(threads);
+        this.server.setExecutor(this.executor);
+        this.server.createContext("/", this::handle);
+    }
+
+    /**
+     * Starts answering requests in the background.
+     */
+    public void start() {
+        this.server.start();
+    }
+
+    /**
+     * @return the port at which the server listens
+     */
+    public int getPort() {
+        return this.server.getAddress().getPort();
+    }
+
+    /**
+     * Answers a request with the file at its path, if the path is one of the routes of the server.
+     *
+     * @param exchange the request and its response
+     * @throws IOException if the response can not be sent
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+
+        try {
+            var method = exchange.getRequestMethod();
+            if (!method.equals("GET") && !method.equals("HEAD")) {
+                exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            var path = exchange.getRequestURI().getPath();
+            var root = this.root.toPath().normalize();
+            var file = root.resolve(path.substring(1)).normalize();
+
+            // Only the routes of the server are served, never anything outside the directory
+            if (!ROUTES.matcher(path).matches() || !file.startsWith(root)
+                    || !Files.isRegularFile(file)) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            if (method.equals("HEAD")) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            var content = Files.readAllBytes(file);
+            exchange.sendResponseHeaders(200, content.length);
+            exchange.getResponseBody().write(content);
+
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Stops the server, requests that are being answered are dropped.
+     */
+    @Override
+    public void close() {
+
+        this.server.stop(0);
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * Arguments: the directory whose files are served and the port. Serves until stopped.
+     */
+    public static void main(String[] args) throws IOException {
+
+        var root = new File(args[0]);
+        var port = Integer.parseInt(args[1]);
+        var server = new DataServer(root, port, Runtime.getRuntime().availableProcessors());
+        server.start();
+        System.out.println("Serving " + root + " at http://localhost:" + server.getPort());
+    }
+
+}
@@ -1,6 +1,9 @@
 package uk.ac.ed.inf.aqmaps;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
 import com.mapbox.geojson.Feature;
 import com.mapbox.geojson.Point;
 import com.mapbox.geojson.Polygon;
@@ -10,43 +13,236 @@ import com.mapbox.geojson.Polygon;
  */
 public class Drone {
 
-    // Constants for movement of the drone
+    // Constants for movement of the drone, those that are not private are also used by the
+    // benchmarks
     private static final int MAX_MOVE_COUNT = 150;
     private static final double MOVE_LENGTH = 0.0003;
-    private static final double READING_RANGE = 0.0002;
+    static final double READING_RANGE = 0.0002;
     private static final double START_LOCATION_RANGE = 0.0001;
+    // Side length of the lattice cells in which the path search treats points as identical
+    static final double SEARCH_CELL_SIZE = 0.00002;
     private static final int DIRECTION_STEP = 10;
-    private static final ArrayList<Integer> ALLOWED_MOVE_DIRECTIONS;
-    static {
-        ALLOWED_MOVE_DIRECTIONS = new ArrayList<Integer>();
-        var direction = 0;
+    static final MoveModel MOVE_MODEL = new MoveModel(MOVE_LENGTH, DIRECTION_STEP);
+    // The number of nearest sensors considered for each sensor when optimizing the visit order
+    private static final int TOUR_NEIGHBOUR_COUNT = 10;
+    // Distance by which the corners of no-fly zones are avoided when planning on the visibility
+    // graph
+    private static final double VISIBILITY_MARGIN = 0.00005;
+    // Side length of the cells of the occupancy grid that rejects unreachable targets and lets
+    // moves through free space skip the test against the no-fly zones
+    static final double DEFAULT_OCCUPANCY_CELL_SIZE = 0.0001;
+    // Cost assigned to legs for which the path search finds no path
+    private static final double UNREACHABLE_LEG_COST = 10 * MAX_MOVE_COUNT;
 
-        while (direction < 360) {
-            ALLOWED_MOVE_DIRECTIONS.add(direction);
-            direction += DIRECTION_STEP;
-        }
-    }
-
-    private Point position;
+    // The current position of the drone
+    private double longitude;
+    private double latitude;
     private int moveCount;
     private Path flightPath;
-    private String flightPathLog;
-    private ArrayList<Polygon> noFlyZones;
-    private ArrayList<AirQualitySensor> sensors;
-    private ArrayList<AirQualitySensor> visitedSensors;
+    // Receives the flight path log as the drone flies
+    private FlightLog flightLog;
+    private ObstacleIndex noFlyZones;
+    // Storage reused by every path search this drone makes
+    private SearchArena searchArena;
+    // The start position and the sensors with their visited state, indexed by node
+    private SensorRegistry registry;
+    // If true the visit order is optimized for the number of moves instead of straight line
+    // distances
+    private boolean useFlightCosts;
+    // The number of threads planning legs between all pairs of sensors and optimizing visit orders
+    private int plannerThreads;
+    // The number of starts of the visit order optimization and the seed of their random choices
+    private int tourStarts;
+    private long seed;
+    // Time in milliseconds given to finding the provably shortest visit order, 0 to not try
+    private long exactTimeLimit;
+    // The outcome of the last attempt to find the provably shortest visit order
+    private boolean tourProvenOptimal;
+    private double tourOptimalityGap;
+    // Paths of legs flown or planned before, may be null
+    private LegCache legCache;
+    // Shortest paths around the no-fly zones, null if legs are searched for directly
+    private VisibilityGraph visibilityGraph;
+    // Receives the statistics of the planning and of the routine
+    private RunMetrics metrics;
+    // The resolution of the occupancy grid and the directory it is saved in, null if it is not
+    private double occupancyCellSize;
+    private File occupancyCache;
+    // A grid built before the routine and shared with other drones, null to build one
+    private OccupancyGrid occupancyGrid;
 
-    public Drone(Point startPosition, ArrayList<Polygon> noFlyZones,
+    /**
+     * @param startPosition the position where the drone starts and should return to
+     * @param noFlyZones    the index of polygons the drone should not cross, which can be shared by
+     *                      any number of drones
+     * @param sensors       the sensors the drone should visit
+     */
+    public Drone(Point startPosition, ObstacleIndex noFlyZones,
             ArrayList<AirQualitySensor> sensors) {
 
-        this.position = startPosition;
+        this.longitude = startPosition.longitude();
+        this.latitude = startPosition.latitude();
         this.moveCount = 0;
         this.flightPath = new Path(startPosition);
-        this.flightPathLog = "";
+        this.flightLog = new MemoryFlightLog();
         this.noFlyZones = noFlyZones;
-        this.sensors = sensors;
-        this.visitedSensors = new ArrayList<AirQualitySensor>();
+        this.searchArena = new SearchArena();
+        this.metrics = new RunMetrics();
+        this.searchArena.setMetrics(this.metrics);
+        this.occupancyCellSize = DEFAULT_OCCUPANCY_CELL_SIZE;
+        this.registry = new SensorRegistry(startPosition, sensors);
+        this.useFlightCosts = false;
+        this.plannerThreads = Runtime.getRuntime().availableProcessors();
+        this.tourStarts = 1;
+        this.exactTimeLimit = 0;
+        this.tourOptimalityGap = Double.NaN;
+    }
+
+    public Drone(Point startPosition, ArrayList<Polygon> noFlyZones,
+            ArrayList<AirQualitySensor> sensors) {
+        // The no-fly zones are indexed once so that the path search can check moves against them
+        // quickly
+        this(startPosition, new ObstacleIndex(noFlyZones), sensors);
+    }
+
+    /**
+     * @param useFlightCosts if true the order in which the sensors are visited minimizes the number
+     *                       of moves found by the path search between them, otherwise it minimizes
+     *                       their straight line distances
+     */
+    public void setUseFlightCosts(boolean useFlightCosts) {
+        this.useFlightCosts = useFlightCosts;
+    }
+
+    /**
+     * @param plannerThreads the number of threads planning the legs between all pairs of sensors
+     *                       when flight costs are used and optimizing the visit order from multiple
+     *                       starts
+     */
+    public void setPlannerThreads(int plannerThreads) {
+        this.plannerThreads = plannerThreads;
+    }
+
+    /**
+     * Sets up optimization of the visit order from multiple randomized starts. The resulting order
+     * is the same for the same seed regardless of the number of threads.
+     *
+     * @param seed   the seed of the random choices
+     * @param starts the number of starts, 1 optimizes only the greedy visit order
+     */
+    public void setMultiStart(long seed, int starts) {
+        this.seed = seed;
+        this.tourStarts = starts;
+    }
+
+    /**
+     * @param exactTimeLimit the time in milliseconds given to finding the provably shortest visit
+     *                       order after the heuristic optimization, 0 to keep the heuristic result
+     */
+    public void setExactTimeLimit(long exactTimeLimit) {
+        this.exactTimeLimit = exactTimeLimit;
+    }
+
+    /**
+     * @param cellSize the side length of the cells of the occupancy grid of the no-fly zones
+     * @param cache    the directory where occupancy grids are saved and shared by all runs on the
+     *                 same map, null to build the grid every time
+     */
+    public void setOccupancyGrid(double cellSize, File cache) {
+        this.occupancyCellSize = cellSize;
+        this.occupancyCache = cache;
+    }
+
+    /**
+     * @param occupancyGrid the occupancy grid of the no-fly zones built at the start position of
+     *                      the drone, which is not modified and can be shared by any number of
+     *                      drones, null to build one for the routine
+     */
+    public void setOccupancyGrid(OccupancyGrid occupancyGrid) {
+        this.occupancyGrid = occupancyGrid;
+    }
+
+    /**
+     * Limits the work of every search for a leg, so that a sensor that can not be reached does not
+     * hold up the routine. A search that runs out of budget is treated as finding no path, except
+     * on the way back to the start position, where the drone gets as close as the search did.
+     *
+     * @param maxExpansions the number of nodes a search may expand
+     * @param maxMillis     the time in milliseconds a search may take, 0 or less for no limit
+     */
+    public void setLegBudget(int maxExpansions, long maxMillis) {
+
+        // Without a time limit the result of a search does not depend on the speed of the machine
+        var maxNanos = maxMillis > 0 ? TimeUnit.MILLISECONDS.toNanos(maxMillis) : Long.MAX_VALUE;
+        this.searchArena.setBudget(maxExpansions, maxNanos);
+    }
+
+    /**
+     * @return true if the visit order was proven to be the shortest one, false otherwise
+     */
+    public boolean isTourProvenOptimal() {
+        return this.tourProvenOptimal;
+    }
+
+    /**
+     * @return how much longer the visit order found by the heuristic optimization is than the
+     *         shortest one as a fraction of the shortest one, only an upper bound if the visit
+     *         order was not proven to be the shortest, NaN if the shortest one was not searched for
+     *         or no bound on its length was proven
+     */
+    public double getTourOptimalityGap() {
+        return this.tourOptimalityGap;
+    }
+
+    /**
+     * @param useVisibilityGraph if true legs follow the shortest paths around the corners of the
+     *                           no-fly zones and the visit order minimizes their lengths, otherwise
+     *                           legs are searched for directly
+     */
+    public void setUseVisibilityGraph(boolean useVisibilityGraph) {
+        this.visibilityGraph = useVisibilityGraph
+                ? new VisibilityGraph(this.noFlyZones, VISIBILITY_MARGIN)
+                : null;
+    }
+
+    /**
+     * @param legCache the cache of paths of legs flown or planned before, which is used instead of
+     *                 searching for the same legs again, may be null
+     */
+    public void setLegCache(LegCache legCache) {
+        this.legCache = legCache;
     }
     
+    /**
+     * @return the metrics that receive the statistics of the planning and of the routine
+     */
+    public RunMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * @param metrics the metrics that receive the statistics of the planning and of the routine,
+     *                which can be shared by any number of drones
+     */
+    public void setMetrics(RunMetrics metrics) {
+        this.metrics = metrics;
+        this.searchArena.setMetrics(metrics);
+    }
+
+    /**
+     * @return the number of sensors this drone should visit
+     */
+    public int getSensorCount() {
+        return this.registry.getNodeCount() - 1;
+    }
+
+    /**
+     * @return the number of sensors this drone has read so far
+     */
+    public int getReadSensorCount() {
+        return this.registry.getVisitedCount();
+    }
+
     /**
      * @return the number of moves this drone has done so far
      */
@@ -55,10 +251,19 @@ public class Drone {
     }
 
     /**
-     * @return the flight path loq that describes the actions of this drone so far
+     * @param flightLog the flight path log that describes the actions of this drone from now on,
+     *                  by default it is kept in memory
+     */
+    public void setFlightLog(FlightLog flightLog) {
+        this.flightLog = flightLog;
+    }
+
+    /**
+     * @return the flight path loq that describes the actions of this drone so far, null if it is
+     *         not kept in memory
      */
     public String getFlightPathLog() {
-        return this.flightPathLog;
+        return this.flightLog instanceof MemoryFlightLog ? this.flightLog.toString() : null;
     }
     
     /**
@@ -74,32 +279,45 @@ public class Drone {
     public ArrayList<Feature> getReadingsAsFeatures() {
         var features = new ArrayList<Feature>();
 
-        for (AirQualitySensor sensor : this.sensors) {
-            var feature = sensor.toFeature(this.visitedSensors.contains(sensor));
+        for (int node = 1; node < this.registry.getNodeCount(); node++) {
+            var feature = this.registry.getSensor(node).toFeature(this.registry.isVisited(node));
             features.add(feature);
         }
         return features;
     }
 
+    /**
+     * Writes the features representing sensors and their reading values followed by the feature
+     * representing the current flight path, in the same order as getReadingsAsFeatures and
+     * getFlightPathAsFeature, straight from the coordinates kept by this drone.
+     *
+     * @param writer the writer of the feature collection the features belong to
+     * @throws IOException if the features can not be written
+     */
+    public void writeFeatures(GeoJsonWriter writer) throws IOException {
+
+        for (int node = 1; node < this.registry.getNodeCount(); node++) {
+            writer.writePoint(this.registry.getLongitude(node), this.registry.getLatitude(node),
+                    this.registry.getMarkerProperties(node));
+        }
+        this.flightPath.writeFeature(writer);
+    }
+
     /**
      * Reads a sensor within a reading range and marks it as visited.
      *
-     * @param sensor the sensor that is to be read
+     * @param node the node of the sensor that is to be read
      * @return true if read is successful, false otherwise
      */
-    private boolean readSensor(AirQualitySensor sensor) {
+    private boolean readSensor(int node) {
         
         // Check if this drone is in the reading range of the sensor
-        if (Utils2D.distance(this.position, sensor.getLocationAsPoint()) < READING_RANGE) {
-            // Simulates obtaining the reading data by adding the sensor as a whole object together
-            // including the reading value inside to a list of visited sensors. Assumes the value
-            // was not accessible up to this point
-            this.flightPathLog += "," + sensor.getLocation() + "\n";
-            this.visitedSensors.add(sensor);
-            
-            if (!sensor.hasLowBattery()) {
-                sensor.getReading();
-            }
+        if (Utils2D.distance(this.longitude, this.latitude, this.registry.getLongitude(node),
+                this.registry.getLatitude(node)) < READING_RANGE) {
+            // Simulates obtaining the reading data by marking the sensor as visited in the
+            // registry, which takes its reading value only now
+            this.flightLog.logSensor(this.registry.getSensor(node).getLocation());
+            this.registry.markVisited(node);
             return true;
         }
         return false;
@@ -114,17 +332,19 @@ public class Drone {
      */
     private boolean move(int direction) {
 
-        if (!ALLOWED_MOVE_DIRECTIONS.contains(direction)) {
+        if (!MOVE_MODEL.isAllowed(direction)) {
             return false;
         }
         if (this.moveCount < MAX_MOVE_COUNT) {
             // Commits to making the move, updates log and position
             this.moveCount += 1;
-            this.flightPathLog += this.moveCount + "," + this.position.longitude() + ","
-                    + this.position.latitude() + "," + direction;
-            this.position = Utils2D.movePoint(this.position, MOVE_LENGTH, direction);
-            this.flightPathLog += "," + this.position.longitude() + "," + this.position.latitude();
-            this.flightPath.addMove(this.position, direction);
+            var longitude = this.longitude;
+            var latitude = this.latitude;
+            this.longitude = Utils2D.moveLongitude(this.longitude, MOVE_LENGTH, direction);
+            this.latitude = Utils2D.moveLatitude(this.latitude, MOVE_LENGTH, direction);
+            this.flightLog.logMove(this.moveCount, longitude, latitude, direction, this.longitude,
+                    this.latitude);
+            this.flightPath.addMove(this.longitude, this.latitude, direction);
             return true;
         }
         return false;
@@ -149,7 +369,7 @@ public class Drone {
             }
             // Only the last move of the path will reach a sensor
             if (i < path.getMoveDirections().size() - 1) {
-                this.flightPathLog += "," + null + "\n";
+                this.flightLog.logSensor(null);
             }
             i++;
         }
@@ -159,28 +379,51 @@ public class Drone {
     /**
      * Moves the drone to a target point within a given range.
      *
-     * @param target the point that the drone should reach
-     * @param range  the range around the target within which the drone should end
+     * @param target     the point that the drone should reach
+     * @param range      the range around the target within which the drone should end
+     * @param bestEffort if true and the search runs out of budget, the drone flies as close to the
+     *                   target as the search got
      * @return true if the drone reaches the target, false otherwise
      */
-    private boolean moveToPoint(Point target, double range) {
+    private boolean moveToPoint(Point target, double range, boolean bestEffort) {
 
-        var path = Path.findPathToPoint(this.position, target, range, MOVE_LENGTH,
-                ALLOWED_MOVE_DIRECTIONS, this.noFlyZones);
+        var position = Point.fromLngLat(this.longitude, this.latitude);
+        Path path;
+        if (this.visibilityGraph != null) {
+            path = this.visibilityGraph.findPathToPoint(position, target, range, MOVE_LENGTH,
+                    MOVE_MODEL, SEARCH_CELL_SIZE, this.searchArena);
+        } else if (this.legCache != null) {
+            path = this.legCache.findPathToPoint(position, target, range, MOVE_MODEL,
+                    this.noFlyZones, SEARCH_CELL_SIZE, this.searchArena);
+        } else {
+            path = Path.findPathToPoint(position, target, range, MOVE_MODEL, this.noFlyZones,
+                    SEARCH_CELL_SIZE, this.searchArena);
+        }
+        if (path == null && bestEffort) {
+            // The part of the search that ran out of budget has to start here to be flown
+            var partialPath = Path.getPartialPath(this.searchArena);
+            if (partialPath != null && partialPath.getStartPoint().equals(position)
+                    && !partialPath.getMoveDirections().isEmpty() && this.move(partialPath)) {
+                // No sensor is read at the end of the partial path
+                this.flightLog.logSensor(null);
+            }
+            return false;
+        }
         return this.move(path);
     }
 
     /**
      * Moves the drone to the sensors location to make a reading.
      *
-     * @param sensor the sensor that the drone should visit and read
+     * @param node the node of the sensor that the drone should visit and read
      * @return true if the sensor was reached and read, false otherwise
      */
-    private boolean visitSensor(AirQualitySensor sensor) {
+    private boolean visitSensor(int node) {
         
         // if the drone successfully moves to the sensor it can read it
-        if (this.moveToPoint(sensor.getLocationAsPoint(), READING_RANGE)) {
-            return this.readSensor(sensor);
+        // A sensor that can not be reached is skipped, flying towards it would only waste moves
+        if (this.moveToPoint(this.registry.getPoint(node), READING_RANGE, false)) {
+            return this.readSensor(node);
         }
         return false;
     }
@@ -192,13 +435,60 @@ public class Drone {
      */
     private boolean returnToStartPosition() {
 
-        if (this.moveToPoint(this.flightPath.getStartPoint(), START_LOCATION_RANGE)) {
-            this.flightPathLog += "," + null + "\n";
+        if (this.moveToPoint(this.flightPath.getStartPoint(), START_LOCATION_RANGE, true)) {
+            this.flightLog.logSensor(null);
             return true;
         }
         return false;
     }
 
+    /**
+     * Plans the legs between every pair of points concurrently and computes the number of moves
+     * needed to fly between them. The paths themselves are not kept, the drone searches for each
+     * leg again from wherever it stopped to read the previous sensor.
+     *
+     * @param points the points between which the drone flies, the first one is the start position
+     * @return matrix of costs, cost[x][y] is the number of moves between the points x and y
+     */
+    private double[][] computeFlightCosts(ArrayList<Point> points) {
+
+        var ranges = new double[points.size()];
+        for (int i = 0; i < ranges.length; i++) {
+            // Legs to the first point return the drone to its start position
+            ranges[i] = i == 0 ? START_LOCATION_RANGE : READING_RANGE;
+        }
+        var planner = new LegPlanner(MOVE_MODEL, this.noFlyZones, SEARCH_CELL_SIZE,
+                this.plannerThreads, this.legCache);
+        planner.setSearchSettings(this.searchArena);
+        return planner.planAllPairs(points, ranges).toSymmetricCostMatrix(UNREACHABLE_LEG_COST);
+    }
+
+    /**
+     * Computes the lengths of the shortest paths around the no-fly zones between every pair of
+     * points.
+     *
+     * @param points the points between which the drone flies
+     * @return matrix of distances, distance[x][y] is the length of the shortest path between the
+     *         points x and y, UNREACHABLE_LEG_COST if there is none
+     */
+    private double[][] computeShortestDistances(ArrayList<Point> points) {
+
+        var distances = new double[points.size()][points.size()];
+
+        for (int i = 0; i < points.size(); i++) {
+            for (int j = 0; j < i; j++) {
+                var distance = this.visibilityGraph.shortestDistance(points.get(i),
+                        points.get(j));
+                if (Double.isInfinite(distance)) {
+                    distance = UNREACHABLE_LEG_COST;
+                }
+                distances[i][j] = distance;
+                distances[j][i] = distance;
+            }
+        }
+        return distances;
+    }
+
     /**
      * Tries to visit and collect readings from all the sensors.The order in which the sensors are
      * visited is optimized to possibly achieve lower move count. After that the drone tries to
@@ -206,24 +496,87 @@ public class Drone {
      */
     public void executeReadingRoutine() {
 
-        var points = AirQualitySensor.toPoints(sensors);
-        // Adding the start position of the drone to the beginning of the list makes it the start
-        // of the visit route produced by Graph class
-        points.add(0, this.position);
+        var routineEvent = new PlannerEvents.Routine();
+        routineEvent.begin();
+        var routineStart = System.nanoTime();
+
+        // Precomputed once for the routine, before any leg is searched for
+        var start = this.flightPath.getStartPoint();
+        if (this.occupancyGrid != null) {
+            this.searchArena.setOccupancyGrid(this.occupancyGrid);
+        } else {
+            this.searchArena.setOccupancyGrid(this.occupancyCache == null
+                    ? new OccupancyGrid(this.noFlyZones, start, this.occupancyCellSize)
+                    : OccupancyGrid.loadOrBuild(this.occupancyCache, this.noFlyZones, start,
+                            this.occupancyCellSize));
+        }
+
+        // The start position of the drone is the first node, which makes it the start of the
+        // visit route produced by Graph class
+        var points = this.registry.getPoints();
 
         // Determine optimized order in which to visit the sensors based on their straight line
-        // distances
-        var graph = new Graph(points);
+        // distances, the lengths of the shortest paths around no-fly zones or the number of moves
+        // between them
+        Graph graph;
+        if (this.useFlightCosts) {
+            graph = new Graph(this.computeFlightCosts(points));
+        } else if (this.visibilityGraph != null) {
+            graph = new Graph(this.computeShortestDistances(points));
+        } else {
+            graph = new Graph(this.registry);
+        }
+        var tourEvent = new PlannerEvents.TourOptimization();
+        tourEvent.begin();
+        var tourStart = System.nanoTime();
+
         graph.toGreedyOrder();
-        graph.swapOptimizeOrder(30);
+        if (this.tourStarts > 1) {
+            graph.multiStartOptimizeOrder(this.seed, this.tourStarts, this.plannerThreads,
+                    TOUR_NEIGHBOUR_COUNT);
+        } else {
+            graph.localSearchOptimizeOrder(TOUR_NEIGHBOUR_COUNT);
+        }
+        if (this.exactTimeLimit > 0) {
+            var heuristicLength = graph.getVisitOrderLength();
+            this.tourProvenOptimal = graph.exactOptimizeOrder(this.exactTimeLimit,
+                    this.plannerThreads);
+            // Without a proven bound nothing is known about the gap
+            this.tourOptimalityGap = graph.getLowerBound() > 0
+                    ? heuristicLength / graph.getLowerBound() - 1
+                    : Double.NaN;
+        }
         var visitOrder = graph.getVisitOrder();
-        
+
+        this.metrics.recordTourOptimization(graph.getImprovementPasses(), graph.getMovesApplied(),
+                System.nanoTime() - tourStart);
+        tourEvent.end();
+        if (tourEvent.shouldCommit()) {
+            tourEvent.nodes = visitOrder.length;
+            tourEvent.improvementPasses = graph.getImprovementPasses();
+            tourEvent.movesApplied = graph.getMovesApplied();
+            tourEvent.length = graph.getVisitOrderLength();
+            tourEvent.commit();
+        }
+
         // Visit sensors in order determined by Graph class
         for (int i = 1; i < visitOrder.length; i++) {
-            this.visitSensor(this.sensors.get(visitOrder[i] - 1));
+            this.visitSensor(visitOrder[i]);
         }
         // Complete the cycle by returning back to starting area
         this.returnToStartPosition();
+
+        this.metrics.recordRoutine(this.registry.getNodeCount() - 1,
+                this.registry.getVisitedCount(), this.noFlyZones.getEdgeCount(), this.moveCount,
+                System.nanoTime() - routineStart);
+        routineEvent.end();
+        if (routineEvent.shouldCommit()) {
+            routineEvent.sensors = this.registry.getNodeCount() - 1;
+            routineEvent.sensorsRead = this.registry.getVisitedCount();
+            routineEvent.noFlyZoneEdges = this.noFlyZones.getEdgeCount();
+            routineEvent.moves = this.moveCount;
+            routineEvent.commit();
+        }
     }
 
 }
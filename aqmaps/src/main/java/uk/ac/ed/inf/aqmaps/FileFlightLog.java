@@ -0,0 +1,78 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes the flight path log to a file while the drone flies. Each part of a line is formatted to
+ * a reused builder and copied through a reused array to a buffered writer, so logging allocates
+ * nothing and its cost grows linearly with the number of moves.
+ */
+public class FileFlightLog implements FlightLog {
+
+    private Writer writer;
+    private StringBuilder line;
+    private char[] characters;
+
+    /**
+     * @param file the file the log is written to, it is replaced if it exists
+     * @throws IOException if the file can not be created
+     */
+    public FileFlightLog(File file) throws IOException {
+
+        this.writer = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+        this.line = new StringBuilder();
+        this.characters = new char[0];
+    }
+
+    /**
+     * Writes the content of the builder and clears it.
+     */
+    private void flushLine() {
+
+        var length = this.line.length();
+        if (this.characters.length < length) {
+            this.characters = new char[2 * length];
+        }
+        this.line.getChars(0, length, this.characters, 0);
+        this.line.setLength(0);
+
+        try {
+            this.writer.write(this.characters, 0, length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void logMove(int moveNumber, double longitude, double latitude, int direction,
+            double newLongitude, double newLatitude) {
+
+        FlightLog.appendMove(this.line, moveNumber, longitude, latitude, direction, newLongitude,
+                newLatitude);
+        this.flushLine();
+    }
+
+    @Override
+    public void logSensor(String location) {
+
+        FlightLog.appendSensor(this.line, location);
+        this.flushLine();
+    }
+
+    /**
+     * Writes the rest of the log to the file and closes it.
+     */
+    @Override
+    public void close() throws IOException {
+        this.writer.close();
+    }
+
+}
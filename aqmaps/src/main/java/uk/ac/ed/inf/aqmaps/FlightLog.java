@@ -0,0 +1,64 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.io.Closeable;
+
+/**
+ * Receives the flight path log of a drone as it flies. Every move is logged as a line of comma
+ * separated values: the number of the move, the longitude and latitude before the move, the
+ * direction of the move, the longitude and latitude after the move and the location of the sensor
+ * read after the move, or null if no sensor was read. The move and the sensor are logged
+ * separately, since the sensor is only known once the move is made.
+ */
+public interface FlightLog extends Closeable {
+
+    /**
+     * Logs the first part of the line of a move.
+     *
+     * @param moveNumber   the number of the move, starting from 1
+     * @param longitude    the longitude before the move
+     * @param latitude     the latitude before the move
+     * @param direction    the direction of the move
+     * @param newLongitude the longitude after the move
+     * @param newLatitude  the latitude after the move
+     */
+    void logMove(int moveNumber, double longitude, double latitude, int direction,
+            double newLongitude, double newLatitude);
+
+    /**
+     * Logs the end of the line of a move.
+     *
+     * @param location the location of the sensor read after the move, null if none was read
+     */
+    void logSensor(String location);
+
+    /**
+     * Formats the first part of the line of a move. Appending numbers to a string builder does not
+     * allocate any objects.
+     *
+     * @param builder      the builder the text is appended to
+     * @param moveNumber   the number of the move, starting from 1
+     * @param longitude    the longitude before the move
+     * @param latitude     the latitude before the move
+     * @param direction    the direction of the move
+     * @param newLongitude the longitude after the move
+     * @param newLatitude  the latitude after the move
+     */
+    static void appendMove(StringBuilder builder, int moveNumber, double longitude,
+            double latitude, int direction, double newLongitude, double newLatitude) {
+
+        builder.append(moveNumber).append(',').append(longitude).append(',').append(latitude)
+                .append(',').append(direction).append(',').append(newLongitude).append(',')
+                .append(newLatitude);
+    }
+
+    /**
+     * Formats the end of the line of a move.
+     *
+     * @param builder  the builder the text is appended to
+     * @param location the location of the sensor read after the move, null if none was read
+     */
+    static void appendSensor(StringBuilder builder, String location) {
+        builder.append(',').append(location).append('\n');
+    }
+
+}
@@ -0,0 +1,167 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonIOException;
+import com.google.gson.stream.JsonWriter;
+import com.mapbox.geojson.Feature;
+import com.mapbox.geojson.GeometryAdapterFactory;
+import com.mapbox.geojson.gson.GeoJsonAdapterFactory;
+import com.mapbox.geojson.utils.GeoJsonUtils;
+
+/**
+ * Writes a feature collection in GeoJSON format to a file one feature at a time, so the collection
+ * never has to be kept in memory as a whole. Features can be written either from plain coordinates
+ * or from existing feature objects. The output is the same as FeatureCollection.toJson would give
+ * for the same features, including the rounding of coordinates.
+ */
+public class GeoJsonWriter implements Closeable {
+
+    // Serializes feature objects the same way as FeatureCollection.toJson does
+    private static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapterFactory(GeoJsonAdapterFactory.create())
+            .registerTypeAdapterFactory(GeometryAdapterFactory.create()).create();
+
+    private JsonWriter writer;
+
+    /**
+     * Starts the feature collection.
+     *
+     * @param file the file the collection is written to, it is replaced if it exists
+     * @throws IOException if the file can not be created
+     */
+    public GeoJsonWriter(File file) throws IOException {
+
+        this.writer = new JsonWriter(new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)));
+        this.writer.setHtmlSafe(true);
+        this.writer.beginObject();
+        this.writer.name("type").value("FeatureCollection");
+        this.writer.name("features").beginArray();
+    }
+
+    /**
+     * Writes a point feature.
+     *
+     * @param longitude  the longitude of the point
+     * @param latitude   the latitude of the point
+     * @param properties the string properties of the feature in the order they are written
+     * @throws IOException if the file can not be written
+     */
+    public void writePoint(double longitude, double latitude, Map<String, String> properties)
+            throws IOException {
+
+        this.beginFeature("Point");
+        this.writeCoordinate(longitude, latitude);
+        this.endFeature(properties);
+    }
+
+    /**
+     * Starts a line string feature, its points are written by writeCoordinate and it is finished
+     * by endLineString.
+     *
+     * @throws IOException if the file can not be written
+     */
+    public void beginLineString() throws IOException {
+
+        this.beginFeature("LineString");
+        this.writer.beginArray();
+    }
+
+    /**
+     * Writes a coordinate pair of the geometry of the current feature.
+     *
+     * @param longitude the longitude of the point
+     * @param latitude  the latitude of the point
+     * @throws IOException if the file can not be written
+     */
+    public void writeCoordinate(double longitude, double latitude) throws IOException {
+
+        this.writer.beginArray();
+        this.writer.value(GeoJsonUtils.trim(longitude));
+        this.writer.value(GeoJsonUtils.trim(latitude));
+        this.writer.endArray();
+    }
+
+    /**
+     * Finishes a line string feature.
+     *
+     * @param properties the string properties of the feature in the order they are written
+     * @throws IOException if the file can not be written
+     */
+    public void endLineString(Map<String, String> properties) throws IOException {
+
+        this.writer.endArray();
+        this.endFeature(properties);
+    }
+
+    /**
+     * Writes an existing feature object, which is serialized directly to the file.
+     *
+     * @param feature the feature that is written
+     * @throws IOException if the file can not be written
+     */
+    public void writeFeature(Feature feature) throws IOException {
+
+        try {
+            GSON.toJson(feature, Feature.class, this.writer);
+        } catch (JsonIOException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Starts a feature and its geometry, up to its coordinates.
+     *
+     * @param geometryType the GeoJSON type of the geometry
+     * @throws IOException if the file can not be written
+     */
+    private void beginFeature(String geometryType) throws IOException {
+
+        this.writer.beginObject();
+        this.writer.name("type").value("Feature");
+        this.writer.name("geometry").beginObject();
+        this.writer.name("type").value(geometryType);
+        this.writer.name("coordinates");
+    }
+
+    /**
+     * Finishes the geometry of a feature and writes its properties.
+     *
+     * @param properties the string properties of the feature in the order they are written
+     * @throws IOException if the file can not be written
+     */
+    private void endFeature(Map<String, String> properties) throws IOException {
+
+        this.writer.endObject();
+        this.writer.name("properties").beginObject();
+        for (var property : properties.entrySet()) {
+            this.writer.name(property.getKey()).value(property.getValue());
+        }
+        this.writer.endObject();
+        this.writer.endObject();
+    }
+
+    /**
+     * Finishes the feature collection and closes the file.
+     */
+    @Override
+    public void close() throws IOException {
+
+        try {
+            this.writer.endArray();
+            this.writer.endObject();
+        } finally {
+            this.writer.close();
+        }
+    }
+
+}
@@ -1,17 +1,32 @@
 package uk.ac.ed.inf.aqmaps;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.LongAdder;
 import com.mapbox.geojson.Point;
 
 /**
  * Provides functionality to determine and possibly minimize a Hamiltonian cycle for a set of nodes
- * represented as points in an Euclidian 2D space.
+ * represented as points in an Euclidian 2D space, or for a set of nodes with given costs of
+ * travelling between them.
  */
 public class Graph {
+
+    // The number of perturbations tried from each start of the multi-start optimization
+    private static final int KICKS_PER_START = 100;
+    // The number of nearest unvisited nodes the randomized greedy order chooses from
+    private static final int RANDOMIZED_GREEDY_CHOICES = 3;
+    // The largest graph whose shortest visit order is found by dynamic programming, which needs
+    // memory exponential in the number of nodes
+    private static final int HELD_KARP_MAX_NODES = 17;
     
     /**
-     * Records the straight line distances between every pair of points. distanceMatrix[x][y] is the
-     * distance between the two points x and y.
+     * Records the costs of travelling between every pair of nodes, by default the straight line
+     * distances between the points. distanceMatrix[x][y] is the cost of travelling from node x to
+     * node y. The optimization of the visit order assumes the costs are symmetric.
      */
     private double[][] distanceMatrix;
     /**
@@ -20,6 +35,17 @@ public class Graph {
      * node that is to be visited as 4th.
      */
     private int[] visitOrder;
+    /**
+     * Records for every node a list of its nearest other nodes, sorted from the nearest. Computed
+     * when first needed by the local search.
+     */
+    private int[][] neighbourLists;
+    // The lower bound on the length of the shortest cycle proven by the last exact optimization,
+    // NaN if it proved none
+    private double lowerBound = Double.NaN;
+    // Work done by the optimizations of the visit order so far, added to from several threads
+    private LongAdder improvementPasses = new LongAdder();
+    private LongAdder movesApplied = new LongAdder();
 
     public Graph(ArrayList<Point> nodes) {
 
@@ -35,6 +61,49 @@ public class Graph {
             this.visitOrder[i] = i;
         }
     }
+
+    /**
+     * Creates a graph of the nodes of a sensor registry, read straight from its coordinates. The
+     * nodes of the graph are the nodes of the registry.
+     *
+     * @param registry the registry of the start position and the sensors
+     */
+    public Graph(SensorRegistry registry) {
+
+        var size = registry.getNodeCount();
+        this.distanceMatrix = new double[size][size];
+        this.visitOrder = new int[size];
+
+        // Computes the distances between each pair of nodes and records them in the distance matrix
+        for (int i = 0; i < size; i++) {
+            var longitude = registry.getLongitude(i);
+            var latitude = registry.getLatitude(i);
+            for (int j = 0; j < size; j++) {
+                this.distanceMatrix[i][j] = Utils2D.distance(longitude, latitude,
+                        registry.getLongitude(j), registry.getLatitude(j));
+            }
+            // The visit order is initially the same as the order of nodes in the registry
+            this.visitOrder[i] = i;
+        }
+    }
+
+    /**
+     * Creates a graph whose visit order is optimized with respect to given travel costs instead of
+     * straight line distances, e.g. the number of moves the drone actually needs.
+     * 
+     * @param costMatrix the symmetric matrix of costs, costMatrix[x][y] is the cost of travelling
+     *                   from node x to node y
+     */
+    public Graph(double[][] costMatrix) {
+
+        this.distanceMatrix = costMatrix;
+        this.visitOrder = new int[costMatrix.length];
+
+        // The visit order is initially the same as the order of nodes in the matrix
+        for (int i = 0; i < costMatrix.length; i++) {
+            this.visitOrder[i] = i;
+        }
+    }
     
     /**
      * @return current visit order of the nodes in this graph
@@ -43,6 +112,41 @@ public class Graph {
         return this.visitOrder;
     }
 
+    /**
+     * @return length of the Hamiltonian cycle given by the current visit order
+     */
+    public double getVisitOrderLength() {
+        return this.lengthOf(this.visitOrder);
+    }
+
+    /**
+     * @return the number of improvement passes made by the optimizations of the visit order so far,
+     *         a pass of the swap optimization or an examination of a node by the local search
+     */
+    public long getImprovementPasses() {
+        return this.improvementPasses.sum();
+    }
+
+    /**
+     * @return the number of improving moves applied to the visit order so far
+     */
+    public long getMovesApplied() {
+        return this.movesApplied.sum();
+    }
+
+    /**
+     * @param order a visit order of the nodes in this graph
+     * @return length of the Hamiltonian cycle given by the visit order
+     */
+    private double lengthOf(int[] order) {
+
+        var length = 0.0;
+        for (int i = 0; i < order.length; i++) {
+            length += this.distanceMatrix[order[i]][order[(i + 1) % order.length]];
+        }
+        return length;
+    }
+
     /**
      * Sets the visit order for the nodes in this graph so that at each step the next node that is
      * visited is the closest one from yet unvisited nodes.
@@ -123,12 +227,1126 @@ public class Graph {
                     if (swappedDistances < currentDistances) {
                         // The reversing reduces the overall path length, apply it
                         this.reversePartOfVisitOrder(i, j);
+                        this.movesApplied.increment();
                         optimized = true;
                     }
                 }
             }
             count++;
         }
+        this.improvementPasses.add(count);
+    }
+
+    /**
+     * Lists the nearest other nodes of every node. Only moves that connect a node to one of its
+     * nearest nodes are tried by the local search.
+     * 
+     * @param neighbourCount the number of nearest nodes listed for every node
+     * @return neighbour lists, neighbourLists[x] lists the nearest nodes of x sorted from the
+     *         nearest
+     */
+    private int[][] getNeighbourLists(int neighbourCount) {
+
+        var size = this.distanceMatrix.length;
+        var count = Math.min(neighbourCount, size - 1);
+
+        if (this.neighbourLists != null && this.neighbourLists.length == size
+                && (size == 0 || this.neighbourLists[0].length == count)) {
+            return this.neighbourLists;
+        }
+        this.neighbourLists = new int[size][];
+
+        for (int i = 0; i < size; i++) {
+            var neighbours = new int[count];
+            var found = 0;
+
+            // Keeps the nearest nodes found so far sorted, inserting each closer node in its place
+            for (int j = 0; j < size; j++) {
+                if (j == i || (found == count && this.distanceMatrix[i][j]
+                        >= this.distanceMatrix[i][neighbours[count - 1]])) {
+                    continue;
+                }
+                var k = found < count ? found++ : count - 1;
+                while (k > 0 && this.distanceMatrix[i][neighbours[k - 1]]
+                        > this.distanceMatrix[i][j]) {
+                    neighbours[k] = neighbours[k - 1];
+                    k--;
+                }
+                neighbours[k] = j;
+            }
+            this.neighbourLists[i] = neighbours;
+        }
+        return this.neighbourLists;
+    }
+
+    /**
+     * Attempts to optimize the current visit order of this graph by local search until no further
+     * improvement can be found. Three kinds of moves are tried: reversing a part of the visit order
+     * (2-opt), relocating a short sequence of nodes to a different place, possibly reversed
+     * (Or-opt), and exchanging two neighbouring parts of the visit order (3-opt). Only moves that
+     * connect a node to one of its nearest nodes are considered and nodes around which no
+     * improvement was found are not examined again until their surroundings change.
+     * 
+     * @param neighbourCount the number of nearest nodes considered for every node
+     */
+    public void localSearchOptimizeOrder(int neighbourCount) {
+
+        var search = new LocalSearch(this.distanceMatrix, this.getNeighbourLists(neighbourCount),
+                this.visitOrder, null);
+        this.optimize(search);
+        this.visitOrder = search.toVisitOrder();
+    }
+
+    /**
+     * Runs a local search and adds its work to the totals of this graph.
+     * 
+     * @param search the local search
+     */
+    private void optimize(LocalSearch search) {
+
+        search.optimize();
+        this.improvementPasses.add(search.examinedCount);
+        this.movesApplied.add(search.appliedCount);
+    }
+
+    /**
+     * Creates a visit order in which each next node is chosen randomly from the few closest yet
+     * unvisited nodes.
+     * 
+     * @param random the source of randomness
+     * @return the randomized greedy visit order
+     */
+    private int[] randomizedGreedyOrder(Random random) {
+
+        var size = this.distanceMatrix.length;
+        var order = new int[size];
+        var visited = new boolean[size];
+        var choices = new int[RANDOMIZED_GREEDY_CHOICES];
+        visited[0] = true;
+
+        for (int i = 1; i < size; i++) {
+            var current = order[i - 1];
+            var found = 0;
+
+            // Keeps the closest unvisited nodes found so far sorted from the closest
+            for (int j = 0; j < size; j++) {
+                if (visited[j] || (found == choices.length && this.distanceMatrix[current][j]
+                        >= this.distanceMatrix[current][choices[found - 1]])) {
+                    continue;
+                }
+                var k = found < choices.length ? found++ : found - 1;
+                while (k > 0 && this.distanceMatrix[current][choices[k - 1]]
+                        > this.distanceMatrix[current][j]) {
+                    choices[k] = choices[k - 1];
+                    k--;
+                }
+                choices[k] = j;
+            }
+            order[i] = choices[random.nextInt(found)];
+            visited[order[i]] = true;
+        }
+        return order;
+    }
+
+    /**
+     * Perturbs a visit order by a double bridge move, which cuts it into four parts and swaps the
+     * middle two. Such a change can not be undone by a single move of the local search.
+     * 
+     * @param order the visit order that is perturbed
+     * @param cuts  three increasing positions in the visit order, greater than 0, where the parts
+     *              start
+     * @return the perturbed visit order, the first node stays in place
+     */
+    private static int[] doubleBridge(int[] order, int[] cuts) {
+
+        var perturbed = new int[order.length];
+        var length = 0;
+
+        length = copyPart(order, 0, cuts[0], perturbed, length);
+        length = copyPart(order, cuts[1], cuts[2], perturbed, length);
+        length = copyPart(order, cuts[0], cuts[1], perturbed, length);
+        copyPart(order, cuts[2], order.length, perturbed, length);
+
+        return perturbed;
+    }
+
+    /**
+     * Copies part of an array to the end of another one.
+     * 
+     * @param from   the array that is copied from
+     * @param start  the first copied index
+     * @param end    the index after the last copied one
+     * @param to     the array that is copied to
+     * @param length the number of elements already in the array that is copied to
+     * @return number of elements in the array that is copied to after copying
+     */
+    private static int copyPart(int[] from, int start, int end, int[] to, int length) {
+        System.arraycopy(from, start, to, length, end - start);
+        return length + end - start;
+    }
+
+    /**
+     * Optimizes a visit order from a single start of the multi-start optimization. The start is
+     * improved by local search and then repeatedly perturbed and improved again, keeping the
+     * perturbation only if it results in a shorter cycle.
+     * 
+     * @param order          the initial visit order
+     * @param random         the source of randomness for this start
+     * @param neighbourLists the nearest nodes of every node
+     * @return the best visit order found
+     */
+    private int[] optimizeFromStart(int[] order, Random random, int[][] neighbourLists) {
+
+        var search = new LocalSearch(this.distanceMatrix, neighbourLists, order, null);
+        this.optimize(search);
+        var best = search.toVisitOrder();
+        var bestLength = this.lengthOf(best);
+
+        // Perturbations need at least 4 nodes after the first one
+        for (int kick = 0; kick < KICKS_PER_START && best.length > 4; kick++) {
+            // Three distinct cut positions after the first node
+            var cuts = random.ints(1, best.length).distinct().limit(3).sorted().toArray();
+            var perturbed = doubleBridge(best, cuts);
+
+            // Only the nodes at the ends of the replaced edges need to be examined again
+            var touched = new int[2 * cuts.length];
+            for (int i = 0; i < cuts.length; i++) {
+                touched[2 * i] = best[cuts[i] - 1];
+                touched[2 * i + 1] = best[cuts[i]];
+            }
+            search = new LocalSearch(this.distanceMatrix, neighbourLists, perturbed, touched);
+            this.optimize(search);
+            var candidate = search.toVisitOrder();
+            var candidateLength = this.lengthOf(candidate);
+
+            if (candidateLength < bestLength - LocalSearch.MIN_IMPROVEMENT) {
+                best = candidate;
+                bestLength = candidateLength;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Optimizes the visit order of this graph from multiple starts in parallel and keeps the best
+     * result. The first start is the current visit order, the others are randomized greedy orders.
+     * Every start is improved by local search and by perturbations followed by local search. Each
+     * start draws its random numbers from its own generator seeded by the seed and the index of the
+     * start, so the result only depends on the seed, never on the number of threads or on
+     * scheduling.
+     * 
+     * @param seed           the seed of the random choices
+     * @param starts         the number of starts
+     * @param threads        the number of threads optimizing the starts
+     * @param neighbourCount the number of nearest nodes considered for every node
+     */
+    public void multiStartOptimizeOrder(long seed, int starts, int threads, int neighbourCount) {
+
+        // Shared by all threads, so computed before they start
+        var neighbourLists = this.getNeighbourLists(neighbourCount);
+        var results = new int[starts][];
+        var pool = new ForkJoinPool(threads);
+
+        try {
+            var tasks = new ArrayList<ForkJoinTask<?>>();
+            for (int i = 0; i < starts; i++) {
+                var start = i;
+                tasks.add(pool.submit(() -> {
+                    var random = new Random(seed + start * 0x9E3779B97F4A7C15L);
+                    var order = start == 0 ? this.visitOrder : this.randomizedGreedyOrder(random);
+                    results[start] = this.optimizeFromStart(order, random, neighbourLists);
+                }));
+            }
+            for (var task : tasks) {
+                task.join();
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        // The earliest of equally long results wins, which keeps the choice deterministic
+        var best = results[0];
+        for (var result : results) {
+            if (this.lengthOf(result) < this.lengthOf(best) - LocalSearch.MIN_IMPROVEMENT) {
+                best = result;
+            }
+        }
+        this.visitOrder = best;
+    }
+
+    /**
+     * Attempts to find the shortest possible visit order of this graph within a time limit. Graphs
+     * of up to HELD_KARP_MAX_NODES nodes are solved by dynamic programming over subsets of nodes
+     * (Held-Karp), larger graphs by branch and bound starting from the current visit order. If
+     * the time runs out, the current visit order is kept unless a shorter one was found. The lower
+     * bound on the length of the shortest cycle that was proven is available from getLowerBound.
+     * 
+     * @param timeLimitMillis the time limit in milliseconds
+     * @param threads         the number of threads computing the dynamic programming
+     * @return true if the resulting visit order is proven to be the shortest, false otherwise
+     */
+    public boolean exactOptimizeOrder(long timeLimitMillis, int threads) {
+
+        var deadline = System.nanoTime() + timeLimitMillis * 1_000_000;
+        this.lowerBound = Double.NaN;
+
+        // There is only one cycle over at most 2 nodes
+        if (this.visitOrder.length <= 2) {
+            this.lowerBound = this.getVisitOrderLength();
+            return true;
+        }
+        if (this.visitOrder.length <= HELD_KARP_MAX_NODES) {
+            var order = this.heldKarpOrder(deadline, threads);
+            if (order == null) {
+                return false;
+            }
+            this.visitOrder = order;
+            this.lowerBound = this.getVisitOrderLength();
+            return true;
+        }
+
+        var search = new BranchAndBound(this.distanceMatrix, this.visitOrder);
+        var optimal = search.solve(deadline);
+        this.visitOrder = search.getBestOrder();
+        this.lowerBound = optimal ? this.getVisitOrderLength() : search.getRootBound();
+        return optimal;
+    }
+
+    /**
+     * @return the lower bound on the length of the shortest Hamiltonian cycle proven by the last
+     *         exact optimization, NaN if it proved none
+     */
+    public double getLowerBound() {
+        return this.lowerBound;
+    }
+
+    /**
+     * Finds the shortest visit order by dynamic programming over the subsets of nodes other than
+     * the first one. For every subset and every node in it the length of the shortest path that
+     * starts at the first node, visits the subset and ends at the node is computed from the results
+     * for the subsets that are smaller by one node. The subsets of the same size are independent of
+     * each other, so each layer of the same size subsets is split between the threads.
+     * 
+     * @param deadline the value of System.nanoTime after which the computation gives up
+     * @param threads  the number of threads computing the layers
+     * @return the shortest visit order, null if the deadline passed
+     */
+    private int[] heldKarpOrder(long deadline, int threads) {
+
+        var size = this.distanceMatrix.length;
+        // Nodes other than the first one are numbered from 0 in the subsets
+        var others = size - 1;
+        var subsets = 1 << others;
+        /*
+         * lengths[subset * others + last] is the length of the shortest path visiting the subset
+         * and ending at the node last, previous[subset * others + last] is the node visited just
+         * before the last one on that path
+         */
+        var lengths = new double[subsets * others];
+        var previous = new byte[subsets * others];
+
+        // Lists the subsets of every size
+        var layerSizes = new int[others + 1];
+        for (int subset = 1; subset < subsets; subset++) {
+            layerSizes[Integer.bitCount(subset)]++;
+        }
+        var layers = new int[others + 1][];
+        for (int k = 0; k <= others; k++) {
+            layers[k] = new int[layerSizes[k]];
+            layerSizes[k] = 0;
+        }
+        for (int subset = 1; subset < subsets; subset++) {
+            var k = Integer.bitCount(subset);
+            layers[k][layerSizes[k]++] = subset;
+        }
+
+        for (int last = 0; last < others; last++) {
+            lengths[(1 << last) * others + last] = this.distanceMatrix[0][last + 1];
+        }
+        var pool = new ForkJoinPool(threads);
+
+        try {
+            for (int k = 2; k <= others; k++) {
+                if (System.nanoTime() > deadline) {
+                    return null;
+                }
+                var layer = layers[k];
+                var chunk = (layer.length + threads - 1) / threads;
+                var tasks = new ArrayList<ForkJoinTask<?>>();
+
+                for (int first = 0; first < layer.length; first += chunk) {
+                    var start = first;
+                    var end = Math.min(first + chunk, layer.length);
+                    tasks.add(pool.submit(() -> {
+                        for (int i = start; i < end; i++) {
+                            this.extendPaths(layer[i], others, lengths, previous);
+                        }
+                    }));
+                }
+                for (var task : tasks) {
+                    task.join();
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        // Closes the cycle from the best last node
+        var all = subsets - 1;
+        var last = 0;
+        for (int i = 1; i < others; i++) {
+            if (lengths[all * others + i] + this.distanceMatrix[i + 1][0]
+                    < lengths[all * others + last] + this.distanceMatrix[last + 1][0]) {
+                last = i;
+            }
+        }
+
+        // Follows the previous nodes back from the end of the cycle
+        var order = new int[size];
+        var subset = all;
+        for (int position = size - 1; position > 0; position--) {
+            order[position] = last + 1;
+            var before = previous[subset * others + last];
+            subset ^= 1 << last;
+            last = before;
+        }
+        return order;
+    }
+
+    /**
+     * Computes the shortest paths visiting a subset of nodes and ending at each of its nodes from
+     * the shortest paths visiting the subset without that node.
+     * 
+     * @param subset   the subset of nodes other than the first one, with at least 2 nodes
+     * @param others   the number of nodes other than the first one
+     * @param lengths  the lengths of the shortest paths computed so far
+     * @param previous the nodes before the last one on the shortest paths computed so far
+     */
+    private void extendPaths(int subset, int others, double[] lengths, byte[] previous) {
+
+        for (int last = 0; last < others; last++) {
+            if ((subset & (1 << last)) == 0) {
+                continue;
+            }
+            var rest = subset ^ (1 << last);
+            var bestLength = Double.POSITIVE_INFINITY;
+            var bestBefore = 0;
+
+            for (int before = 0; before < others; before++) {
+                if ((rest & (1 << before)) == 0) {
+                    continue;
+                }
+                var length = lengths[rest * others + before]
+                        + this.distanceMatrix[before + 1][last + 1];
+                if (length < bestLength) {
+                    bestLength = length;
+                    bestBefore = before;
+                }
+            }
+            lengths[subset * others + last] = bestLength;
+            previous[subset * others + last] = (byte) bestBefore;
+        }
+    }
+
+    /**
+     * Depth first branch and bound over the visit orders. A partial visit order is abandoned once
+     * the length of its path plus a lower bound on the length of the rest of the cycle is not
+     * shorter than the best cycle found so far. The lower bound is the weight of the minimum
+     * spanning tree of the unvisited nodes plus the cheapest edges connecting it to the ends of the
+     * path. Its costs are modified by node penalties chosen at the start by subgradient
+     * optimization of the 1-tree bound, which makes the bound much tighter without losing
+     * validity.
+     */
+    private static class BranchAndBound {
+
+        // Differences in length smaller than this are treated as rounding errors
+        private static final double MIN_IMPROVEMENT = 1e-9;
+        // The maximum number of steps of the subgradient optimization of the penalties
+        private static final int SUBGRADIENT_ITERATIONS = 1000;
+        // The number of steps without improvement of the bound after which the step size is halved
+        private static final int SUBGRADIENT_PATIENCE = 20;
+        // The number of search nodes between checks of the deadline
+        private static final int DEADLINE_CHECK_INTERVAL = 1024;
+
+        private double[][] distanceMatrix;
+        private int size;
+        // Node penalties and the costs modified by them, penalizedCosts[x][y] is the cheaper of the
+        // two directions between x and y increased by the penalties of both
+        private double[] penalties;
+        private double[][] penalizedCosts;
+        private double rootBound;
+
+        private int[] bestOrder;
+        private double bestLength;
+        private int[] order;
+        private boolean[] visited;
+        // candidates[depth] is storage for ordering the nodes that can follow at the depth
+        private int[][] candidates;
+        // Storage for the minimum spanning tree computation
+        private double[] treeCosts;
+        private boolean[] inTree;
+
+        private long deadline;
+        private long searchNodes;
+        private boolean timedOut;
+
+        private BranchAndBound(double[][] distanceMatrix, int[] visitOrder) {
+
+            this.distanceMatrix = distanceMatrix;
+            this.size = distanceMatrix.length;
+            this.bestOrder = visitOrder.clone();
+            this.bestLength = 0;
+            for (int i = 0; i < this.size; i++) {
+                this.bestLength += distanceMatrix[visitOrder[i]][visitOrder[(i + 1) % this.size]];
+            }
+            this.order = new int[this.size];
+            this.visited = new boolean[this.size];
+            this.candidates = new int[this.size][this.size];
+            this.treeCosts = new double[this.size];
+            this.inTree = new boolean[this.size];
+            this.penalties = new double[this.size];
+            this.penalizedCosts = new double[this.size][this.size];
+        }
+
+        /**
+         * @return the shortest visit order found
+         */
+        private int[] getBestOrder() {
+            return this.bestOrder;
+        }
+
+        /**
+         * @return the lower bound on the length of the shortest cycle proven before the search
+         */
+        private double getRootBound() {
+            return this.rootBound;
+        }
+
+        /**
+         * Recomputes the costs modified by the current penalties.
+         */
+        private void penalizeCosts() {
+
+            for (int i = 0; i < this.size; i++) {
+                for (int j = 0; j < this.size; j++) {
+                    this.penalizedCosts[i][j] = Math.min(this.distanceMatrix[i][j],
+                            this.distanceMatrix[j][i]) + this.penalties[i] + this.penalties[j];
+                }
+            }
+        }
+
+        /**
+         * Computes the minimum 1-tree with respect to the penalized costs, which is a minimum
+         * spanning tree of the nodes other than the first one together with the two cheapest edges
+         * of the first node. Every Hamiltonian cycle is a 1-tree, so its weight without the
+         * penalties of the nodes at both ends of every edge is a lower bound on the length of the
+         * shortest cycle.
+         * 
+         * @param degrees storage for the degree of every node in the 1-tree
+         * @return the lower bound given by the 1-tree
+         */
+        private double oneTreeBound(int[] degrees) {
+
+            var parents = new int[this.size];
+            Arrays.fill(degrees, 0);
+            Arrays.fill(this.inTree, false);
+            Arrays.fill(this.treeCosts, Double.POSITIVE_INFINITY);
+            var weight = 0.0;
+
+            // Prim's algorithm over the nodes other than the first one
+            this.treeCosts[1] = 0;
+            parents[1] = -1;
+            for (int added = 1; added < this.size; added++) {
+                var next = -1;
+                for (int i = 1; i < this.size; i++) {
+                    if (!this.inTree[i] && (next < 0 || this.treeCosts[i] < this.treeCosts[next])) {
+                        next = i;
+                    }
+                }
+                this.inTree[next] = true;
+                weight += this.treeCosts[next];
+                if (parents[next] >= 0) {
+                    degrees[next]++;
+                    degrees[parents[next]]++;
+                }
+                for (int i = 1; i < this.size; i++) {
+                    if (!this.inTree[i] && this.penalizedCosts[next][i] < this.treeCosts[i]) {
+                        this.treeCosts[i] = this.penalizedCosts[next][i];
+                        parents[i] = next;
+                    }
+                }
+            }
+
+            // The two cheapest edges of the first node
+            var first = -1;
+            var second = -1;
+            for (int i = 1; i < this.size; i++) {
+                if (first < 0 || this.penalizedCosts[0][i] < this.penalizedCosts[0][first]) {
+                    second = first;
+                    first = i;
+                } else if (second < 0
+                        || this.penalizedCosts[0][i] < this.penalizedCosts[0][second]) {
+                    second = i;
+                }
+            }
+            weight += this.penalizedCosts[0][first] + this.penalizedCosts[0][second];
+            degrees[0] = 2;
+            degrees[first]++;
+            degrees[second]++;
+
+            for (int i = 0; i < this.size; i++) {
+                weight -= 2 * this.penalties[i];
+            }
+            return weight;
+        }
+
+        /**
+         * Chooses the node penalties that maximize the 1-tree bound by subgradient optimization.
+         * Nodes of degree higher than 2 in the 1-tree are penalized and nodes of degree 1 are
+         * rewarded, which pushes the 1-tree towards a cycle.
+         */
+        private void optimizePenalties() {
+
+            var degrees = new int[this.size];
+            var bestPenalties = this.penalties.clone();
+            var step = 2.0;
+            var sinceImprovement = 0;
+            this.rootBound = Double.NEGATIVE_INFINITY;
+
+            for (int iteration = 0; iteration < SUBGRADIENT_ITERATIONS; iteration++) {
+                this.penalizeCosts();
+                var bound = this.oneTreeBound(degrees);
+
+                if (bound > this.rootBound) {
+                    this.rootBound = bound;
+                    bestPenalties = this.penalties.clone();
+                    sinceImprovement = 0;
+                } else if (++sinceImprovement == SUBGRADIENT_PATIENCE) {
+                    step /= 2;
+                    sinceImprovement = 0;
+                }
+
+                var norm = 0.0;
+                for (int i = 0; i < this.size; i++) {
+                    norm += (degrees[i] - 2) * (degrees[i] - 2);
+                }
+                // A 1-tree in which every node has degree 2 is the shortest cycle
+                if (norm == 0 || this.rootBound >= this.bestLength - MIN_IMPROVEMENT) {
+                    break;
+                }
+                var stepSize = step * (this.bestLength - bound) / norm;
+                for (int i = 0; i < this.size; i++) {
+                    this.penalties[i] += stepSize * (degrees[i] - 2);
+                }
+            }
+            this.penalties = bestPenalties;
+            this.penalizeCosts();
+        }
+
+        /**
+         * Searches for the shortest visit order.
+         * 
+         * @param deadline the value of System.nanoTime after which the search gives up
+         * @return true if the best visit order found is proven to be the shortest, false otherwise
+         */
+        private boolean solve(long deadline) {
+
+            this.deadline = deadline;
+            this.optimizePenalties();
+            this.rootBound = Math.min(this.rootBound, this.bestLength);
+
+            if (this.rootBound >= this.bestLength - MIN_IMPROVEMENT) {
+                return true;
+            }
+            this.visited[0] = true;
+            this.search(1, 0.0);
+
+            return !this.timedOut;
+        }
+
+        /**
+         * Extends the partial visit order by every unvisited node in turn, the closest first.
+         * 
+         * @param depth  the number of nodes in the partial visit order
+         * @param length the length of the path given by the partial visit order
+         */
+        private void search(int depth, double length) {
+
+            if (this.timedOut || (++this.searchNodes % DEADLINE_CHECK_INTERVAL == 0
+                    && System.nanoTime() > this.deadline)) {
+                this.timedOut = true;
+                return;
+            }
+            var current = this.order[depth - 1];
+
+            if (depth == this.size) {
+                var cycleLength = length + this.distanceMatrix[current][0];
+                if (cycleLength < this.bestLength - MIN_IMPROVEMENT) {
+                    this.bestLength = cycleLength;
+                    this.bestOrder = this.order.clone();
+                }
+                return;
+            }
+            if (length + this.completionBound(current) >= this.bestLength - MIN_IMPROVEMENT) {
+                return;
+            }
+
+            // Sorts the unvisited nodes by the cost of travelling to them
+            var next = this.candidates[depth];
+            var count = 0;
+            for (int i = 1; i < this.size; i++) {
+                if (this.visited[i]) {
+                    continue;
+                }
+                var k = count++;
+                while (k > 0 && this.distanceMatrix[current][next[k - 1]]
+                        > this.distanceMatrix[current][i]) {
+                    next[k] = next[k - 1];
+                    k--;
+                }
+                next[k] = i;
+            }
+
+            for (int i = 0; i < count; i++) {
+                var node = next[i];
+                this.visited[node] = true;
+                this.order[depth] = node;
+                this.search(depth + 1, length + this.distanceMatrix[current][node]);
+                this.visited[node] = false;
+            }
+        }
+
+        /**
+         * Computes a lower bound on the length of any path that starts at a node, visits all the
+         * unvisited nodes and ends at the first node. Such a path consists of a spanning tree of
+         * the unvisited nodes and an edge from each of its ends.
+         * 
+         * @param current the last node of the partial visit order
+         * @return the lower bound
+         */
+        private double completionBound(int current) {
+
+            var weight = -this.penalties[current] - this.penalties[0];
+            var toCurrent = Double.POSITIVE_INFINITY;
+            var toFirst = Double.POSITIVE_INFINITY;
+            var first = -1;
+
+            for (int i = 1; i < this.size; i++) {
+                this.inTree[i] = this.visited[i];
+                this.treeCosts[i] = Double.POSITIVE_INFINITY;
+                if (!this.visited[i]) {
+                    weight -= 2 * this.penalties[i];
+                    toCurrent = Math.min(toCurrent, this.penalizedCosts[current][i]);
+                    toFirst = Math.min(toFirst, this.penalizedCosts[i][0]);
+                    first = first < 0 ? i : first;
+                }
+            }
+            weight += toCurrent + toFirst;
+
+            // Prim's algorithm over the unvisited nodes
+            this.treeCosts[first] = 0;
+            while (true) {
+                var next = -1;
+                for (int i = 1; i < this.size; i++) {
+                    if (!this.inTree[i] && (next < 0 || this.treeCosts[i] < this.treeCosts[next])) {
+                        next = i;
+                    }
+                }
+                if (next < 0) {
+                    break;
+                }
+                this.inTree[next] = true;
+                weight += this.treeCosts[next];
+                for (int i = 1; i < this.size; i++) {
+                    if (!this.inTree[i] && this.penalizedCosts[next][i] < this.treeCosts[i]) {
+                        this.treeCosts[i] = this.penalizedCosts[next][i];
+                    }
+                }
+            }
+            return weight;
+        }
+    }
+
+    /**
+     * State of a local search over the visit order. The visit order is treated as a cycle without a
+     * fixed start, which is restored at the end.
+     */
+    private static class LocalSearch {
+
+        // Improvements smaller than this are treated as rounding errors
+        private static final double MIN_IMPROVEMENT = 1e-10;
+        // The longest sequence of nodes relocated by Or-opt moves
+        private static final int MAX_SEGMENT_LENGTH = 3;
+
+        private double[][] distanceMatrix;
+        private int[][] neighbourLists;
+        // tour[i] is the node at i-th position in the cycle, positions[x] the position of node x
+        private int[] tour;
+        private int[] positions;
+        private int size;
+        /**
+         * Queue of nodes around which improving moves are searched for. A node is in the queue
+         * exactly if its don't look bit is not set, queued[x] is true.
+         */
+        private int[] queue;
+        private int queueStart;
+        private int queueLength;
+        private boolean[] queued;
+        // The number of nodes examined and of improving moves applied by the search
+        private int examinedCount;
+        private int appliedCount;
+
+        /**
+         * @param distanceMatrix the costs of travelling between the nodes
+         * @param neighbourLists the nearest nodes of every node
+         * @param visitOrder     the visit order that is optimized
+         * @param queuedNodes    the nodes around which moves are searched for first, all nodes if
+         *                       null
+         */
+        private LocalSearch(double[][] distanceMatrix, int[][] neighbourLists, int[] visitOrder,
+                int[] queuedNodes) {
+
+            this.distanceMatrix = distanceMatrix;
+            this.neighbourLists = neighbourLists;
+            this.size = visitOrder.length;
+            this.tour = visitOrder.clone();
+            this.positions = new int[this.size];
+            this.queue = new int[this.size];
+            this.queued = new boolean[this.size];
+
+            for (int i = 0; i < this.size; i++) {
+                this.positions[this.tour[i]] = i;
+                if (queuedNodes == null) {
+                    this.enqueue(this.tour[i]);
+                }
+            }
+            for (int i = 0; queuedNodes != null && i < queuedNodes.length; i++) {
+                this.enqueue(queuedNodes[i]);
+            }
+        }
+
+        /**
+         * @return visit order of the optimized cycle that starts with the same node as before
+         */
+        private int[] toVisitOrder() {
+
+            var visitOrder = new int[this.size];
+            if (this.size == 0) {
+                return visitOrder;
+            }
+            var start = this.positions[0];
+            for (int i = 0; i < this.size; i++) {
+                visitOrder[i] = this.tour[(start + i) % this.size];
+            }
+            return visitOrder;
+        }
+
+        /**
+         * Clears the don't look bit of a node so that moves around it are searched for again.
+         * 
+         * @param node the node that is added to the queue
+         */
+        private void enqueue(int node) {
+
+            if (!this.queued[node]) {
+                this.queued[node] = true;
+                this.queue[(this.queueStart + this.queueLength) % this.size] = node;
+                this.queueLength++;
+            }
+        }
+
+        private double distance(int a, int b) {
+            return this.distanceMatrix[a][b];
+        }
+
+        private int next(int node) {
+            return this.tour[(this.positions[node] + 1) % this.size];
+        }
+
+        private int previous(int node) {
+            return this.tour[(this.positions[node] - 1 + this.size) % this.size];
+        }
+
+        /**
+         * @param from the first node
+         * @param node the second node
+         * @return number of steps forward in the cycle from the first node to the second one
+         */
+        private int stepsBetween(int from, int node) {
+            return (this.positions[node] - this.positions[from] + this.size) % this.size;
+        }
+
+        /**
+         * Applies improving moves until there are no nodes left to examine.
+         */
+        private void optimize() {
+
+            // Moves need at least 4 nodes to change anything
+            if (this.size < 4) {
+                return;
+            }
+            while (this.queueLength > 0) {
+                var node = this.queue[this.queueStart];
+                this.queueStart = (this.queueStart + 1) % this.size;
+                this.queueLength--;
+                this.queued[node] = false;
+                this.examinedCount++;
+
+                // Every applied move queues the nodes it touches again, so if no move around the
+                // node helps it stays out of the queue (its don't look bit is set)
+                while (this.tryTwoOpt(node) || this.tryOrOpt(node) || this.tryThreeOpt(node)) {
+                    // Keeps improving around the node while possible
+                    this.appliedCount++;
+                }
+            }
+        }
+
+        /**
+         * Reverses the part of the cycle going forward from one position to another. Reverses the
+         * rest of the cycle instead if that is shorter, which results in the same cycle.
+         * 
+         * @param from the position where the reversed part starts
+         * @param to   the position where the reversed part ends
+         */
+        private void reverse(int from, int to) {
+
+            var length = (to - from + this.size) % this.size + 1;
+            if (2 * length > this.size) {
+                var complementFrom = (to + 1) % this.size;
+                to = (from - 1 + this.size) % this.size;
+                from = complementFrom;
+                length = this.size - length;
+            }
+            for (int i = 0; i < length / 2; i++) {
+                var a = (from + i) % this.size;
+                var b = (to - i + this.size) % this.size;
+                var temp = this.tour[a];
+                this.tour[a] = this.tour[b];
+                this.tour[b] = temp;
+                this.positions[this.tour[a]] = a;
+                this.positions[this.tour[b]] = b;
+            }
+        }
+
+        /**
+         * Rebuilds the cycle from parts of the current cycle, each given as its first and last node
+         * and traversed forward.
+         * 
+         * @param parts the first and last node of every part, in the new order
+         */
+        private void reconnect(int[] parts) {
+
+            var newTour = new int[this.size];
+            var length = 0;
+
+            for (int i = 0; i < parts.length; i += 2) {
+                var node = parts[i];
+                while (true) {
+                    newTour[length++] = node;
+                    if (node == parts[i + 1]) {
+                        break;
+                    }
+                    node = this.next(node);
+                }
+            }
+            this.tour = newTour;
+            for (int i = 0; i < this.size; i++) {
+                this.positions[this.tour[i]] = i;
+            }
+        }
+
+        /**
+         * Tries to replace two edges of the cycle, one of them adjacent to a node, by two shorter
+         * ones, reversing the part of the cycle between them.
+         * 
+         * @param t1 the node around which the move is searched for
+         * @return true if an improving move was applied, false otherwise
+         */
+        private boolean tryTwoOpt(int t1) {
+
+            // Tries removing the edge to the next and to the previous node in turn
+            for (int side = 0; side < 2; side++) {
+                var forward = side == 0;
+                var t2 = forward ? this.next(t1) : this.previous(t1);
+                var removed = this.distance(t1, t2);
+
+                for (int t3 : this.neighbourLists[t1]) {
+                    var added = this.distance(t1, t3);
+                    // Neighbours are sorted, no further one can lead to an improvement
+                    if (added >= removed) {
+                        break;
+                    }
+                    var t4 = forward ? this.next(t3) : this.previous(t3);
+                    if (t3 == t2 || t4 == t1) {
+                        continue;
+                    }
+                    var delta = added + this.distance(t2, t4) - removed - this.distance(t3, t4);
+
+                    if (delta < -MIN_IMPROVEMENT) {
+                        if (forward) {
+                            this.reverse(this.positions[t2], this.positions[t3]);
+                        } else {
+                            this.reverse(this.positions[t1], this.positions[t4]);
+                        }
+                        this.enqueue(t1);
+                        this.enqueue(t2);
+                        this.enqueue(t3);
+                        this.enqueue(t4);
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Tries to move a short sequence of nodes starting or ending at a node between two other
+         * neighbouring nodes of the cycle, possibly reversing the sequence.
+         * 
+         * @param node the node around which the move is searched for
+         * @return true if an improving move was applied, false otherwise
+         */
+        private boolean tryOrOpt(int node) {
+
+            for (int length = 1; length <= MAX_SEGMENT_LENGTH && length <= this.size - 3;
+                    length++) {
+                // The sequence either starts or ends with the node
+                for (int side = 0; side < 2; side++) {
+                    var first = node;
+                    for (int i = 1; side == 1 && i < length; i++) {
+                        first = this.previous(first);
+                    }
+                    var last = first;
+                    for (int i = 1; i < length; i++) {
+                        last = this.next(last);
+                    }
+                    if (this.tryRelocate(first, last, length)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Tries to move a sequence of nodes between two neighbouring nodes of the cycle, one of
+         * which is a nearest neighbour of an end of the sequence.
+         * 
+         * @param first  the first node of the sequence
+         * @param last   the last node of the sequence
+         * @param length the number of nodes in the sequence
+         * @return true if an improving move was applied, false otherwise
+         */
+        private boolean tryRelocate(int first, int last, int length) {
+
+            var before = this.previous(first);
+            var after = this.next(last);
+            var removalGain = this.distance(before, first) + this.distance(last, after)
+                    - this.distance(before, after);
+
+            if (removalGain <= MIN_IMPROVEMENT) {
+                return false;
+            }
+            for (int end = 0; end < 2; end++) {
+                var endNode = end == 0 ? first : last;
+
+                for (int neighbour : this.neighbourLists[endNode]) {
+                    if (this.distance(endNode, neighbour) >= removalGain) {
+                        break;
+                    }
+                    // The neighbour must lie outside of the sequence
+                    if (this.stepsBetween(first, neighbour) < length) {
+                        continue;
+                    }
+                    // Tries inserting on both sides of the neighbour
+                    for (int side = 0; side < 2; side++) {
+                        var c = side == 0 ? neighbour : this.previous(neighbour);
+                        var e = this.next(c);
+                        if (c == last || e == first) {
+                            continue;
+                        }
+                        var inOrder = this.distance(c, first) + this.distance(last, e);
+                        var reversed = this.distance(c, last) + this.distance(first, e);
+                        var delta = Math.min(inOrder, reversed) - this.distance(c, e)
+                                - removalGain;
+
+                        if (delta < -MIN_IMPROVEMENT) {
+                            // The cycle becomes: e ... before, after ... c, sequence
+                            this.reconnect(new int[] { e, before, after, c, first, last });
+                            if (reversed < inOrder) {
+                                this.reverse(this.positions[first], this.positions[last]);
+                            }
+                            this.enqueue(before);
+                            this.enqueue(after);
+                            this.enqueue(c);
+                            this.enqueue(e);
+                            this.enqueue(first);
+                            this.enqueue(last);
+                            return true;
+                        }
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Tries to replace three edges of the cycle, one of them leaving a node, so that the two
+         * parts of the cycle between them swap places without being reversed.
+         * 
+         * @param a the node around which the move is searched for
+         * @return true if an improving move was applied, false otherwise
+         */
+        private boolean tryThreeOpt(int a) {
+
+            // Edges (a, a2), (b, b2) and (c, c2) are replaced by (a, b2), (c, a2) and (b, c2)
+            var a2 = this.next(a);
+            var removedA = this.distance(a, a2);
+
+            for (int b2 : this.neighbourLists[a]) {
+                var gain1 = removedA - this.distance(a, b2);
+                if (gain1 <= MIN_IMPROVEMENT) {
+                    break;
+                }
+                if (this.stepsBetween(a, b2) < 2) {
+                    continue;
+                }
+                var b = this.previous(b2);
+                var removedB = this.distance(b, b2);
+
+                for (int c2 : this.neighbourLists[b]) {
+                    var gain2 = gain1 + removedB - this.distance(b, c2);
+                    if (gain2 <= MIN_IMPROVEMENT) {
+                        break;
+                    }
+                    // c2 must come after b2 and at the latest be a itself
+                    var steps = c2 == a ? this.size : this.stepsBetween(a, c2);
+                    if (steps <= this.stepsBetween(a, b2)) {
+                        continue;
+                    }
+                    var c = this.previous(c2);
+                    var delta = this.distance(c, a2) - this.distance(c, c2) - gain2;
+
+                    if (delta < -MIN_IMPROVEMENT) {
+                        // The cycle becomes: a, b2 ... c, a2 ... b, c2 ... (back to a)
+                        if (c2 == a) {
+                            this.reconnect(new int[] { a, a, b2, c, a2, b });
+                        } else {
+                            this.reconnect(new int[] { a, a, b2, c, a2, b, c2,
+                                    this.previous(a) });
+                        }
+                        this.enqueue(a);
+                        this.enqueue(a2);
+                        this.enqueue(b);
+                        this.enqueue(b2);
+                        this.enqueue(c);
+                        this.enqueue(c2);
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
     }
 
 }
@@ -0,0 +1,347 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import com.mapbox.geojson.Point;
+
+/**
+ * Remembers the paths found for legs so that a leg flown again, e.g. between the same sensors on a
+ * different day, needs no path search. A leg is identified by the lattice cell of the search its
+ * start lies in, its exact target point, the range around the target, the obstacles, the move
+ * model and the lattice cell size of the search. The search treats all points of a cell as the
+ * same one, so a leg starting anywhere in the cell of a cached leg reuses its path. The sensors are
+ * placed at the centres of What3Words squares, so the target point of a leg to a sensor stands for
+ * its What3Words address. The cache holds a bounded number of legs, evicting the least recently
+ * used ones, and can be saved to and loaded from a compact binary file. Cached paths are made
+ * again from the actual start and checked before they are used, so a stale or damaged entry is
+ * never flown. The cache can be shared by concurrent searches.
+ */
+public class LegCache {
+
+    // Identifies the file format
+    private static final int FILE_MAGIC = 0x4C454753;
+    private static final int FILE_VERSION = 2;
+    // Stored instead of the number of moves for legs without a path
+    private static final int NO_PATH = -1;
+
+    private File file;
+    private int maxLegs;
+    // Cached legs from the least to the most recently used one
+    private LinkedHashMap<Key, byte[]> legs;
+    private long hitCount;
+    private long missCount;
+
+    /**
+     * The identity of a leg.
+     */
+    private static class Key {
+
+        private long startColumn;
+        private long startRow;
+        private long targetLongitude;
+        private long targetLatitude;
+        private long range;
+        private long obstacleHash;
+        private long moveLength;
+        private int directionStep;
+        private long cellSize;
+
+        private Key(Point start, Point target, double range, ObstacleIndex obstacles,
+                MoveModel moves, double cellSize) {
+
+            // The start is quantized the same way the search recognises duplicate points
+            this.startColumn = (long) Math.floor(start.longitude() / cellSize);
+            this.startRow = (long) Math.floor(start.latitude() / cellSize);
+            this.targetLongitude = Double.doubleToLongBits(target.longitude());
+            this.targetLatitude = Double.doubleToLongBits(target.latitude());
+            this.range = Double.doubleToLongBits(range);
+            this.obstacleHash = obstacles.getContentHash();
+            this.moveLength = Double.doubleToLongBits(moves.getMoveLength());
+            this.directionStep = moves.getDirectionStep();
+            this.cellSize = Double.doubleToLongBits(cellSize);
+        }
+
+        private Key(DataInputStream input) throws IOException {
+
+            this.startColumn = input.readLong();
+            this.startRow = input.readLong();
+            this.targetLongitude = input.readLong();
+            this.targetLatitude = input.readLong();
+            this.range = input.readLong();
+            this.obstacleHash = input.readLong();
+            this.moveLength = input.readLong();
+            this.directionStep = input.readInt();
+            this.cellSize = input.readLong();
+        }
+
+        private void write(DataOutputStream output) throws IOException {
+
+            output.writeLong(this.startColumn);
+            output.writeLong(this.startRow);
+            output.writeLong(this.targetLongitude);
+            output.writeLong(this.targetLatitude);
+            output.writeLong(this.range);
+            output.writeLong(this.obstacleHash);
+            output.writeLong(this.moveLength);
+            output.writeInt(this.directionStep);
+            output.writeLong(this.cellSize);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            var key = (Key) other;
+            return this.startColumn == key.startColumn && this.startRow == key.startRow
+                    && this.targetLongitude == key.targetLongitude
+                    && this.targetLatitude == key.targetLatitude && this.range == key.range
+                    && this.obstacleHash == key.obstacleHash && this.moveLength == key.moveLength
+                    && this.directionStep == key.directionStep && this.cellSize == key.cellSize;
+        }
+
+        @Override
+        public int hashCode() {
+
+            var hash = this.startColumn;
+            for (var value : new long[] { this.startRow, this.targetLongitude,
+                    this.targetLatitude, this.range, this.obstacleHash, this.moveLength,
+                    this.directionStep, this.cellSize }) {
+                hash = 31 * hash + value;
+            }
+            return Long.hashCode(hash);
+        }
+    }
+
+    /**
+     * @param file    the file the cache is saved to, may be null for a cache kept only in memory
+     * @param maxLegs the maximum number of legs kept, the least recently used are evicted first
+     */
+    public LegCache(File file, int maxLegs) {
+
+        this.file = file;
+        this.maxLegs = maxLegs;
+        this.legs = new LinkedHashMap<Key, byte[]>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, byte[]> eldest) {
+                return this.size() > LegCache.this.maxLegs;
+            }
+        };
+    }
+
+    /**
+     * Creates a cache filled with the legs saved in a file. A missing file gives an empty cache, as
+     * does a file that can not be read, which is reported.
+     *
+     * @param file    the file the cache is loaded from and saved to
+     * @param maxLegs the maximum number of legs kept, the least recently used are evicted first
+     * @return the loaded cache
+     */
+    public static LegCache load(File file, int maxLegs) {
+
+        var cache = new LegCache(file, maxLegs);
+        if (!file.exists()) {
+            return cache;
+        }
+
+        try (var input = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (input.readInt() != FILE_MAGIC || input.readInt() != FILE_VERSION) {
+                System.out.println("Ignoring leg cache " + file + " of unknown format.");
+                return cache;
+            }
+            var count = input.readInt();
+            // Legs are saved from the least recently used, so the order of use is restored
+            for (int i = 0; i < count; i++) {
+                var key = new Key(input);
+                var moveCount = input.readShort();
+                var directions = moveCount == NO_PATH ? null : new byte[moveCount];
+                if (directions != null) {
+                    input.readFully(directions);
+                }
+                cache.legs.put(key, directions);
+            }
+        } catch (IOException e) {
+            System.out.println("Ignoring leg cache " + file + " that can not be read.");
+            cache.legs.clear();
+        }
+        return cache;
+    }
+
+    /**
+     * Saves the cached legs to the file of this cache, if it has one. The file is replaced only
+     * once the new content is completely written.
+     *
+     * @throws IOException if the file can not be written
+     */
+    public synchronized void save() throws IOException {
+
+        if (this.file == null) {
+            return;
+        }
+        var directory = this.file.getAbsoluteFile().getParentFile().toPath();
+        var temporary = Files.createTempFile(directory, this.file.getName(), ".tmp");
+
+        try {
+            try (var output = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(temporary.toFile())))) {
+                output.writeInt(FILE_MAGIC);
+                output.writeInt(FILE_VERSION);
+                output.writeInt(this.legs.size());
+
+                for (var leg : this.legs.entrySet()) {
+                    leg.getKey().write(output);
+                    var directions = leg.getValue();
+                    output.writeShort(directions == null ? NO_PATH : directions.length);
+                    if (directions != null) {
+                        output.write(directions);
+                    }
+                }
+            }
+            Files.move(temporary, this.file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            // Only left if the cache could not be written or moved into place
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * @return the number of legs found in this cache
+     */
+    public synchronized long getHitCount() {
+        return this.hitCount;
+    }
+
+    /**
+     * @return the number of legs that had to be searched for
+     */
+    public synchronized long getMissCount() {
+        return this.missCount;
+    }
+
+    /**
+     * Finds a path for a leg, taking it from this cache if the leg was searched for before and
+     * searching for it otherwise. The result is the same as that of Path.findPathToPoint, and so
+     * is the outcome left in the arena, though a leg taken from this cache expands no nodes.
+     *
+     * @param start     the start point of the path
+     * @param target    target the point that the path should lead to
+     * @param range     the range around the target within which the path should end
+     * @param moves     the model of moves the path can be made of
+     * @param obstacles the index of polygons that should not be crossed
+     * @param cellSize  the side length of lattice cells used by the path search
+     * @param arena     the storage for the search, if one is needed
+     * @return path to the target point within range while avoiding obstacles, null if there is none
+     */
+    public Path findPathToPoint(Point start, Point target, double range, MoveModel moves,
+            ObstacleIndex obstacles, double cellSize, SearchArena arena) {
+
+        var key = new Key(start, target, range, obstacles, moves, cellSize);
+        byte[] directions;
+        boolean cached;
+
+        synchronized (this) {
+            cached = this.legs.containsKey(key);
+            directions = this.legs.get(key);
+        }
+        if (cached) {
+            var path = directions == null ? null
+                    : replay(start, target, range, directions, moves, obstacles);
+            if (directions == null || path != null) {
+                this.countHit();
+                arena.reset();
+                arena.setOutcome(path == null ? SearchArena.Outcome.UNREACHABLE
+                        : SearchArena.Outcome.FOUND);
+                return path;
+            }
+        }
+
+        // The search runs outside of the lock so that concurrent searches do not wait
+        var path = Path.findPathToPoint(start, target, range, moves, obstacles, cellSize, arena);
+        synchronized (this) {
+            this.missCount++;
+            // A search that ran out of budget does not show that there is no path
+            if (path != null || arena.getOutcome() != SearchArena.Outcome.EXHAUSTED) {
+                this.legs.put(key, path == null ? null : toDirectionIndices(path, moves));
+            }
+        }
+        return path;
+    }
+
+    private synchronized void countHit() {
+        this.hitCount++;
+    }
+
+    /**
+     * @param path  a path made of moves of the move model
+     * @param moves the move model
+     * @return index of the direction of every move of the path in the directions of the move model
+     */
+    private static byte[] toDirectionIndices(Path path, MoveModel moves) {
+
+        var directions = path.getMoveDirections();
+        var indices = new byte[directions.size()];
+
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = (byte) (directions.get(i) / moves.getDirectionStep());
+        }
+        return indices;
+    }
+
+    /**
+     * Rebuilds a cached path by making its moves from the start, the same way the path search
+     * does, and checks that no move crosses an obstacle and that it ends within range of the
+     * target.
+     *
+     * @param start      the start point of the path
+     * @param target     the point that the path should lead to
+     * @param range      the range around the target within which the path should end
+     * @param directions the indices of the directions of the moves in the move model
+     * @param moves      the move model
+     * @param obstacles  the index of polygons that should not be crossed
+     * @return the rebuilt path, null if it is not valid
+     */
+    private static Path replay(Point start, Point target, double range, byte[] directions,
+            MoveModel moves, ObstacleIndex obstacles) {
+
+        var path = new Path(start);
+        var longitude = start.longitude();
+        var latitude = start.latitude();
+
+        for (var index : directions) {
+            if (index < 0 || index >= moves.getDirections().length) {
+                return null;
+            }
+            var endLongitude = longitude + moves.getLongitudeOffsets()[index];
+            var endLatitude = latitude + moves.getLatitudeOffsets()[index];
+
+            if (obstacles.lineIntersects(longitude, latitude, endLongitude, endLatitude)) {
+                return null;
+            }
+            path.addMove(endLongitude, endLatitude, moves.getDirections()[index]);
+            longitude = endLongitude;
+            latitude = endLatitude;
+        }
+        if (Utils2D.distance(longitude, latitude, target.longitude(), target.latitude())
+                >= range) {
+            return null;
+        }
+        return path;
+    }
+
+}
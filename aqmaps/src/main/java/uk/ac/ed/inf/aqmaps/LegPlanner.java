@@ -0,0 +1,198 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import com.mapbox.geojson.Point;
+
+/**
+ * Plans the legs between every pair of a set of points concurrently. The searches for the legs are
+ * independent of each other and only read the immutable move model and obstacle index, so they are
+ * distributed over the worker threads of a ForkJoinPool, each of which keeps its own search arena.
+ * Only the number of moves of every leg is kept. A drone stops anywhere within reading range of a
+ * sensor, so a path planned from the sensor itself would rarely start where the drone is.
+ */
+public class LegPlanner {
+
+    // The number of legs below which a task plans them itself instead of splitting
+    private static final int LEGS_PER_TASK = 4;
+
+    private MoveModel moves;
+    private ObstacleIndex obstacles;
+    private double cellSize;
+    private int parallelism;
+    // Paths of legs that were planned before, may be null
+    private LegCache legCache;
+    // Every worker thread of the pool uses its own storage for the searches
+    private ThreadLocal<SearchArena> arenas;
+    // The arena whose metrics, occupancy grid and budget every search uses, may be null
+    private SearchArena settings;
+
+    /**
+     * @param moves       the model of moves the legs can be made of
+     * @param obstacles   the index of polygons that should not be crossed
+     * @param cellSize    the side length of lattice cells used by the path search
+     * @param parallelism the number of threads that plan the legs
+     * @param legCache    the cache of paths of legs planned before, may be null
+     */
+    public LegPlanner(MoveModel moves, ObstacleIndex obstacles, double cellSize,
+            int parallelism, LegCache legCache) {
+
+        this.moves = moves;
+        this.obstacles = obstacles;
+        this.cellSize = cellSize;
+        this.parallelism = parallelism;
+        this.legCache = legCache;
+        this.arenas = ThreadLocal.withInitial(SearchArena::new);
+    }
+
+    /**
+     * @param moves       the model of moves the legs can be made of
+     * @param obstacles   the index of polygons that should not be crossed
+     * @param cellSize    the side length of lattice cells used by the path search
+     * @param parallelism the number of threads that plan the legs
+     */
+    public LegPlanner(MoveModel moves, ObstacleIndex obstacles, double cellSize,
+            int parallelism) {
+        this(moves, obstacles, cellSize, parallelism, null);
+    }
+
+    /**
+     * @param settings the arena whose metrics, occupancy grid and budget every search uses, null
+     *                 for searches without them
+     */
+    public void setSearchSettings(SearchArena settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * The number of moves of the legs planned between every ordered pair of points.
+     */
+    public static class Legs {
+
+        // moveCounts[x][y] is the number of moves from point x to point y, -1 if there is no path
+        private int[][] moveCounts;
+
+        private Legs(int size) {
+            this.moveCounts = new int[size][size];
+        }
+
+        /**
+         * @param from the index of the point where the leg starts
+         * @param to   the index of the point where the leg ends
+         * @return number of moves of the leg, -1 if there is no path
+         */
+        public int getMoveCount(int from, int to) {
+            return this.moveCounts[from][to];
+        }
+
+        /**
+         * Averages the number of moves of the two directions of each leg into a symmetric cost
+         * matrix, which is what the optimization of the visit order in Graph assumes.
+         *
+         * @param unreachableCost the cost of a leg without a path
+         * @return matrix of costs, cost[x][y] is the cost of flying between the points x and y
+         */
+        public double[][] toSymmetricCostMatrix(double unreachableCost) {
+
+            var size = this.moveCounts.length;
+            var costs = new double[size][size];
+
+            for (int i = 0; i < size; i++) {
+                for (int j = 0; j < size; j++) {
+                    if (i != j) {
+                        var there = this.moveCounts[i][j] < 0 ? unreachableCost
+                                : this.moveCounts[i][j];
+                        var back = this.moveCounts[j][i] < 0 ? unreachableCost
+                                : this.moveCounts[j][i];
+                        costs[i][j] = (there + back) / 2;
+                    }
+                }
+            }
+            return costs;
+        }
+    }
+
+    /**
+     * Plans a contiguous range of legs, splitting it in halves while it is large.
+     */
+    private class LegsTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private ArrayList<Point> points;
+        private double[] ranges;
+        private Legs legs;
+        // Legs are numbered as from * size + to
+        private int firstLeg;
+        private int lastLeg;
+
+        private LegsTask(ArrayList<Point> points, double[] ranges, Legs legs, int firstLeg,
+                int lastLeg) {
+
+            this.points = points;
+            this.ranges = ranges;
+            this.legs = legs;
+            this.firstLeg = firstLeg;
+            this.lastLeg = lastLeg;
+        }
+
+        @Override
+        protected void compute() {
+
+            if (this.lastLeg - this.firstLeg > LEGS_PER_TASK) {
+                var middle = (this.firstLeg + this.lastLeg) / 2;
+                invokeAll(new LegsTask(this.points, this.ranges, this.legs, this.firstLeg, middle),
+                        new LegsTask(this.points, this.ranges, this.legs, middle, this.lastLeg));
+                return;
+            }
+            var size = this.points.size();
+
+            for (int leg = this.firstLeg; leg < this.lastLeg; leg++) {
+                var from = leg / size;
+                var to = leg % size;
+
+                if (from == to) {
+                    continue;
+                }
+                var start = this.points.get(from);
+                var target = this.points.get(to);
+                var planner = LegPlanner.this;
+                var arena = planner.arenas.get();
+                if (planner.settings != null) {
+                    arena.copySettings(planner.settings);
+                }
+                var path = planner.legCache == null
+                        ? Path.findPathToPoint(start, target, this.ranges[to], planner.moves,
+                                planner.obstacles, planner.cellSize, arena)
+                        : planner.legCache.findPathToPoint(start, target, this.ranges[to],
+                                planner.moves, planner.obstacles, planner.cellSize, arena);
+
+                this.legs.moveCounts[from][to] = path == null ? -1
+                        : path.getMoveDirections().size();
+            }
+        }
+    }
+
+    /**
+     * Plans the legs between every ordered pair of points.
+     *
+     * @param points the points between which the legs are planned
+     * @param ranges the range around each point within which a leg to it should end
+     * @return the planned legs
+     */
+    public Legs planAllPairs(ArrayList<Point> points, double[] ranges) {
+
+        var size = points.size();
+        var legs = new Legs(size);
+        var pool = new ForkJoinPool(this.parallelism);
+
+        try {
+            pool.invoke(new LegsTask(points, ranges, legs, 0, size * size));
+        } finally {
+            pool.shutdown();
+        }
+        return legs;
+    }
+
+}
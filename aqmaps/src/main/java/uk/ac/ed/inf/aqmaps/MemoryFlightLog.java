@@ -0,0 +1,38 @@
+package uk.ac.ed.inf.aqmaps;
+
+/**
+ * Keeps the flight path log in memory.
+ */
+public class MemoryFlightLog implements FlightLog {
+
+    private StringBuilder log;
+
+    public MemoryFlightLog() {
+        this.log = new StringBuilder();
+    }
+
+    @Override
+    public void logMove(int moveNumber, double longitude, double latitude, int direction,
+            double newLongitude, double newLatitude) {
+        FlightLog.appendMove(this.log, moveNumber, longitude, latitude, direction, newLongitude,
+                newLatitude);
+    }
+
+    @Override
+    public void logSensor(String location) {
+        FlightLog.appendSensor(this.log, location);
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * @return the flight path log so far
+     */
+    @Override
+    public String toString() {
+        return this.log.toString();
+    }
+
+}
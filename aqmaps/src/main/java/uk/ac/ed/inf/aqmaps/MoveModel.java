@@ -0,0 +1,89 @@
+package uk.ac.ed.inf.aqmaps;
+
+/**
+ * Describes the moves a drone is allowed to make. Every move has the same length and its direction
+ * is a multiple of a direction step in degrees. The change in coordinates caused by a move in each
+ * of the allowed directions is computed once so that searching for paths needs no trigonometry.
+ */
+public class MoveModel {
+
+    private static final int FULL_ANGLE = 360;
+
+    private double moveLength;
+    private int directionStep;
+    /**
+     * The allowed directions in degrees. A move in direction directions[i] changes the longitude by
+     * longitudeOffsets[i] and the latitude by latitudeOffsets[i].
+     */
+    private int[] directions;
+    private double[] longitudeOffsets;
+    private double[] latitudeOffsets;
+    // allowed[d] is true if d degrees is an allowed direction
+    private boolean[] allowed;
+
+    public MoveModel(double moveLength, int directionStep) {
+
+        this.moveLength = moveLength;
+        this.directionStep = directionStep;
+
+        var count = (FULL_ANGLE + directionStep - 1) / directionStep;
+        this.directions = new int[count];
+        this.longitudeOffsets = new double[count];
+        this.latitudeOffsets = new double[count];
+        this.allowed = new boolean[FULL_ANGLE];
+
+        for (int i = 0; i < count; i++) {
+            var direction = i * directionStep;
+            this.directions[i] = direction;
+            this.longitudeOffsets[i] = Utils2D.moveLongitude(0, moveLength, direction);
+            this.latitudeOffsets[i] = Utils2D.moveLatitude(0, moveLength, direction);
+            this.allowed[direction] = true;
+        }
+    }
+
+    /**
+     * @return the length of every move
+     */
+    public double getMoveLength() {
+        return this.moveLength;
+    }
+
+    /**
+     * @return the difference in degrees between two neighbouring allowed directions
+     */
+    public int getDirectionStep() {
+        return this.directionStep;
+    }
+
+    /**
+     * @return the allowed directions in degrees, must not be modified
+     */
+    public int[] getDirections() {
+        return this.directions;
+    }
+
+    /**
+     * @return the change in longitude caused by a move in each of the allowed directions, must not
+     *         be modified
+     */
+    public double[] getLongitudeOffsets() {
+        return this.longitudeOffsets;
+    }
+
+    /**
+     * @return the change in latitude caused by a move in each of the allowed directions, must not
+     *         be modified
+     */
+    public double[] getLatitudeOffsets() {
+        return this.latitudeOffsets;
+    }
+
+    /**
+     * @param direction the direction in degrees
+     * @return true if a move in the direction is allowed, false otherwise
+     */
+    public boolean isAllowed(int direction) {
+        return direction >= 0 && direction < FULL_ANGLE && this.allowed[direction];
+    }
+
+}
@@ -0,0 +1,21 @@
+package uk.ac.ed.inf.aqmaps;
+
+/**
+ * Ignores the flight path log, for runs where only the flight itself matters.
+ */
+public class NullFlightLog implements FlightLog {
+
+    @Override
+    public void logMove(int moveNumber, double longitude, double latitude, int direction,
+            double newLongitude, double newLatitude) {
+    }
+
+    @Override
+    public void logSensor(String location) {
+    }
+
+    @Override
+    public void close() {
+    }
+
+}
@@ -0,0 +1,258 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.awt.geom.Line2D;
+import java.util.ArrayList;
+import com.mapbox.geojson.Point;
+import com.mapbox.geojson.Polygon;
+
+/**
+ * Spatial index over the sides of a set of polygons that makes checking line segments for
+ * intersection with them fast. The sides are distributed to the cells of a uniform grid covering
+ * all the polygons so that a line segment is only tested against the sides in the cells it could
+ * touch. The index is built once per map and is never modified afterwards.
+ */
+public class ObstacleIndex {
+
+    private static final double DEFAULT_CELL_SIZE = 0.0003;
+
+    private ArrayList<Polygon> polygons;
+    /**
+     * Bounding boxes of the polygons. The box of i-th polygon is stored as minimum longitude,
+     * minimum latitude, maximum longitude, maximum latitude starting at polygonBounds[4 * i].
+     */
+    private double[] polygonBounds;
+    /**
+     * The sides of all polygons. The i-th side starts at (edges[4 * i], edges[4 * i + 1]) and ends
+     * at (edges[4 * i + 2], edges[4 * i + 3]), both given as longitude and latitude.
+     * edgePolygons[i] is the index of the polygon it belongs to.
+     */
+    private double[] edges;
+    private int[] edgePolygons;
+
+    // The grid, cells[column][row] lists the sides of polygons that pass through the cell
+    private double cellSize;
+    private double minLongitude;
+    private double minLatitude;
+    private int columns;
+    private int rows;
+    private int[][][] cells;
+    // Identifies the polygons by their coordinates
+    private long contentHash;
+
+    public ObstacleIndex(ArrayList<Polygon> polygons, double cellSize) {
+
+        this.polygons = polygons;
+        this.polygonBounds = new double[4 * polygons.size()];
+        this.cellSize = cellSize;
+
+        var edgeCount = 0;
+        var polygonCoordinates = new double[polygons.size()][];
+        for (int i = 0; i < polygons.size(); i++) {
+            polygonCoordinates[i] = Utils2D.toCoordinates(polygons.get(i));
+            edgeCount += polygonCoordinates[i].length / 2;
+        }
+        this.edges = new double[4 * edgeCount];
+        this.edgePolygons = new int[edgeCount];
+
+        var minLongitude = Double.POSITIVE_INFINITY;
+        var minLatitude = Double.POSITIVE_INFINITY;
+        var maxLongitude = Double.NEGATIVE_INFINITY;
+        var maxLatitude = Double.NEGATIVE_INFINITY;
+        var edge = 0;
+
+        // Computes the bounding box of each polygon and lists all of their sides
+        for (int i = 0; i < polygons.size(); i++) {
+            var coordinates = polygonCoordinates[i];
+            var bounds = boundingBox(coordinates);
+            System.arraycopy(bounds, 0, this.polygonBounds, 4 * i, 4);
+
+            for (int j = 0; j < coordinates.length; j += 2) {
+                var next = (j + 2) % coordinates.length;
+                this.edges[4 * edge] = coordinates[j];
+                this.edges[4 * edge + 1] = coordinates[j + 1];
+                this.edges[4 * edge + 2] = coordinates[next];
+                this.edges[4 * edge + 3] = coordinates[next + 1];
+                this.edgePolygons[edge] = i;
+                edge++;
+            }
+            minLongitude = Math.min(minLongitude, bounds[0]);
+            minLatitude = Math.min(minLatitude, bounds[1]);
+            maxLongitude = Math.max(maxLongitude, bounds[2]);
+            maxLatitude = Math.max(maxLatitude, bounds[3]);
+        }
+
+        // The grid covers the bounding boxes of all polygons
+        this.minLongitude = minLongitude;
+        this.minLatitude = minLatitude;
+        this.columns = Math.max(1, (int) Math.ceil((maxLongitude - minLongitude) / cellSize));
+        this.rows = Math.max(1, (int) Math.ceil((maxLatitude - minLatitude) / cellSize));
+        this.buildCells();
+
+        this.contentHash = polygons.size();
+        for (int i = 0; i < this.edges.length; i++) {
+            this.contentHash = 31 * this.contentHash + Double.doubleToLongBits(this.edges[i]);
+        }
+    }
+
+    public ObstacleIndex(ArrayList<Polygon> polygons) {
+        this(polygons, DEFAULT_CELL_SIZE);
+    }
+
+    /**
+     * @return the polygons in this index
+     */
+    public ArrayList<Polygon> getPolygons() {
+        return this.polygons;
+    }
+
+    /**
+     * @return the number of edges of all the polygons in this index
+     */
+    public int getEdgeCount() {
+        return this.edgePolygons.length;
+    }
+
+    /**
+     * @return hash of the coordinates of all the polygons in this index, equal for indices of the
+     *         same polygons
+     */
+    public long getContentHash() {
+        return this.contentHash;
+    }
+
+    /**
+     * @param coordinates the coordinates of a polygon as given by Utils2D.toCoordinates
+     * @return minimum longitude, minimum latitude, maximum longitude and maximum latitude of the
+     *         polygon
+     */
+    private static double[] boundingBox(double[] coordinates) {
+
+        var bounds = new double[] { Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+                Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY };
+
+        for (int i = 0; i < coordinates.length; i += 2) {
+            bounds[0] = Math.min(bounds[0], coordinates[i]);
+            bounds[1] = Math.min(bounds[1], coordinates[i + 1]);
+            bounds[2] = Math.max(bounds[2], coordinates[i]);
+            bounds[3] = Math.max(bounds[3], coordinates[i + 1]);
+        }
+        return bounds;
+    }
+
+    /**
+     * @param longitude the longitude of a point
+     * @return index of the grid column containing the point, clamped to the grid
+     */
+    private int column(double longitude) {
+        var column = (int) Math.floor((longitude - this.minLongitude) / this.cellSize);
+        return Math.min(Math.max(column, 0), this.columns - 1);
+    }
+
+    /**
+     * @param latitude the latitude of a point
+     * @return index of the grid row containing the point, clamped to the grid
+     */
+    private int row(double latitude) {
+        var row = (int) Math.floor((latitude - this.minLatitude) / this.cellSize);
+        return Math.min(Math.max(row, 0), this.rows - 1);
+    }
+
+    /**
+     * Distributes the sides of the polygons to every grid cell that their bounding box overlaps.
+     */
+    private void buildCells() {
+
+        var cellEdges = new ArrayList<ArrayList<Integer>>();
+        for (int i = 0; i < this.columns * this.rows; i++) {
+            cellEdges.add(new ArrayList<Integer>());
+        }
+
+        for (int edge = 0; edge < this.edgePolygons.length; edge++) {
+            var startLongitude = this.edges[4 * edge];
+            var startLatitude = this.edges[4 * edge + 1];
+            var endLongitude = this.edges[4 * edge + 2];
+            var endLatitude = this.edges[4 * edge + 3];
+
+            var firstColumn = this.column(Math.min(startLongitude, endLongitude));
+            var lastColumn = this.column(Math.max(startLongitude, endLongitude));
+            var firstRow = this.row(Math.min(startLatitude, endLatitude));
+            var lastRow = this.row(Math.max(startLatitude, endLatitude));
+
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                for (int row = firstRow; row <= lastRow; row++) {
+                    cellEdges.get(column * this.rows + row).add(edge);
+                }
+            }
+        }
+
+        this.cells = new int[this.columns][this.rows][];
+        for (int column = 0; column < this.columns; column++) {
+            for (int row = 0; row < this.rows; row++) {
+                this.cells[column][row] = cellEdges.get(column * this.rows + row).stream()
+                        .mapToInt(Integer::intValue).toArray();
+            }
+        }
+    }
+
+    /**
+     * Determines if a line segment intersects any of the polygons in this index.
+     *
+     * @param start the start point of a line segment
+     * @param end   the end point of a line segment
+     * @return true if the line segment intersects any of the polygons, false otherwise
+     */
+    public boolean lineIntersects(Point start, Point end) {
+        return this.lineIntersects(start.longitude(), start.latitude(), end.longitude(),
+                end.latitude());
+    }
+
+    /**
+     * Determines if a line segment intersects any of the polygons in this index.
+     *
+     * @param startLongitude the longitude of the start point of a line segment
+     * @param startLatitude  the latitude of the start point of a line segment
+     * @param endLongitude   the longitude of the end point of a line segment
+     * @param endLatitude    the latitude of the end point of a line segment
+     * @return true if the line segment intersects any of the polygons, false otherwise
+     */
+    public boolean lineIntersects(double startLongitude, double startLatitude,
+            double endLongitude, double endLatitude) {
+
+        var minLongitude = Math.min(startLongitude, endLongitude);
+        var minLatitude = Math.min(startLatitude, endLatitude);
+        var maxLongitude = Math.max(startLongitude, endLongitude);
+        var maxLatitude = Math.max(startLatitude, endLatitude);
+
+        // A line segment completely outside of the grid can not touch any side
+        if (maxLongitude < this.minLongitude || maxLatitude < this.minLatitude
+                || minLongitude > this.minLongitude + this.columns * this.cellSize
+                || minLatitude > this.minLatitude + this.rows * this.cellSize) {
+            return false;
+        }
+
+        // Only the sides in the cells overlapped by the bounding box of the line segment are tested
+        for (int column = this.column(minLongitude); column <= this.column(maxLongitude);
+                column++) {
+            for (int row = this.row(minLatitude); row <= this.row(maxLatitude); row++) {
+                for (int edge : this.cells[column][row]) {
+                    var polygon = this.edgePolygons[edge];
+
+                    // Sides of polygons whose bounding box is not overlapped are rejected early
+                    if (maxLongitude < this.polygonBounds[4 * polygon]
+                            || maxLatitude < this.polygonBounds[4 * polygon + 1]
+                            || minLongitude > this.polygonBounds[4 * polygon + 2]
+                            || minLatitude > this.polygonBounds[4 * polygon + 3]) {
+                        continue;
+                    }
+                    if (Line2D.linesIntersect(startLatitude, startLongitude, endLatitude,
+                            endLongitude, this.edges[4 * edge + 1], this.edges[4 * edge],
+                            this.edges[4 * edge + 3], this.edges[4 * edge + 2])) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,643 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.awt.geom.Line2D;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import com.mapbox.geojson.Point;
+
+/**
+ * Coarse raster of the free space around a set of polygons, seen from a reference point such as the
+ * start position of a drone. A drone never crosses a side of a polygon, so it stays inside exactly
+ * the polygons that contain the reference point (the confinement area) and outside all the others
+ * (the buildings). Every cell of the grid is classified as FREE if no side passes through it and it
+ * lies on the same side of every polygon as the reference point, BLOCKED if it lies entirely on the
+ * other side of some polygon, and BOUNDARY otherwise. The cells that are not blocked are divided
+ * into regions connected through neighbouring cells, so that a target whose surroundings share no
+ * region with the start of a search is known to be unreachable without searching.
+ *
+ * The regions may join parts of the free space that are actually separated, for example by
+ * buildings touching each other, but they never separate parts that are connected.
+ *
+ * No side passes through a free cell, so a move that stays in free cells needs no test against the
+ * polygons. Every cell also records how far the free cells around it reach, so that a single look
+ * up tells if a move stays in free cells. A grid is built once per map and is never modified
+ * afterwards. It can be saved to a file and mapped back into memory, so that processes planning on
+ * the same map share one copy.
+ */
+public class OccupancyGrid {
+
+    // The classes of cells
+    public static final byte FREE = 0;
+    public static final byte BOUNDARY = 1;
+    public static final byte BLOCKED = 2;
+
+    // Identifies files of saved grids and the version of their format
+    private static final int FILE_MAGIC = 0x41514f47;
+    private static final int FILE_VERSION = 2;
+    // The size of the header of a saved grid, which is followed by the classes, the clearances and
+    // the regions. The header ends with the checksum of everything that follows it
+    private static final int FILE_HEADER_SIZE = 68;
+
+    // Cells are grown by this much when testing them against the sides, which keeps rounding
+    // errors from making a cell look free
+    private static final double CELL_MARGIN = 1e-12;
+
+    // Identify the map and the reference point the grid was built for
+    private long obstacleHash;
+    private long signature;
+    private double cellSize;
+    private double minLongitude;
+    private double minLatitude;
+    private int columns;
+    private int rows;
+    // The class of every cell, the cell in a column and row is at column * rows + row
+    private ByteBuffer states;
+    // The clearance of every cell: all cells less than this many columns and rows away are free,
+    // 0 for cells that are not free themselves
+    private ByteBuffer clearances;
+    // The region of every cell, 0 for blocked cells
+    private IntBuffer regions;
+    private int regionCount;
+
+    /**
+     * @param obstacles the index of polygons that should not be crossed
+     * @param reference a point of the free space, usually the start position of the drone
+     * @param cellSize  the side length of the cells
+     * @throws IllegalArgumentException if the side length is not positive
+     */
+    public OccupancyGrid(ObstacleIndex obstacles, Point reference, double cellSize) {
+
+        if (!(cellSize > 0)) {
+            throw new IllegalArgumentException("The cells of an occupancy grid need a size.");
+        }
+        var polygons = obstacles.getPolygons();
+        var coordinates = new double[polygons.size()][];
+        var minLongitude = reference.longitude();
+        var minLatitude = reference.latitude();
+        var maxLongitude = reference.longitude();
+        var maxLatitude = reference.latitude();
+
+        for (int i = 0; i < polygons.size(); i++) {
+            coordinates[i] = Utils2D.toCoordinates(polygons.get(i));
+            for (int j = 0; j < coordinates[i].length; j += 2) {
+                minLongitude = Math.min(minLongitude, coordinates[i][j]);
+                minLatitude = Math.min(minLatitude, coordinates[i][j + 1]);
+                maxLongitude = Math.max(maxLongitude, coordinates[i][j]);
+                maxLatitude = Math.max(maxLatitude, coordinates[i][j + 1]);
+            }
+        }
+
+        // The grid covers the polygons and the reference point with a ring of cells to spare
+        this.obstacleHash = obstacles.getContentHash();
+        this.signature = containmentSignature(obstacles, reference);
+        this.cellSize = cellSize;
+        this.minLongitude = minLongitude - cellSize;
+        this.minLatitude = minLatitude - cellSize;
+        this.columns = (int) Math.ceil((maxLongitude - minLongitude) / cellSize) + 2;
+        this.rows = (int) Math.ceil((maxLatitude - minLatitude) / cellSize) + 2;
+        var states = new byte[this.columns * this.rows];
+
+        // crossed[cell] is 1 + the index of the last polygon whose side passes through the cell
+        var crossed = new int[states.length];
+        for (int i = 0; i < coordinates.length; i++) {
+            this.classifyCells(coordinates[i], i + 1, crossed, reference, states);
+        }
+        this.states = ByteBuffer.wrap(states);
+        this.clearances = ByteBuffer.wrap(this.findClearances(states));
+        this.regions = IntBuffer.wrap(this.findRegions(states));
+    }
+
+    private OccupancyGrid() {
+    }
+
+    /**
+     * @param obstacles the index of polygons
+     * @param point     a point
+     * @return hash of the indices of the polygons containing the point, equal for points on the
+     *         same side of every polygon
+     */
+    public static long containmentSignature(ObstacleIndex obstacles, Point point) {
+
+        var polygons = obstacles.getPolygons();
+        long signature = polygons.size();
+
+        for (int i = 0; i < polygons.size(); i++) {
+            if (Utils2D.pointInPolygon(point.longitude(), point.latitude(),
+                    Utils2D.toCoordinates(polygons.get(i)))) {
+                signature = 31 * signature + i;
+            }
+        }
+        return signature;
+    }
+
+    /**
+     * @param longitude the longitude of a point
+     * @return index of the grid column containing the point, -1 if it is outside of the grid
+     */
+    private int column(double longitude) {
+        var column = (int) Math.floor((longitude - this.minLongitude) / this.cellSize);
+        return column >= 0 && column < this.columns ? column : -1;
+    }
+
+    /**
+     * @param latitude the latitude of a point
+     * @return index of the grid row containing the point, -1 if it is outside of the grid
+     */
+    private int row(double latitude) {
+        var row = (int) Math.floor((latitude - this.minLatitude) / this.cellSize);
+        return row >= 0 && row < this.rows ? row : -1;
+    }
+
+    /**
+     * @param longitude the longitude of a point
+     * @param latitude  the latitude of a point
+     * @return index of the cell containing the point, -1 if it is outside of the grid
+     */
+    private int cellAt(double longitude, double latitude) {
+
+        var column = this.column(longitude);
+        var row = this.row(latitude);
+        return column < 0 || row < 0 ? -1 : column * this.rows + row;
+    }
+
+    /**
+     * Determines if a line segment touches a cell, including its border.
+     *
+     * @param coordinates the coordinates of a polygon as given by Utils2D.toCoordinates
+     * @param side        the index of the first coordinate of the side of the polygon
+     * @param column      the column of the cell
+     * @param row         the row of the cell
+     * @return true if the side touches the cell, false otherwise
+     */
+    private boolean sideTouchesCell(double[] coordinates, int side, int column, int row) {
+
+        var next = (side + 2) % coordinates.length;
+        var west = this.minLongitude + column * this.cellSize - CELL_MARGIN;
+        var south = this.minLatitude + row * this.cellSize - CELL_MARGIN;
+        var east = west + this.cellSize + 2 * CELL_MARGIN;
+        var north = south + this.cellSize + 2 * CELL_MARGIN;
+        var startLongitude = coordinates[side];
+        var startLatitude = coordinates[side + 1];
+        var endLongitude = coordinates[next];
+        var endLatitude = coordinates[next + 1];
+
+        // A side ending inside the cell touches it, any other has to cross its border
+        if (west <= startLongitude && startLongitude <= east && south <= startLatitude
+                && startLatitude <= north) {
+            return true;
+        }
+        return Line2D.linesIntersect(startLongitude, startLatitude, endLongitude, endLatitude,
+                west, south, east, south)
+                || Line2D.linesIntersect(startLongitude, startLatitude, endLongitude,
+                        endLatitude, east, south, east, north)
+                || Line2D.linesIntersect(startLongitude, startLatitude, endLongitude,
+                        endLatitude, east, north, west, north)
+                || Line2D.linesIntersect(startLongitude, startLatitude, endLongitude,
+                        endLatitude, west, north, west, south);
+    }
+
+    /**
+     * Marks the cells the sides of a polygon pass through as boundary cells and the cells lying
+     * entirely on the other side of the polygon than the reference point as blocked.
+     *
+     * @param coordinates the coordinates of the polygon as given by Utils2D.toCoordinates
+     * @param stamp       1 + the index of the polygon
+     * @param crossed     1 + the index of the last polygon whose side passes through each cell
+     * @param reference   the point of the free space
+     * @param states      the classes of the cells
+     */
+    private void classifyCells(double[] coordinates, int stamp, int[] crossed, Point reference,
+            byte[] states) {
+
+        var firstColumn = this.columns;
+        var lastColumn = 0;
+        var firstRow = this.rows;
+        var lastRow = 0;
+
+        for (int i = 0; i < coordinates.length; i += 2) {
+            var next = (i + 2) % coordinates.length;
+            // Cells next to the ones the ends lie in can touch the side exactly at their border
+            var sideFirstColumn = Math.max(0, this.column(Math.min(coordinates[i],
+                    coordinates[next])) - 1);
+            var sideLastColumn = Math.min(this.columns - 1, this.column(Math.max(coordinates[i],
+                    coordinates[next])) + 1);
+            var sideFirstRow = Math.max(0, this.row(Math.min(coordinates[i + 1],
+                    coordinates[next + 1])) - 1);
+            var sideLastRow = Math.min(this.rows - 1, this.row(Math.max(coordinates[i + 1],
+                    coordinates[next + 1])) + 1);
+
+            for (int column = sideFirstColumn; column <= sideLastColumn; column++) {
+                for (int row = sideFirstRow; row <= sideLastRow; row++) {
+                    var cell = column * this.rows + row;
+                    if (crossed[cell] != stamp && this.sideTouchesCell(coordinates, i, column,
+                            row)) {
+                        crossed[cell] = stamp;
+                        if (states[cell] == FREE) {
+                            states[cell] = BOUNDARY;
+                        }
+                    }
+                }
+            }
+            firstColumn = Math.min(firstColumn, sideFirstColumn);
+            lastColumn = Math.max(lastColumn, sideLastColumn);
+            firstRow = Math.min(firstRow, sideFirstRow);
+            lastRow = Math.max(lastRow, sideLastRow);
+        }
+
+        // A cell that no side passes through lies on the same side of the polygon as its center.
+        // Cells beyond the bounding box are outside of the polygon, which only blocks them if the
+        // reference point is inside
+        var referenceInside = Utils2D.pointInPolygon(reference.longitude(),
+                reference.latitude(), coordinates);
+        if (referenceInside) {
+            firstColumn = 0;
+            lastColumn = this.columns - 1;
+            firstRow = 0;
+            lastRow = this.rows - 1;
+        }
+        for (int column = firstColumn; column <= lastColumn; column++) {
+            for (int row = firstRow; row <= lastRow; row++) {
+                var cell = column * this.rows + row;
+                if (crossed[cell] == stamp) {
+                    continue;
+                }
+                var inside = Utils2D.pointInPolygon(
+                        this.minLongitude + (column + 0.5) * this.cellSize,
+                        this.minLatitude + (row + 0.5) * this.cellSize, coordinates);
+                if (inside != referenceInside) {
+                    states[cell] = BLOCKED;
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes how far every cell is from the closest cell that is not free, counting cells outside
+     * of the grid as not free. The distance is the larger of the column and row difference, found
+     * by one pass forwards and one backwards over the grid.
+     *
+     * @param states the classes of the cells
+     * @return the clearance of every cell, at most Byte.MAX_VALUE
+     */
+    private byte[] findClearances(byte[] states) {
+
+        var clearances = new byte[states.length];
+
+        for (int cell = 0; cell < states.length; cell++) {
+            if (states[cell] == FREE) {
+                var column = cell / this.rows;
+                var row = cell % this.rows;
+                var closest = Math.min(this.clearanceAt(clearances, column, row - 1),
+                        this.clearanceAt(clearances, column - 1, row - 1));
+                closest = Math.min(closest, this.clearanceAt(clearances, column - 1, row));
+                closest = Math.min(closest, this.clearanceAt(clearances, column - 1, row + 1));
+                clearances[cell] = (byte) Math.min(closest + 1, Byte.MAX_VALUE);
+            }
+        }
+        for (int cell = states.length - 1; cell >= 0; cell--) {
+            if (states[cell] == FREE) {
+                var column = cell / this.rows;
+                var row = cell % this.rows;
+                var closest = Math.min(this.clearanceAt(clearances, column, row + 1),
+                        this.clearanceAt(clearances, column + 1, row + 1));
+                closest = Math.min(closest, this.clearanceAt(clearances, column + 1, row));
+                closest = Math.min(closest, this.clearanceAt(clearances, column + 1, row - 1));
+                clearances[cell] = (byte) Math.min(clearances[cell], closest + 1);
+            }
+        }
+        return clearances;
+    }
+
+    /**
+     * @param clearances the clearances of the cells
+     * @param column     the column of a cell
+     * @param row        the row of a cell
+     * @return the clearance of the cell, 0 if it is outside of the grid
+     */
+    private int clearanceAt(byte[] clearances, int column, int row) {
+
+        if (column < 0 || column >= this.columns || row < 0 || row >= this.rows) {
+            return 0;
+        }
+        return clearances[column * this.rows + row];
+    }
+
+    /**
+     * Labels the cells that are not blocked by the region they belong to, a region being a maximal
+     * set of such cells connected through cells sharing a side or a corner.
+     *
+     * @param states the classes of the cells
+     * @return the region of every cell, 0 for blocked cells
+     */
+    private int[] findRegions(byte[] states) {
+
+        var regions = new int[states.length];
+        var stack = new int[states.length];
+
+        for (int first = 0; first < states.length; first++) {
+            if (states[first] == BLOCKED || regions[first] != 0) {
+                continue;
+            }
+            this.regionCount++;
+            regions[first] = this.regionCount;
+            var stackSize = 0;
+            stack[stackSize++] = first;
+
+            while (stackSize > 0) {
+                var cell = stack[--stackSize];
+                var column = cell / this.rows;
+                var row = cell % this.rows;
+
+                for (int i = Math.max(0, column - 1); i <= Math.min(this.columns - 1, column + 1);
+                        i++) {
+                    for (int j = Math.max(0, row - 1); j <= Math.min(this.rows - 1, row + 1);
+                            j++) {
+                        var neighbour = i * this.rows + j;
+                        if (states[neighbour] != BLOCKED && regions[neighbour] == 0) {
+                            regions[neighbour] = this.regionCount;
+                            stack[stackSize++] = neighbour;
+                        }
+                    }
+                }
+            }
+        }
+        return regions;
+    }
+
+    /**
+     * @return hash of the polygons the grid was built for, as given by ObstacleIndex
+     */
+    public long getObstacleHash() {
+        return this.obstacleHash;
+    }
+
+    /**
+     * @return the containment signature of the reference point the grid was built for
+     */
+    public long getSignature() {
+        return this.signature;
+    }
+
+    /**
+     * @return the side length of the cells
+     */
+    public double getCellSize() {
+        return this.cellSize;
+    }
+
+    /**
+     * @return the number of regions of the free space
+     */
+    public int getRegionCount() {
+        return this.regionCount;
+    }
+
+    /**
+     * @param longitude the longitude of a point
+     * @param latitude  the latitude of a point
+     * @return class of the cell containing the point, FREE if the point is outside of the grid
+     */
+    public byte getState(double longitude, double latitude) {
+
+        var cell = this.cellAt(longitude, latitude);
+        return cell < 0 ? FREE : this.states.get(cell);
+    }
+
+    /**
+     * Determines if a line segment certainly does not touch any side of the polygons, which is the
+     * case if the clearance of the cell of its start reaches past the cell of its end, so that
+     * every cell under its bounding box is free.
+     *
+     * @param startLongitude the longitude of the start point of a line segment
+     * @param startLatitude  the latitude of the start point of a line segment
+     * @param endLongitude   the longitude of the end point of a line segment
+     * @param endLatitude    the latitude of the end point of a line segment
+     * @return true if the line segment lies in free cells only, false if it has to be tested
+     *         against the polygons
+     */
+    public boolean isFree(double startLongitude, double startLatitude, double endLongitude,
+            double endLatitude) {
+
+        var startColumn = this.column(startLongitude);
+        var startRow = this.row(startLatitude);
+        var endColumn = this.column(endLongitude);
+        var endRow = this.row(endLatitude);
+        if (startColumn < 0 || startRow < 0 || endColumn < 0 || endRow < 0) {
+            return false;
+        }
+        var distance = Math.max(Math.abs(endColumn - startColumn), Math.abs(endRow - startRow));
+        return this.clearances.get(startColumn * this.rows + startRow) > distance;
+    }
+
+    /**
+     * Determines if a path from a point may end within range of a target. The answer is false only
+     * if no cell within range of the target belongs to the region of the point, so the path
+     * search is sure to fail. A point in a blocked cell is inside some polygon and can only reach
+     * cells that are not free. If either of the points is too close to the edge of the grid,
+     * nothing is known and the answer is true.
+     *
+     * @param start  the start point of the path
+     * @param target the point that the path should lead to
+     * @param range  the range around the target within which the path should end
+     * @return false if there is certainly no such path, true if there may be one
+     */
+    public boolean mayReach(Point start, Point target, double range) {
+
+        var startCell = this.cellAt(start.longitude(), start.latitude());
+        if (startCell < 0) {
+            return true;
+        }
+        var enclosed = this.states.get(startCell) == BLOCKED;
+        var region = this.regions.get(startCell);
+        var targetLongitude = target.longitude();
+        var targetLatitude = target.latitude();
+        var firstColumn = this.column(targetLongitude - range);
+        var lastColumn = this.column(targetLongitude + range);
+        var firstRow = this.row(targetLatitude - range);
+        var lastRow = this.row(targetLatitude + range);
+        if (firstColumn < 0 || lastColumn < 0 || firstRow < 0 || lastRow < 0) {
+            return true;
+        }
+
+        for (int column = firstColumn; column <= lastColumn; column++) {
+            for (int row = firstRow; row <= lastRow; row++) {
+                var cell = column * this.rows + row;
+                if (enclosed ? this.states.get(cell) == FREE : this.regions.get(cell) != region) {
+                    continue;
+                }
+                // The point of the cell closest to the target has to be within range
+                var west = this.minLongitude + column * this.cellSize;
+                var south = this.minLatitude + row * this.cellSize;
+                var closestLongitude = Math.min(Math.max(targetLongitude, west),
+                        west + this.cellSize);
+                var closestLatitude = Math.min(Math.max(targetLatitude, south),
+                        south + this.cellSize);
+                if (Utils2D.distance(closestLongitude, closestLatitude, targetLongitude,
+                        targetLatitude) <= range) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Saves this grid to a file. The file is replaced only once the grid is completely written, so
+     * concurrent readers never see a partial grid.
+     *
+     * @param file the file the grid is saved to
+     * @throws IOException if the file can not be written
+     */
+    public void save(File file) throws IOException {
+
+        // The cells are laid out as in the file first, since the header holds their checksum
+        var cellCount = this.columns * this.rows;
+        var regionsStart = alignedSize(2 * cellCount);
+        var body = ByteBuffer.allocate(regionsStart + 4 * cellCount);
+        body.put(this.states.duplicate().clear());
+        body.put(this.clearances.duplicate().clear());
+        // The regions start at a multiple of 4 bytes
+        body.position(regionsStart);
+        body.asIntBuffer().put(this.regions.duplicate().clear());
+
+        var directory = file.getAbsoluteFile().getParentFile().toPath();
+        Files.createDirectories(directory);
+        var temporary = Files.createTempFile(directory, file.getName(), ".tmp");
+
+        try {
+            try (var output = new DataOutputStream(Files.newOutputStream(temporary))) {
+                output.writeInt(FILE_MAGIC);
+                output.writeInt(FILE_VERSION);
+                output.writeLong(this.obstacleHash);
+                output.writeDouble(this.cellSize);
+                output.writeLong(this.signature);
+                output.writeDouble(this.minLongitude);
+                output.writeDouble(this.minLatitude);
+                output.writeInt(this.columns);
+                output.writeInt(this.rows);
+                output.writeInt(this.regionCount);
+                output.writeLong(checksum(body.clear()));
+                output.write(body.array());
+            }
+            Files.move(temporary, file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            // Only left if the grid could not be moved into place
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * @param cells the classes, clearances and regions of the cells as laid out in a file
+     * @return the CRC-32 of the remaining bytes of the buffer
+     */
+    private static long checksum(ByteBuffer cells) {
+
+        var crc = new CRC32();
+        crc.update(cells.duplicate());
+        return crc.getValue();
+    }
+
+    /**
+     * @param size a number of bytes
+     * @return the smallest multiple of 4 that is not smaller than the size
+     */
+    private static int alignedSize(int size) {
+        return (size + 3) & ~3;
+    }
+
+    /**
+     * Maps a grid saved by save into memory. The classes, clearances and regions of the cells are
+     * read straight from the mapped file, which the operating system shares between all processes
+     * mapping it. The cells are checked against the checksum saved with them once when loading.
+     *
+     * @param file the file the grid was saved to
+     * @return the grid
+     * @throws IOException if the file can not be read or does not hold a grid
+     */
+    public static OccupancyGrid load(File file) throws IOException {
+
+        try (var channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.limit() < FILE_HEADER_SIZE || buffer.getInt() != FILE_MAGIC
+                    || buffer.getInt() != FILE_VERSION) {
+                throw new IOException("The file " + file + " does not hold an occupancy grid.");
+            }
+            var grid = new OccupancyGrid();
+            grid.obstacleHash = buffer.getLong();
+            grid.cellSize = buffer.getDouble();
+            grid.signature = buffer.getLong();
+            grid.minLongitude = buffer.getDouble();
+            grid.minLatitude = buffer.getDouble();
+            grid.columns = buffer.getInt();
+            grid.rows = buffer.getInt();
+            grid.regionCount = buffer.getInt();
+            var checksum = buffer.getLong();
+
+            // A grid that was damaged after it was saved would let moves through buildings
+            var cellCount = grid.columns * grid.rows;
+            var regionsStart = FILE_HEADER_SIZE + alignedSize(2 * cellCount);
+            if (grid.columns <= 0 || grid.rows <= 0
+                    || buffer.limit() != regionsStart + 4L * cellCount
+                    || checksum(buffer.duplicate().position(FILE_HEADER_SIZE)) != checksum) {
+                throw new IOException("The occupancy grid in " + file + " is damaged.");
+            }
+            grid.states = buffer.duplicate().position(FILE_HEADER_SIZE)
+                    .limit(FILE_HEADER_SIZE + cellCount).slice();
+            grid.clearances = buffer.duplicate().position(FILE_HEADER_SIZE + cellCount)
+                    .limit(FILE_HEADER_SIZE + 2 * cellCount).slice();
+            grid.regions = buffer.duplicate().position(regionsStart).slice().asIntBuffer();
+            return grid;
+        }
+    }
+
+    /**
+     * Takes the grid of a map and a reference point from a directory of saved grids, or builds it
+     * and saves it there for the next time. Saved grids are told apart by the polygons, the cell
+     * size and the containment signature of the reference point, which is all the grid depends on.
+     * A saved grid that can not be read or saved is only reported, since the grid can be built.
+     *
+     * @param directory the directory of saved grids
+     * @param obstacles the index of polygons that should not be crossed
+     * @param reference a point of the free space, usually the start position of the drone
+     * @param cellSize  the side length of the cells
+     * @return the grid
+     */
+    public static OccupancyGrid loadOrBuild(File directory, ObstacleIndex obstacles,
+            Point reference, double cellSize) {
+
+        var signature = containmentSignature(obstacles, reference);
+        var file = new File(directory, String.format("occupancy-%016x-%016x-%016x.grid",
+                obstacles.getContentHash(), Double.doubleToLongBits(cellSize), signature));
+
+        if (file.exists()) {
+            try {
+                var grid = load(file);
+                if (grid.obstacleHash == obstacles.getContentHash()
+                        && grid.cellSize == cellSize && grid.signature == signature) {
+                    return grid;
+                }
+                System.out.println("Ignoring occupancy grid " + file + " of a different map.");
+            } catch (IOException e) {
+                System.out.println("Ignoring occupancy grid " + file + " that can not be read.");
+            }
+        }
+        var grid = new OccupancyGrid(obstacles, reference, cellSize);
+        try {
+            grid.save(file);
+        } catch (IOException e) {
+            System.out.println("Error: Unable to save occupancy grid " + file + ".");
+            e.printStackTrace();
+        }
+        return grid;
+    }
+
+}
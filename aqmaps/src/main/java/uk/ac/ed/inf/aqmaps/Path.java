@@ -1,11 +1,12 @@
 package uk.ac.ed.inf.aqmaps;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import com.mapbox.geojson.Feature;
 import com.mapbox.geojson.Geometry;
 import com.mapbox.geojson.LineString;
 import com.mapbox.geojson.Point;
-import com.mapbox.geojson.Polygon;
 
 /**
  * Encapsulates sequence of moves as both-ways linked list structure. Provides functionality to
@@ -16,18 +17,25 @@ public class Path {
 
     //Used as a weight in heuristic function
     private static final double EPSILON = 2.0;
+    // Marks the start of a path which was not reached by any move
+    private static final int NO_DIRECTION = -1;
+    // The number of expansions between looks at the clock by a search with a time budget
+    private static final int CLOCK_CHECK_INTERVAL = 64;
     
-    private Point point;
-    private Integer usedDirection;
+    // The end point of the move, kept as plain coordinates to avoid allocations during search
+    private double longitude;
+    private double latitude;
+    private int usedDirection;
     private double length;
 
     private Path previous;
     private Path next;
 
-    private Path(Point point, Integer moveDirection, double length, Path previous,
-            Path next) {
+    private Path(double longitude, double latitude, int moveDirection, double length,
+            Path previous, Path next) {
 
-        this.point = point;
+        this.longitude = longitude;
+        this.latitude = latitude;
         this.usedDirection = moveDirection;
         this.length = length;
         this.previous = previous;
@@ -35,7 +43,7 @@ public class Path {
     }
 
     public Path(Point startPoint) {
-        this(startPoint, null, 0, null, null);
+        this(startPoint.longitude(), startPoint.latitude(), NO_DIRECTION, 0, null, null);
     }
 
     /**
@@ -69,7 +77,7 @@ public class Path {
 
         // Loop through the path until we reach the end
         while (true) {
-            points.add(path.point);
+            points.add(Point.fromLngLat(path.longitude, path.latitude));
             if (path.next != null) {
                 path = path.next;
             } else {
@@ -90,43 +98,63 @@ public class Path {
         while (path.previous != null) {
             path = path.previous;
         }
-        return path.point;
+        return Point.fromLngLat(path.longitude, path.latitude);
     }
 
     /**
-     * Reconstructs the path from end to start.
-     * 
-     * @return reference to the start of this path
+     * Extends the end of this path by a new move. Does not keep track of length.
+     *
+     * @param longitude the longitude of the new end point of the path
+     * @param latitude  the latitude of the new end point of the path
+     * @param direction the direction that was used to get to this point
      */
-    private Path getStart() {
+    public void addMove(double longitude, double latitude, int direction) {
         
         var path = this;
         
-        // Loop through the path until we reach the start
-        while (path.previous != null) {
-            path.previous.next = path;
-            path = path.previous;
+        // Loop through the path until we reach the end
+        while (path.next != null) {
+            path = path.next;
         }
-        return path;
+        // Insert the new end
+        var next = new Path(longitude, latitude, direction, 0, path, null);
+        path.next = next;
     }
 
     /**
-     * Extends the end of this path by a new move. Does not keep track of length.
+     * Extends the end of this path by the moves of another path, which should start where this
+     * one ends. Does not keep track of length.
      *
-     * @param end       the new end point of the path
-     * @param direction the direction that was used to get to this point
+     * @param path reference to the start of the path whose moves are added
      */
-    public void addMove(Point end, int direction) {
-        
+    public void append(Path path) {
+
+        var end = this;
+
+        // Loop through the path until we reach the end
+        while (end.next != null) {
+            end = end.next;
+        }
+        // Copies the moves after the start of the other path
+        while (path.next != null) {
+            path = path.next;
+            end.next = new Path(path.longitude, path.latitude, path.usedDirection, 0, end, null);
+            end = end.next;
+        }
+    }
+
+    /**
+     * @return the last point in this path
+     */
+    public Point getEndPoint() {
+
         var path = this;
-        
+
         // Loop through the path until we reach the end
         while (path.next != null) {
             path = path.next;
         }
-        // Insert the new end
-        var next = new Path(end, direction, 0, path, null);
-        path.next = next;
+        return Point.fromLngLat(path.longitude, path.latitude);
     }
 
     /**
@@ -141,106 +169,317 @@ public class Path {
     }
 
     /**
-     * Finds legal continuations of this path. Legal continuation can not cross obstacle and is
-     * result of moving this point attribute by move length in a one of directions.
+     * Writes the current path from here onwards as a line string feature straight from the
+     * coordinates of its moves, without building the points.
+     *
+     * @param writer the writer of the feature collection the feature belongs to
+     * @throws IOException if the feature can not be written
+     */
+    public void writeFeature(GeoJsonWriter writer) throws IOException {
+
+        var path = this;
+        writer.beginLineString();
+
+        // Loop through the path until we reach the end
+        while (path != null) {
+            writer.writeCoordinate(path.longitude, path.latitude);
+            path = path.next;
+        }
+        writer.endLineString(Collections.emptyMap());
+    }
+
+    /**
+     * Quantizes a point to a cell of a square lattice so that nearly identical points reached by
+     * different sequences of moves are recognised as the same search state.
      * 
-     * @param moveLength the length of each move in each path
-     * @param directions the list of directions in degrees that will be explored
-     * @param obstacles  the list of polygons that should not be crossed
-     * @return list of legal continuations of this path
+     * @param longitude the longitude of the point
+     * @param latitude  the latitude of the point
+     * @param cellSize  the side length of a lattice cell
+     * @return key that uniquely identifies the cell containing the point
      */
-    private ArrayList<Path> findBranches(double moveLength, ArrayList<Integer> directions,
-            ArrayList<Polygon> obstacles) {
-        
-        var branches = new ArrayList<Path>();
-        var start = this.point;
+    private static long cellKey(double longitude, double latitude, double cellSize) {
+
+        var column = (long) Math.floor(longitude / cellSize);
+        var row = (long) Math.floor(latitude / cellSize);
+
+        // Packs both cell coordinates to a single number, 32 bits each
+        return (column << 32) ^ (row & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Assigns value based on length of a path and estimated distance to target point.
+     *
+     * @param length          the length of the path
+     * @param longitude       the longitude of the end point of the path
+     * @param latitude        the latitude of the end point of the path
+     * @param targetLongitude the longitude of the point that the path should lead to
+     * @param targetLatitude  the latitude of the point that the path should lead to
+     * @return heuristic value = path length + epsilon * distance to target point
+     */
+    private static double weightedHeuristicValue(double length, double longitude,
+            double latitude, double targetLongitude, double targetLatitude) {
+
+        var remainingDistance = Utils2D.distance(longitude, latitude, targetLongitude,
+                targetLatitude);
+
+        return length + EPSILON * remainingDistance;
+    }
+
+    /**
+     * Expands a search node by adding its legal continuations to the search space. Legal
+     * continuation can not cross obstacle and is result of moving the point of the node by move
+     * length in a one of directions. Continuations ending in a lattice cell that was already
+     * expanded, or that was already reached by a path that is not longer, are left out.
+     * 
+     * @param arena           the storage of the search
+     * @param node            the index of the node that is expanded
+     * @param targetLongitude the longitude of the point that the path should lead to
+     * @param targetLatitude  the latitude of the point that the path should lead to
+     * @param moves           the model of moves that will be explored
+     * @param obstacles       the index of polygons that should not be crossed
+     * @param grid            the occupancy grid of the polygons, null if there is none
+     * @param cellSize        the side length of lattice cells used to recognise duplicate points
+     */
+    private static void expand(SearchArena arena, int node, double targetLongitude,
+            double targetLatitude, MoveModel moves, ObstacleIndex obstacles, OccupancyGrid grid,
+            double cellSize) {
+
+        var longitude = arena.getLongitude(node);
+        var latitude = arena.getLatitude(node);
+        var length = arena.getLength(node) + moves.getMoveLength();
+        var directions = moves.getDirections();
+        var longitudeOffsets = moves.getLongitudeOffsets();
+        var latitudeOffsets = moves.getLatitudeOffsets();
+        var exactTests = 0;
 
         // Finds the end points resulting from moving the current point in the given directions by a
         // given length
-        for (Integer direction : directions) {
-            var end = Utils2D.movePoint(start, moveLength, direction);
+        for (int i = 0; i < directions.length; i++) {
+            var endLongitude = longitude + longitudeOffsets[i];
+            var endLatitude = latitude + latitudeOffsets[i];
 
             // If the line between start and end point intersects any of the obstacles, this
-            // continuation of the path is not involved in output
-            if (!Utils2D.lineIntersectPolygons(start, end, obstacles)) {
-                var branch = new Path(end, direction, this.length + moveLength, this, null);
-                branches.add(branch);
+            // continuation of the path is not involved in output. Moves through free cells of
+            // the occupancy grid can not intersect them, only the others are tested exactly
+            if (grid == null || !grid.isFree(longitude, latitude, endLongitude, endLatitude)) {
+                exactTests++;
+                if (obstacles.lineIntersects(longitude, latitude, endLongitude, endLatitude)) {
+                    continue;
+                }
+            }
+            if (arena.offerCell(cellKey(endLongitude, endLatitude, cellSize), length)) {
+                var heuristicValue = weightedHeuristicValue(length, endLongitude, endLatitude,
+                        targetLongitude, targetLatitude);
+                arena.push(arena.addNode(endLongitude, endLatitude, length, heuristicValue, node,
+                        directions[i]));
             }
         }
-        return branches;
+        arena.countExpansion(exactTests);
     }
 
     /**
-     * Assigns value based on length of this path and estimated distance to target point.
+     * Builds a path from the start of a search to one of its nodes.
      *
-     * @param target  the point that the path should lead to
-     * @param epsilon the weight, epsilon > 1 favors path length over distance to target
-     * @return heuristic value = path length + epsilon * distance to target point
+     * @param arena the storage of the search
+     * @param node  the index of the node where the path ends
+     * @return reference to the start of the path
      */
-    private double weightedHeuristicValue(Point target, double epsilon) {
-        
-        var pathLength = this.length;
-        var remainingDistance = Utils2D.distance(this.point, target);
+    private static Path fromSearchNode(SearchArena arena, int node) {
 
-        return pathLength + epsilon * remainingDistance;
+        Path next = null;
+
+        // Links the path from its end to the start
+        while (true) {
+            var parent = arena.getParent(node);
+            var direction = parent < 0 ? NO_DIRECTION : arena.getDirection(node);
+            var path = new Path(arena.getLongitude(node), arena.getLatitude(node), direction,
+                    arena.getLength(node), null, next);
+
+            if (next != null) {
+                next.previous = path;
+            }
+            if (parent < 0) {
+                return path;
+            }
+            next = path;
+            node = parent;
+        }
     }
 
     /**
-     * Chooses the best path according to heuristic function
-     * 
-     * @param paths  the paths to choose from
-     * @param target the point that each path should lead to
-     * @return path from the list that has the lowest (best) heuristic value
+     * Performs an variation of A* search. Paths ending in a lattice cell that was already expanded,
+     * or that was already reached by a path that is not longer, are pruned from the search space.
+     * The search keeps its nodes in a given arena and only the path that is found is built from
+     * them.
+     *
+     * @param start     the start point of the path
+     * @param target    target the point that the path should lead to
+     * @param range     the range around the target within which the path should end
+     * @param moves     the model of moves the path can be made of
+     * @param obstacles the index of polygons that should not be crossed
+     * @param cellSize  the side length of lattice cells used to recognise duplicate points, should
+     *                  be well below the move length
+     * @param arena     the storage for the search, its previous content is discarded, and the
+     *                  settings of the search: the occupancy grid that rejects unreachable
+     *                  targets and the budget after which the search gives up
+     * @return path to the target point within range while avoiding obstacles, null if there is
+     *         none or the search gave up, which the outcome of the arena tells apart
      */
-    private static Path chooseBestPath(ArrayList<Path> paths, Point target) {
-        
-        var bestPath = paths.get(0);
-        var bestHeuristicValue = bestPath.weightedHeuristicValue(target, EPSILON);
-        
-        // Finds the minimum heuristic value and corresponding path
-        for (Path path : paths) {
-            var heuristicValue = path.weightedHeuristicValue(target, EPSILON);
+    public static Path findPathToPoint(Point start, Point target, double range, MoveModel moves,
+            ObstacleIndex obstacles, double cellSize, SearchArena arena) {
 
-            if (heuristicValue < bestHeuristicValue) {
-                bestPath = path;
-                bestHeuristicValue = heuristicValue;
-            }
+        var event = new PlannerEvents.LegSearch();
+        event.begin();
+        var startTime = System.nanoTime();
+
+        var path = search(start, target, range, moves, obstacles, cellSize, arena);
+
+        var nanos = System.nanoTime() - startTime;
+        event.end();
+        var metrics = arena.getMetrics();
+        if (metrics != null) {
+            metrics.recordLegSearch(arena.getOutcome(), arena.getExpandedCount(),
+                    arena.getFrontierPeak(), arena.getCollisionTestCount(), nanos);
+        }
+        if (event.shouldCommit()) {
+            event.startLongitude = start.longitude();
+            event.startLatitude = start.latitude();
+            event.targetLongitude = target.longitude();
+            event.targetLatitude = target.latitude();
+            event.outcome = arena.getOutcome().name();
+            event.moves = path != null ? path.getMoveDirections().size() : -1;
+            event.nodesExpanded = arena.getExpandedCount();
+            event.frontierPeak = arena.getFrontierPeak();
+            event.collisionTests = arena.getCollisionTestCount();
+            event.commit();
         }
-        return bestPath;
+        return path;
     }
 
     /**
-     * Performs an variation of A* search.
+     * Runs the search of findPathToPoint, leaving its statistics in the arena.
      *
-     * @param start      the start point of the path
-     * @param target     target the point that the path should lead to
-     * @param range      the range around the target within which the path should end
-     * @param moveLength the length of each move in the path
-     * @param directions the list of allowed directions for the moves in degrees
-     * @param obstacles  the list of polygons that should not be crossed
-     * @return path to the target point within range while avoiding obstacles
+     * @param start     the start point of the path
+     * @param target    target the point that the path should lead to
+     * @param range     the range around the target within which the path should end
+     * @param moves     the model of moves the path can be made of
+     * @param obstacles the index of polygons that should not be crossed
+     * @param cellSize  the side length of lattice cells used to recognise duplicate points
+     * @param arena     the storage for the search, its previous content is discarded
+     * @return path to the target point within range while avoiding obstacles, null if there is
+     *         none
      */
-    public static Path findPathToPoint(Point start, Point target, double range, double moveLength,
-            ArrayList<Integer> directions, ArrayList<Polygon> obstacles) {
+    private static Path search(Point start, Point target, double range, MoveModel moves,
+            ObstacleIndex obstacles, double cellSize, SearchArena arena) {
+
+        var targetLongitude = target.longitude();
+        var targetLatitude = target.latitude();
+        var startTime = System.nanoTime();
+
+        arena.reset();
+        // A grid of other polygons than those of the search would give wrong answers
+        var grid = arena.getOccupancyGrid();
+        if (grid != null && grid.getObstacleHash() != obstacles.getContentHash()) {
+            grid = null;
+        }
+        if (grid != null && !grid.mayReach(start, target, range)) {
+            arena.setOutcome(SearchArena.Outcome.REJECTED);
+            return null;
+        }
+        var startNode = arena.addNode(start.longitude(), start.latitude(), 0, 0, -1, NO_DIRECTION);
+        arena.closeCell(cellKey(start.longitude(), start.latitude(), cellSize));
+        var node = startNode;
 
-        var startingPath = new Path(start);
-        // The search space
-        var paths = startingPath.findBranches(moveLength, directions, obstacles);
-        
         // Terminates if there is no path left to explore = there is no path to target
-        while (paths.size() > 0) {
-            // Choose the most promising path to reach the target 
-            var path = chooseBestPath(paths, target);
+        while (node >= 0) {
+            // Gives up once the budget is spent, looking at the clock only every few expansions
+            var expanded = arena.getExpandedCount();
+            if (expanded >= arena.getMaxExpansions() || (expanded % CLOCK_CHECK_INTERVAL == 0
+                    && System.nanoTime() - startTime > arena.getMaxNanos())) {
+                arena.setClosestNode(closestNode(arena, targetLongitude, targetLatitude));
+                arena.setOutcome(SearchArena.Outcome.EXHAUSTED);
+                return null;
+            }
+            // Adds the continuations of the expanded node to the search space
+            expand(arena, node, targetLongitude, targetLatitude, moves, obstacles, grid,
+                    cellSize);
+            node = -1;
 
-            // If the target is reached, returns the start of the path that it found
-            if (Utils2D.distance(path.point, target) < range) {
-                return path.getStart();
+            // Choose the most promising path to reach the target, skipping paths whose end point
+            // was expanded since they were added
+            while (!arena.isSearchSpaceEmpty() && node < 0) {
+                node = arena.poll();
+                if (!arena.closeCell(cellKey(arena.getLongitude(node), arena.getLatitude(node),
+                        cellSize))) {
+                    node = -1;
+                }
             }
-            // The most promising path did not yet reach the target so it is expanded and its
-            // continuations are added to the search space
-            paths.addAll(path.findBranches(moveLength, directions, obstacles));
-            paths.remove(path);
+            // If the target is reached, returns the path that it found
+            if (node >= 0 && Utils2D.distance(arena.getLongitude(node), arena.getLatitude(node),
+                    targetLongitude, targetLatitude) < range) {
+                arena.setOutcome(SearchArena.Outcome.FOUND);
+                return fromSearchNode(arena, node);
+            }
+            // The most promising path did not yet reach the target so it is expanded in the next
+            // iteration
         }
+        arena.setOutcome(SearchArena.Outcome.UNREACHABLE);
         return null;
     }
+
+    /**
+     * @param arena           the storage of a search
+     * @param targetLongitude the longitude of the point that the path should lead to
+     * @param targetLatitude  the latitude of the point that the path should lead to
+     * @return index of the node of the search closest to the target point
+     */
+    private static int closestNode(SearchArena arena, double targetLongitude,
+            double targetLatitude) {
+
+        var closest = 0;
+        var closestDistance = Double.POSITIVE_INFINITY;
+
+        for (int node = 0; node < arena.getNodeCount(); node++) {
+            var distance = Utils2D.distance(arena.getLongitude(node), arena.getLatitude(node),
+                    targetLongitude, targetLatitude);
+            if (distance < closestDistance) {
+                closest = node;
+                closestDistance = distance;
+            }
+        }
+        return closest;
+    }
+
+    /**
+     * Gives the best effort result of the last search in an arena that ran out of its budget.
+     *
+     * @param arena the storage of the search
+     * @return path from the start of the search to the point closest to its target that it
+     *         reached, null if the search did not run out of its budget
+     */
+    public static Path getPartialPath(SearchArena arena) {
+
+        if (arena.getOutcome() != SearchArena.Outcome.EXHAUSTED || arena.getClosestNode() < 0) {
+            return null;
+        }
+        return fromSearchNode(arena, arena.getClosestNode());
+    }
+
+    /**
+     * Performs an variation of A* search with a new arena for its nodes.
+     *
+     * @param start     the start point of the path
+     * @param target    target the point that the path should lead to
+     * @param range     the range around the target within which the path should end
+     * @param moves     the model of moves the path can be made of
+     * @param obstacles the index of polygons that should not be crossed
+     * @param cellSize  the side length of lattice cells used to recognise duplicate points, should
+     *                  be well below the move length
+     * @return path to the target point within range while avoiding obstacles
+     */
+    public static Path findPathToPoint(Point start, Point target, double range, MoveModel moves,
+            ObstacleIndex obstacles, double cellSize) {
+        return findPathToPoint(start, target, range, moves, obstacles, cellSize,
+                new SearchArena());
+    }
 }
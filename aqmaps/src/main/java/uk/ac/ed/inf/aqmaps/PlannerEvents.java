@@ -0,0 +1,112 @@
+package uk.ac.ed.inf.aqmaps;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events of the planner, recorded together with the events of the JVM when a
+ * recording is running, e.g. one started by -XX:StartFlightRecording. An event that is not enabled
+ * by the running recording costs nothing but its creation, so they are always emitted.
+ */
+public final class PlannerEvents {
+
+    private PlannerEvents() {
+    }
+
+    /**
+     * A single search for a path by Path.findPathToPoint.
+     */
+    @Name("uk.ac.ed.inf.aqmaps.LegSearch")
+    @Label("Leg Search")
+    @Category({ "Aqmaps", "Planner" })
+    @Description("Search for a path from a point to the range around a target")
+    @StackTrace(false)
+    public static class LegSearch extends Event {
+
+        @Label("Start Longitude")
+        double startLongitude;
+        @Label("Start Latitude")
+        double startLatitude;
+        @Label("Target Longitude")
+        double targetLongitude;
+        @Label("Target Latitude")
+        double targetLatitude;
+        @Label("Outcome")
+        @Description("FOUND, UNREACHABLE, REJECTED by the occupancy grid or EXHAUSTED budget")
+        String outcome;
+        @Label("Moves")
+        @Description("Number of moves of the path found, -1 if none was found")
+        int moves;
+        @Label("Nodes Expanded")
+        int nodesExpanded;
+        @Label("Frontier Peak")
+        @Description("Largest number of nodes waiting in the search space at once")
+        int frontierPeak;
+        @Label("Collision Tests")
+        @Description("Number of moves tested exactly against the no-fly zones")
+        int collisionTests;
+    }
+
+    /**
+     * The optimization of the visit order of a reading routine.
+     */
+    @Name("uk.ac.ed.inf.aqmaps.TourOptimization")
+    @Label("Tour Optimization")
+    @Category({ "Aqmaps", "Planner" })
+    @StackTrace(false)
+    public static class TourOptimization extends Event {
+
+        @Label("Nodes")
+        int nodes;
+        @Label("Improvement Passes")
+        long improvementPasses;
+        @Label("Moves Applied")
+        long movesApplied;
+        @Label("Length")
+        @Description("Length of the cycle given by the resulting visit order")
+        double length;
+    }
+
+    /**
+     * A whole reading routine, from planning to returning to the start position.
+     */
+    @Name("uk.ac.ed.inf.aqmaps.Routine")
+    @Label("Reading Routine")
+    @Category({ "Aqmaps" })
+    @StackTrace(false)
+    public static class Routine extends Event {
+
+        @Label("Sensors")
+        int sensors;
+        @Label("Sensors Read")
+        int sensorsRead;
+        @Label("No-Fly Zone Edges")
+        int noFlyZoneEdges;
+        @Label("Moves")
+        int moves;
+    }
+
+    /**
+     * A single attempt of a request to the server, up to the arrival of the body, or of the
+     * headers for bodies that are read as a stream.
+     */
+    @Name("uk.ac.ed.inf.aqmaps.HttpRequest")
+    @Label("Server Request")
+    @Category({ "Aqmaps", "Network" })
+    @StackTrace(false)
+    public static class HttpRequest extends Event {
+
+        @Label("URL")
+        String url;
+        @Label("Attempt")
+        int attempt;
+        @Label("Status")
+        @Description("Status code of the response, -1 if there was none")
+        int status;
+    }
+
+}
@@ -0,0 +1,133 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * Keeps copies of resources of the server that never change, such as the details of What3Words
+ * addresses and the no-fly zones, in a local directory. A resource is stored in a file at the same
+ * relative path as on the server, under a directory named by the host and port of the server, so
+ * the directory mirrors the part of each server that was used and servers of different maps are
+ * kept apart. Resources that are stored are read without connecting to the server, unless the
+ * cache validates them, in which case they are downloaded again and the stored copy is replaced if
+ * it differs. The cache can be used by concurrent loads.
+ */
+public class ResourceCache {
+
+    private File directory;
+    private boolean validate;
+
+    /**
+     * @param directory the directory where the resources are stored
+     * @param validate  if true stored resources are compared with the server and replaced if they
+     *                  differ, otherwise they are used without connecting to the server
+     */
+    public ResourceCache(File directory, boolean validate) {
+        this.directory = directory;
+        this.validate = validate;
+    }
+
+    /**
+     * @param url an URL address of a resource
+     * @return the file where the resource is stored
+     */
+    private File fileOf(String url) {
+
+        var uri = URI.create(url);
+        if (uri.getHost() == null) {
+            throw new IllegalArgumentException("Resource " + url + " can not be cached.");
+        }
+        var server = uri.getPort() < 0 ? uri.getHost() : uri.getHost() + "_" + uri.getPort();
+        var directory = this.directory.toPath().resolve(server).normalize();
+        var file = directory.resolve(uri.getPath().replaceFirst("^/+", "")).normalize();
+        // A path leading out of the directory of the server can not be stored
+        if (!file.startsWith(directory)) {
+            throw new IllegalArgumentException("Resource " + url + " can not be cached.");
+        }
+        return file.toFile();
+    }
+
+    /**
+     * Reads a resource, from the stored copy if there is one.
+     *
+     * @param url      an URL address of the resource
+     * @param download starts downloading the resource from the server
+     * @return future completed with the content of the resource
+     */
+    public CompletableFuture<String> readStringAsync(String url,
+            Supplier<CompletableFuture<String>> download) {
+
+        var file = this.fileOf(url);
+        String stored = null;
+
+        if (file.isFile()) {
+            try {
+                stored = Files.readString(file.toPath(), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                System.out.println("Ignoring cached " + file + " that can not be read.");
+            }
+        }
+        if (stored != null && !this.validate) {
+            return CompletableFuture.completedFuture(stored);
+        }
+
+        var cached = stored;
+        return download.get().handle((content, error) -> {
+            if (error != null) {
+                var cause = error instanceof CompletionException ? error.getCause() : error;
+                // A stored copy is better than nothing if the server can not be reached
+                if (cached == null) {
+                    throw cause instanceof UncheckedIOException ? (UncheckedIOException) cause
+                            : new UncheckedIOException(new IOException(cause));
+                }
+                System.out.println("Using cached " + file + ", validation failed.");
+                return cached;
+            }
+            if (!content.equals(cached)) {
+                if (cached != null) {
+                    System.out.println("Replacing cached " + file + " that differs from server.");
+                }
+                this.store(file, content);
+            }
+            return content;
+        });
+    }
+
+    /**
+     * Stores a resource. The file is replaced only once the content is completely written, so
+     * concurrent readers never see a partial file, and a partial file is deleted. Failing to store
+     * is only reported, since the content is still available.
+     *
+     * @param file    the file where the resource is stored
+     * @param content the content of the resource
+     */
+    private void store(File file, String content) {
+
+        try {
+            Files.createDirectories(file.getParentFile().toPath());
+            var temporary = Files.createTempFile(file.getParentFile().toPath(), file.getName(),
+                    ".tmp");
+            try {
+                Files.writeString(temporary, content, StandardCharsets.UTF_8);
+                Files.move(temporary, file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                // Only left if the content could not be moved into place
+                Files.deleteIfExists(temporary);
+            }
+
+        } catch (IOException e) {
+            System.out.println("Error: Unable to cache " + file + ".");
+            e.printStackTrace();
+        }
+    }
+
+}
@@ -0,0 +1,213 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Totals of the work done by the planner and the loaders during a run, collected so that slow
+ * days can be explained and compared. Everything is recorded once per path search, visit order
+ * optimization, routine or request, never per search node, so the metrics are cheap enough to be
+ * always collected. The totals can be recorded from any number of threads at once.
+ */
+public class RunMetrics {
+
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    // Reading routines
+    private LongAdder routines = new LongAdder();
+    private LongAdder sensors = new LongAdder();
+    private LongAdder sensorsRead = new LongAdder();
+    private LongAdder noFlyZoneEdges = new LongAdder();
+    private LongAdder moves = new LongAdder();
+    private LongAdder routineNanos = new LongAdder();
+
+    // Path searches
+    private LongAdder legSearches = new LongAdder();
+    // Searches by the way they ended, indexed by the ordinal of the outcome
+    private LongAdder[] legOutcomes = newAdders(SearchArena.Outcome.values().length);
+    private LongAdder nodesExpanded = new LongAdder();
+    private LongAdder collisionTests = new LongAdder();
+    private LongAccumulator frontierPeak = new LongAccumulator(Math::max, 0);
+    private LongAdder searchNanos = new LongAdder();
+    private LongAccumulator maxSearchNanos = new LongAccumulator(Math::max, 0);
+
+    // Visit order optimizations
+    private LongAdder tourOptimizations = new LongAdder();
+    private LongAdder improvementPasses = new LongAdder();
+    private LongAdder movesApplied = new LongAdder();
+    private LongAdder tourNanos = new LongAdder();
+
+    // Requests to the server
+    private LongAdder requests = new LongAdder();
+    private LongAdder failedRequests = new LongAdder();
+    private LongAdder requestNanos = new LongAdder();
+    private LongAccumulator maxRequestNanos = new LongAccumulator(Math::max, 0);
+
+    /**
+     * @param count the number of adders
+     * @return array of new adders
+     */
+    private static LongAdder[] newAdders(int count) {
+
+        var adders = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    /**
+     * @param sensors        the number of sensors of the routine
+     * @param sensorsRead    the number of sensors that were read, the others were not reached
+     * @param noFlyZoneEdges the number of edges of the no-fly zones, including the confinement area
+     * @param moves          the number of moves the drone made
+     * @param nanos          the running time of the routine in nanoseconds
+     */
+    public void recordRoutine(int sensors, int sensorsRead, int noFlyZoneEdges, int moves,
+            long nanos) {
+
+        this.routines.increment();
+        this.sensors.add(sensors);
+        this.sensorsRead.add(sensorsRead);
+        this.noFlyZoneEdges.add(noFlyZoneEdges);
+        this.moves.add(moves);
+        this.routineNanos.add(nanos);
+    }
+
+    /**
+     * @param outcome        the way the search ended
+     * @param nodesExpanded  the number of search nodes expanded
+     * @param frontierPeak   the largest number of nodes in the search space at once
+     * @param collisionTests the number of moves tested exactly against the no-fly zones
+     * @param nanos          the running time of the search in nanoseconds
+     */
+    public void recordLegSearch(SearchArena.Outcome outcome, int nodesExpanded,
+            int frontierPeak, int collisionTests, long nanos) {
+
+        this.legSearches.increment();
+        this.legOutcomes[outcome.ordinal()].increment();
+        this.nodesExpanded.add(nodesExpanded);
+        this.collisionTests.add(collisionTests);
+        this.frontierPeak.accumulate(frontierPeak);
+        this.searchNanos.add(nanos);
+        this.maxSearchNanos.accumulate(nanos);
+    }
+
+    /**
+     * @param improvementPasses the number of improvement passes of the optimization
+     * @param movesApplied      the number of improving moves applied to the visit order
+     * @param nanos             the running time of the optimization in nanoseconds
+     */
+    public void recordTourOptimization(long improvementPasses, long movesApplied, long nanos) {
+
+        this.tourOptimizations.increment();
+        this.improvementPasses.add(improvementPasses);
+        this.movesApplied.add(movesApplied);
+        this.tourNanos.add(nanos);
+    }
+
+    /**
+     * @param succeeded true if the server responded with success, false otherwise
+     * @param nanos     the latency of the request in nanoseconds
+     */
+    public void recordRequest(boolean succeeded, long nanos) {
+
+        this.requests.increment();
+        if (!succeeded) {
+            this.failedRequests.increment();
+        }
+        this.requestNanos.add(nanos);
+        this.maxRequestNanos.accumulate(nanos);
+    }
+
+    /**
+     * @param outcome a way a search can end
+     * @return the number of path searches that ended this way
+     */
+    public long getLegSearches(SearchArena.Outcome outcome) {
+        return this.legOutcomes[outcome.ordinal()].sum();
+    }
+
+    /**
+     * @return the total number of nodes expanded by the path searches
+     */
+    public long getNodesExpanded() {
+        return this.nodesExpanded.sum();
+    }
+
+    /**
+     * @return the total number of moves tested exactly against the no-fly zones by the searches
+     */
+    public long getCollisionTests() {
+        return this.collisionTests.sum();
+    }
+
+    /**
+     * @return the total running time of the path searches in milliseconds
+     */
+    public double getSearchMillis() {
+        return this.searchNanos.sum() / NANOS_PER_MILLI;
+    }
+
+    /**
+     * Writes the totals as a JSON object with a member for each kind of recorded work.
+     *
+     * @param file the file the summary is written to, it is replaced if it exists
+     * @throws IOException if the file can not be written
+     */
+    public void writeSummary(File file) throws IOException {
+
+        try (var writer = new JsonWriter(new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)))) {
+            writer.setIndent("  ");
+            writer.beginObject();
+
+            writer.name("routines").beginObject();
+            writer.name("count").value(this.routines.sum());
+            writer.name("sensors").value(this.sensors.sum());
+            writer.name("sensorsRead").value(this.sensorsRead.sum());
+            writer.name("noFlyZoneEdges").value(this.noFlyZoneEdges.sum());
+            writer.name("moves").value(this.moves.sum());
+            writer.name("millis").value(this.routineNanos.sum() / NANOS_PER_MILLI);
+            writer.endObject();
+
+            writer.name("legSearches").beginObject();
+            writer.name("count").value(this.legSearches.sum());
+            for (var outcome : SearchArena.Outcome.values()) {
+                writer.name(outcome.name().toLowerCase(Locale.ROOT))
+                        .value(this.legOutcomes[outcome.ordinal()].sum());
+            }
+            writer.name("nodesExpanded").value(this.nodesExpanded.sum());
+            writer.name("collisionTests").value(this.collisionTests.sum());
+            writer.name("frontierPeak").value(this.frontierPeak.get());
+            writer.name("millis").value(this.searchNanos.sum() / NANOS_PER_MILLI);
+            writer.name("maxMillis").value(this.maxSearchNanos.get() / NANOS_PER_MILLI);
+            writer.endObject();
+
+            writer.name("tourOptimizations").beginObject();
+            writer.name("count").value(this.tourOptimizations.sum());
+            writer.name("improvementPasses").value(this.improvementPasses.sum());
+            writer.name("movesApplied").value(this.movesApplied.sum());
+            writer.name("millis").value(this.tourNanos.sum() / NANOS_PER_MILLI);
+            writer.endObject();
+
+            writer.name("requests").beginObject();
+            writer.name("count").value(this.requests.sum());
+            writer.name("failed").value(this.failedRequests.sum());
+            writer.name("millis").value(this.requestNanos.sum() / NANOS_PER_MILLI);
+            writer.name("maxMillis").value(this.maxRequestNanos.get() / NANOS_PER_MILLI);
+            writer.endObject();
+
+            writer.endObject();
+        }
+    }
+
+}
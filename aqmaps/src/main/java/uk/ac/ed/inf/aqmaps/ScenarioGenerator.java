@@ -0,0 +1,323 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import com.google.gson.stream.JsonWriter;
+import com.mapbox.geojson.Feature;
+import com.mapbox.geojson.Point;
+import com.mapbox.geojson.Polygon;
+
+/**
+ * Generates synthetic maps in a directory laid out the same way as the server, which DataServer can
+ * serve in its place. The buildings are rectangles and convex polygons of random sizes and
+ * rotations that keep a gap wide enough for the drone between each other and the edge of the area.
+ * The sensors of every day are placed at random outside the buildings. The maps are determined by
+ * the seed, so the same arguments always give the same maps.
+ */
+public class ScenarioGenerator {
+
+    // Part of the area covered by buildings if they can all be placed
+    private static final double BUILT_UP_RATIO = 0.25;
+    // Gap kept between buildings and from the edge of the area, wider than a move of the drone
+    private static final double CLEARANCE = 0.0004;
+    // The number of random placements tried for every building before it is left out
+    private static final int PLACEMENT_ATTEMPTS = 50;
+    private static final double LOW_BATTERY_THRESHOLD = 10.0;
+    private static final double MAX_READING = 256;
+
+    // The west, south, east and north bound of the area
+    private double[] bounds;
+    private Random random;
+    // Bounding boxes of the buildings grown by half the clearance, west, south, east, north each
+    private ArrayList<double[]> occupied;
+    private ArrayList<Polygon> buildings;
+
+    /**
+     * @param bounds the west, south, east and north bound of the area of the maps
+     * @param seed   the seed of the random choices
+     */
+    public ScenarioGenerator(double[] bounds, long seed) {
+
+        this.bounds = bounds;
+        this.random = new Random(seed);
+        this.occupied = new ArrayList<double[]>();
+        this.buildings = new ArrayList<Polygon>();
+    }
+
+    /**
+     * @param from the lower end
+     * @param to   the upper end
+     * @return uniformly random number between the ends
+     */
+    private double between(double from, double to) {
+        return from + this.random.nextDouble() * (to - from);
+    }
+
+    /**
+     * @param longitude the longitude of a point
+     * @param latitude  the latitude of a point
+     * @return true if the point is within half the clearance of a building, false otherwise
+     */
+    private boolean isOccupied(double longitude, double latitude) {
+
+        for (var box : this.occupied) {
+            if (box[0] <= longitude && longitude <= box[2] && box[1] <= latitude
+                    && latitude <= box[3]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param candidate the bounding box of a new building grown by half the clearance
+     * @return true if the box overlaps the box of any building placed so far, false otherwise
+     */
+    private boolean overlapsOccupied(double[] candidate) {
+
+        for (var box : this.occupied) {
+            if (candidate[0] < box[2] && box[0] < candidate[2] && candidate[1] < box[3]
+                    && box[1] < candidate[3]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Creates the corners of a building around the origin: a rectangle or a convex polygon with
+     * 5 to 8 corners on an ellipse, both rotated at random.
+     *
+     * @param size the typical side length of a building
+     * @return longitude and latitude offsets of the corners, in counterclockwise order
+     */
+    private double[][] randomShape(double size) {
+
+        var width = size * this.between(0.5, 1.5);
+        var height = size * this.between(0.5, 1.5);
+        var rotation = this.between(0, Math.PI);
+        double[] angles;
+
+        if (this.random.nextBoolean()) {
+            var diagonal = Math.atan2(height, width);
+            angles = new double[] { diagonal, Math.PI - diagonal, Math.PI + diagonal,
+                    2 * Math.PI - diagonal };
+            width = Math.hypot(width, height) / 2;
+            height = width;
+        } else {
+            angles = new double[5 + this.random.nextInt(4)];
+            for (int i = 0; i < angles.length; i++) {
+                angles[i] = this.between(0, 2 * Math.PI);
+            }
+            Arrays.sort(angles);
+            width /= 2;
+            height /= 2;
+        }
+        var corners = new double[angles.length][];
+        for (int i = 0; i < angles.length; i++) {
+            var x = width * Math.cos(angles[i]);
+            var y = height * Math.sin(angles[i]);
+            corners[i] = new double[] { x * Math.cos(rotation) - y * Math.sin(rotation),
+                    x * Math.sin(rotation) + y * Math.cos(rotation) };
+        }
+        return corners;
+    }
+
+    /**
+     * Places buildings at random where they keep the clearance from each other and from the edge
+     * of the area. Buildings that do not fit are left out.
+     *
+     * @param count the number of buildings that should be placed
+     * @return the number of buildings that were placed
+     */
+    public int placeBuildings(int count) {
+
+        var width = this.bounds[2] - this.bounds[0];
+        var height = this.bounds[3] - this.bounds[1];
+        var size = Math.sqrt(BUILT_UP_RATIO * width * height / Math.max(count, 1));
+        var placed = 0;
+
+        for (int i = 0; i < count; i++) {
+            for (int attempt = 0; attempt < PLACEMENT_ATTEMPTS; attempt++) {
+                var corners = this.randomShape(size);
+                var box = new double[] { Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE,
+                        -Double.MAX_VALUE };
+                for (var corner : corners) {
+                    box[0] = Math.min(box[0], corner[0]);
+                    box[1] = Math.min(box[1], corner[1]);
+                    box[2] = Math.max(box[2], corner[0]);
+                    box[3] = Math.max(box[3], corner[1]);
+                }
+                // The building with its clearance has to fit in the area
+                var westSpace = this.bounds[0] + CLEARANCE - box[0];
+                var eastSpace = this.bounds[2] - CLEARANCE - box[2];
+                var southSpace = this.bounds[1] + CLEARANCE - box[1];
+                var northSpace = this.bounds[3] - CLEARANCE - box[3];
+                if (westSpace >= eastSpace || southSpace >= northSpace) {
+                    continue;
+                }
+                var longitude = this.between(westSpace, eastSpace);
+                var latitude = this.between(southSpace, northSpace);
+                var grown = new double[] { longitude + box[0] - CLEARANCE / 2,
+                        latitude + box[1] - CLEARANCE / 2, longitude + box[2] + CLEARANCE / 2,
+                        latitude + box[3] + CLEARANCE / 2 };
+                if (this.overlapsOccupied(grown)) {
+                    continue;
+                }
+                var points = new ArrayList<Point>();
+                for (var corner : corners) {
+                    points.add(Point.fromLngLat(longitude + corner[0], latitude + corner[1]));
+                }
+                points.add(points.get(0));
+                this.buildings.add(Polygon.fromLngLats(List.of(points)));
+                this.occupied.add(grown);
+                placed++;
+                break;
+            }
+        }
+        return placed;
+    }
+
+    /**
+     * @return random point of the area that is not within half the clearance of any building
+     */
+    public Point randomFreePoint() {
+
+        for (int attempt = 0; attempt < PLACEMENT_ATTEMPTS * 1000; attempt++) {
+            var longitude = this.between(this.bounds[0] + CLEARANCE, this.bounds[2] - CLEARANCE);
+            var latitude = this.between(this.bounds[1] + CLEARANCE, this.bounds[3] - CLEARANCE);
+            if (!this.isOccupied(longitude, latitude)) {
+                return Point.fromLngLat(longitude, latitude);
+            }
+        }
+        throw new IllegalStateException("The area has no free space left.");
+    }
+
+    /**
+     * @param file the file the content is written to
+     * @return JSON writer of the file
+     * @throws IOException if the file can not be created
+     */
+    private static JsonWriter openJson(File file) throws IOException {
+
+        Files.createDirectories(file.getParentFile().toPath());
+        return new JsonWriter(new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Writes the buildings placed so far as the no-fly zones of the maps.
+     *
+     * @param root the directory of the maps
+     * @throws IOException if the file can not be written
+     */
+    public void writeNoFlyZones(File root) throws IOException {
+
+        var file = new File(root, "buildings/no-fly-zones.geojson");
+        Files.createDirectories(file.getParentFile().toPath());
+
+        try (var writer = new GeoJsonWriter(file)) {
+            for (int i = 0; i < this.buildings.size(); i++) {
+                var feature = Feature.fromGeometry(this.buildings.get(i));
+                feature.addStringProperty("name", "Building " + (i + 1));
+                feature.addStringProperty("fill", "#ff0000");
+                writer.writeFeature(feature);
+            }
+        }
+    }
+
+    /**
+     * Writes the sensors of a day and the details of their what 3 words, placed at random outside
+     * the buildings.
+     *
+     * @param root  the directory of the maps
+     * @param date  the day
+     * @param count the number of sensors
+     * @throws IOException if the files can not be written
+     */
+    public void writeSensors(File root, LocalDate date, int count) throws IOException {
+
+        var directory = String.format("maps/%04d/%02d/%02d", date.getYear(),
+                date.getMonthValue(), date.getDayOfMonth());
+
+        try (var sensors = openJson(new File(root, directory + "/air-quality-data.json"))) {
+            sensors.beginArray();
+
+            for (int i = 0; i < count; i++) {
+                var words = "sensor" + i + ".day" + date.toString().replace("-", "") + ".synthetic";
+                var location = this.randomFreePoint();
+                var battery = this.between(0, 100);
+
+                sensors.beginObject();
+                sensors.name("location").value(words);
+                sensors.name("battery").value(battery);
+                // Sensors with low battery report nonsense, as on the real server. Readings are
+                // written with a decimal point whatever the default locale is
+                sensors.name("reading").value(battery < LOW_BATTERY_THRESHOLD
+                        ? (this.random.nextBoolean() ? "NaN" : "null")
+                        : String.format(Locale.ROOT, "%.2f", this.between(0, MAX_READING)));
+                sensors.endObject();
+
+                var detailsFile = new File(root,
+                        "words/" + words.replace('.', '/') + "/details.json");
+                try (var details = openJson(detailsFile)) {
+                    details.beginObject();
+                    details.name("words").value(words);
+                    details.name("coordinates").beginObject();
+                    details.name("lng").value(location.longitude());
+                    details.name("lat").value(location.latitude());
+                    details.endObject();
+                    details.endObject();
+                }
+            }
+            sensors.endArray();
+        }
+    }
+
+    /**
+     * Arguments: output directory, first date, last date (both YYYY-MM-DD, inclusive), number of
+     * sensors per day, number of buildings, seed and optionally the west, south, east and north
+     * bound of the area, which default to the confinement area of the drone.
+     */
+    public static void main(String[] args) throws IOException {
+
+        var root = new File(args[0]);
+        var firstDate = LocalDate.parse(args[1]);
+        var lastDate = LocalDate.parse(args[2]);
+        var sensorCount = Integer.parseInt(args[3]);
+        var buildingCount = Integer.parseInt(args[4]);
+        var seed = Long.parseLong(args[5]);
+        var bounds = App.getConfinementBounds();
+        if (args.length >= 10) {
+            for (int i = 0; i < bounds.length; i++) {
+                bounds[i] = Double.parseDouble(args[6 + i]);
+            }
+        }
+
+        var generator = new ScenarioGenerator(bounds, seed);
+        var placed = generator.placeBuildings(buildingCount);
+        generator.writeNoFlyZones(root);
+        for (var date = firstDate; !date.isAfter(lastDate); date = date.plusDays(1)) {
+            generator.writeSensors(root, date, sensorCount);
+        }
+        var start = generator.randomFreePoint();
+
+        System.out.println("Placed " + placed + " of " + buildingCount + " buildings");
+        System.out.println("Confinement area: -Daqmaps.confinementArea=" + bounds[0] + ","
+                + bounds[1] + "," + bounds[2] + "," + bounds[3]);
+        System.out.println("Free start position: " + start.latitude() + " "
+                + start.longitude());
+    }
+
+}
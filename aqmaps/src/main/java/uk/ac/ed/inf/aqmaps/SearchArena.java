@@ -0,0 +1,492 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.util.Arrays;
+
+/**
+ * Reusable storage for the state of a path search. Search nodes are kept in parallel primitive
+ * arrays and referred to by their index, the search space is a binary heap of node indices and the
+ * lattice cells that were reached are kept in an open addressing hash table. The storage only grows
+ * and is cleared in constant time, so a single arena can serve any number of consecutive searches
+ * without producing garbage. An arena must not be used by more than one search at a time.
+ */
+public class SearchArena {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final double MAX_CELL_LOAD = 0.5;
+
+    // Search nodes, the i-th node is described by the i-th element of each of the arrays
+    private double[] longitudes;
+    private double[] latitudes;
+    private double[] lengths;
+    private double[] heuristicValues;
+    private int[] parents;
+    private int[] directions;
+    private int nodeCount;
+
+    // Binary heap of indices of nodes that are yet to be expanded, ordered by heuristic value
+    private int[] heap;
+    private int heapSize;
+
+    /**
+     * Hash table of reached lattice cells. A slot is in use only if its stamp equals the current
+     * generation, so the table is cleared by starting a new generation.
+     */
+    private long[] cellKeys;
+    private double[] cellLengths;
+    private boolean[] cellClosed;
+    private int[] cellStamps;
+    private int cellCount;
+    private int generation;
+
+    // Statistics of the current search, counted per expansion rather than per move
+    private int expandedCount;
+    private int collisionTestCount;
+    private int frontierPeak;
+    // Settings of the searches: where the statistics go, the free space and the budget of a search
+    private RunMetrics metrics;
+    private OccupancyGrid occupancyGrid;
+    private int maxExpansions;
+    private long maxNanos;
+    // How the last search ended and, if it ran out of budget, its node closest to the target
+    private Outcome outcome;
+    private int closestNode;
+
+    /**
+     * The ways a search can end.
+     */
+    public enum Outcome {
+        // A path was found
+        FOUND,
+        // Every reachable point was explored without finding a path
+        UNREACHABLE,
+        // The occupancy grid showed there is no path, so no point was explored
+        REJECTED,
+        // The search ran out of its budget of expansions or time
+        EXHAUSTED
+    }
+
+    public SearchArena() {
+
+        this.longitudes = new double[INITIAL_CAPACITY];
+        this.latitudes = new double[INITIAL_CAPACITY];
+        this.lengths = new double[INITIAL_CAPACITY];
+        this.heuristicValues = new double[INITIAL_CAPACITY];
+        this.parents = new int[INITIAL_CAPACITY];
+        this.directions = new int[INITIAL_CAPACITY];
+        this.heap = new int[INITIAL_CAPACITY];
+
+        this.cellKeys = new long[INITIAL_CAPACITY];
+        this.cellLengths = new double[INITIAL_CAPACITY];
+        this.cellClosed = new boolean[INITIAL_CAPACITY];
+        this.cellStamps = new int[INITIAL_CAPACITY];
+        this.generation = 1;
+        this.maxExpansions = Integer.MAX_VALUE;
+        this.maxNanos = Long.MAX_VALUE;
+        this.closestNode = -1;
+    }
+
+    /**
+     * Forgets all nodes, the search space and the reached cells so that a new search can start.
+     */
+    public void reset() {
+
+        this.nodeCount = 0;
+        this.heapSize = 0;
+        this.cellCount = 0;
+        this.generation++;
+        this.expandedCount = 0;
+        this.collisionTestCount = 0;
+        this.frontierPeak = 0;
+        this.outcome = null;
+        this.closestNode = -1;
+
+        // On the very unlikely overflow of generations the stamps are cleared for real
+        if (this.generation == 0) {
+            Arrays.fill(this.cellStamps, 0);
+            this.generation = 1;
+        }
+    }
+
+    /**
+     * @return the metrics that receive the statistics of the searches, null if there are none
+     */
+    public RunMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * @param metrics the metrics that receive the statistics of the searches, null for none
+     */
+    public void setMetrics(RunMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return the occupancy grid used to reject unreachable targets, null if there is none
+     */
+    public OccupancyGrid getOccupancyGrid() {
+        return this.occupancyGrid;
+    }
+
+    /**
+     * @param occupancyGrid the occupancy grid used to reject unreachable targets, null for none
+     */
+    public void setOccupancyGrid(OccupancyGrid occupancyGrid) {
+        this.occupancyGrid = occupancyGrid;
+    }
+
+    /**
+     * Limits the work of every search, which is unlimited by default.
+     *
+     * @param maxExpansions the number of nodes a search may expand
+     * @param maxNanos      the time in nanoseconds a search may take
+     */
+    public void setBudget(int maxExpansions, long maxNanos) {
+        this.maxExpansions = maxExpansions;
+        this.maxNanos = maxNanos;
+    }
+
+    /**
+     * @return the number of nodes a search may expand
+     */
+    public int getMaxExpansions() {
+        return this.maxExpansions;
+    }
+
+    /**
+     * @return the time in nanoseconds a search may take
+     */
+    public long getMaxNanos() {
+        return this.maxNanos;
+    }
+
+    /**
+     * Gives this arena the same metrics, occupancy grid and budget as another one.
+     *
+     * @param settings the arena whose settings are copied
+     */
+    public void copySettings(SearchArena settings) {
+
+        this.metrics = settings.metrics;
+        this.occupancyGrid = settings.occupancyGrid;
+        this.maxExpansions = settings.maxExpansions;
+        this.maxNanos = settings.maxNanos;
+    }
+
+    /**
+     * @return how the last search ended, null if it did not end yet
+     */
+    public Outcome getOutcome() {
+        return this.outcome;
+    }
+
+    /**
+     * @param outcome how the current search ended
+     */
+    public void setOutcome(Outcome outcome) {
+        this.outcome = outcome;
+    }
+
+    /**
+     * @return the index of the node closest to the target of a search that ran out of budget, -1
+     *         if there is none
+     */
+    public int getClosestNode() {
+        return this.closestNode;
+    }
+
+    /**
+     * @param closestNode the index of the node closest to the target of the current search
+     */
+    public void setClosestNode(int closestNode) {
+        this.closestNode = closestNode;
+    }
+
+    /**
+     * Counts the expansion of a node.
+     *
+     * @param collisionTests the number of moves from the node tested exactly against the obstacles
+     */
+    public void countExpansion(int collisionTests) {
+
+        this.expandedCount++;
+        this.collisionTestCount += collisionTests;
+    }
+
+    /**
+     * @return the number of nodes expanded since the last reset
+     */
+    public int getExpandedCount() {
+        return this.expandedCount;
+    }
+
+    /**
+     * @return the number of moves tested exactly against the obstacles since the last reset
+     */
+    public int getCollisionTestCount() {
+        return this.collisionTestCount;
+    }
+
+    /**
+     * @return the largest number of nodes that were in the search space at once since the last
+     *         reset
+     */
+    public int getFrontierPeak() {
+        return this.frontierPeak;
+    }
+
+    /**
+     * @return the number of nodes created since the last reset
+     */
+    public int getNodeCount() {
+        return this.nodeCount;
+    }
+
+    /**
+     * Creates a new search node.
+     *
+     * @param longitude      the longitude of the point of the node
+     * @param latitude       the latitude of the point of the node
+     * @param length         the length of the path from the start to the node
+     * @param heuristicValue the value of the heuristic function for the node
+     * @param parent         the index of the node this one was reached from, -1 for the start
+     * @param direction      the direction of the move from the parent to this node
+     * @return index of the new node
+     */
+    public int addNode(double longitude, double latitude, double length, double heuristicValue,
+            int parent, int direction) {
+
+        if (this.nodeCount == this.longitudes.length) {
+            var capacity = 2 * this.nodeCount;
+            this.longitudes = Arrays.copyOf(this.longitudes, capacity);
+            this.latitudes = Arrays.copyOf(this.latitudes, capacity);
+            this.lengths = Arrays.copyOf(this.lengths, capacity);
+            this.heuristicValues = Arrays.copyOf(this.heuristicValues, capacity);
+            this.parents = Arrays.copyOf(this.parents, capacity);
+            this.directions = Arrays.copyOf(this.directions, capacity);
+        }
+        var node = this.nodeCount;
+        this.longitudes[node] = longitude;
+        this.latitudes[node] = latitude;
+        this.lengths[node] = length;
+        this.heuristicValues[node] = heuristicValue;
+        this.parents[node] = parent;
+        this.directions[node] = direction;
+        this.nodeCount++;
+
+        return node;
+    }
+
+    /**
+     * @param node the index of a node
+     * @return longitude of the point of the node
+     */
+    public double getLongitude(int node) {
+        return this.longitudes[node];
+    }
+
+    /**
+     * @param node the index of a node
+     * @return latitude of the point of the node
+     */
+    public double getLatitude(int node) {
+        return this.latitudes[node];
+    }
+
+    /**
+     * @param node the index of a node
+     * @return length of the path from the start to the node
+     */
+    public double getLength(int node) {
+        return this.lengths[node];
+    }
+
+    /**
+     * @param node the index of a node
+     * @return index of the node this one was reached from, -1 for the start
+     */
+    public int getParent(int node) {
+        return this.parents[node];
+    }
+
+    /**
+     * @param node the index of a node
+     * @return direction of the move from the parent to this node
+     */
+    public int getDirection(int node) {
+        return this.directions[node];
+    }
+
+    /**
+     * @return true if there is no node left in the search space, false otherwise
+     */
+    public boolean isSearchSpaceEmpty() {
+        return this.heapSize == 0;
+    }
+
+    /**
+     * @return the number of nodes currently in the search space
+     */
+    public int getSearchSpaceSize() {
+        return this.heapSize;
+    }
+
+    /**
+     * Adds a node to the search space.
+     *
+     * @param node the index of a node
+     */
+    public void push(int node) {
+
+        if (this.heapSize == this.heap.length) {
+            this.heap = Arrays.copyOf(this.heap, 2 * this.heapSize);
+        }
+        var value = this.heuristicValues[node];
+        var i = this.heapSize++;
+
+        // Sift the node up until its parent in the heap is not worse
+        while (i > 0) {
+            var parent = (i - 1) / 2;
+            if (this.heuristicValues[this.heap[parent]] <= value) {
+                break;
+            }
+            this.heap[i] = this.heap[parent];
+            i = parent;
+        }
+        this.heap[i] = node;
+
+        if (this.heapSize > this.frontierPeak) {
+            this.frontierPeak = this.heapSize;
+        }
+    }
+
+    /**
+     * Removes the node with the lowest heuristic value from the search space.
+     *
+     * @return index of the removed node
+     */
+    public int poll() {
+
+        var best = this.heap[0];
+        var last = this.heap[--this.heapSize];
+        var value = this.heuristicValues[last];
+        var i = 0;
+
+        // Sift the last node down from the top until none of its children in the heap is better
+        while (true) {
+            var child = 2 * i + 1;
+            if (child >= this.heapSize) {
+                break;
+            }
+            if (child + 1 < this.heapSize && this.heuristicValues[this.heap[child + 1]]
+                    < this.heuristicValues[this.heap[child]]) {
+                child++;
+            }
+            if (value <= this.heuristicValues[this.heap[child]]) {
+                break;
+            }
+            this.heap[i] = this.heap[child];
+            i = child;
+        }
+        if (this.heapSize > 0) {
+            this.heap[i] = last;
+        }
+        return best;
+    }
+
+    /**
+     * Finds the slot of a cell in the hash table, inserting the cell if it was not reached yet.
+     *
+     * @param key the key of a lattice cell
+     * @return index of the slot of the cell
+     */
+    private int cellSlot(long key) {
+
+        if (this.cellCount + 1 > MAX_CELL_LOAD * this.cellKeys.length) {
+            this.growCells();
+        }
+        var mask = this.cellKeys.length - 1;
+        // Spreads the bits of the key so that neighbouring cells do not cluster
+        var hash = key * 0x9E3779B97F4A7C15L;
+        var slot = (int) (hash ^ (hash >>> 32)) & mask;
+
+        while (this.cellStamps[slot] == this.generation) {
+            if (this.cellKeys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        // The cell was not reached yet
+        this.cellStamps[slot] = this.generation;
+        this.cellKeys[slot] = key;
+        this.cellLengths[slot] = Double.POSITIVE_INFINITY;
+        this.cellClosed[slot] = false;
+        this.cellCount++;
+
+        return slot;
+    }
+
+    /**
+     * Doubles the capacity of the hash table of reached cells, keeping its content.
+     */
+    private void growCells() {
+
+        var keys = this.cellKeys;
+        var lengths = this.cellLengths;
+        var closed = this.cellClosed;
+        var stamps = this.cellStamps;
+        var generation = this.generation;
+
+        this.cellKeys = new long[2 * keys.length];
+        this.cellLengths = new double[2 * keys.length];
+        this.cellClosed = new boolean[2 * keys.length];
+        this.cellStamps = new int[2 * keys.length];
+        this.cellCount = 0;
+        this.generation = 1;
+
+        for (int i = 0; i < keys.length; i++) {
+            if (stamps[i] == generation) {
+                var slot = this.cellSlot(keys[i]);
+                this.cellLengths[slot] = lengths[i];
+                this.cellClosed[slot] = closed[i];
+            }
+        }
+    }
+
+    /**
+     * Records that a path of a given length reached a cell, unless the cell was already expanded or
+     * reached by a path that is not longer.
+     *
+     * @param key    the key of a lattice cell
+     * @param length the length of the path reaching the cell
+     * @return true if the length was recorded, false otherwise
+     */
+    public boolean offerCell(long key, double length) {
+
+        var slot = this.cellSlot(key);
+
+        if (this.cellClosed[slot] || this.cellLengths[slot] <= length) {
+            return false;
+        }
+        this.cellLengths[slot] = length;
+        return true;
+    }
+
+    /**
+     * Marks a cell as expanded.
+     *
+     * @param key the key of a lattice cell
+     * @return true if the cell was not expanded before, false otherwise
+     */
+    public boolean closeCell(long key) {
+
+        var slot = this.cellSlot(key);
+
+        if (this.cellClosed[slot]) {
+            return false;
+        }
+        this.cellClosed[slot] = true;
+        return true;
+    }
+
+}
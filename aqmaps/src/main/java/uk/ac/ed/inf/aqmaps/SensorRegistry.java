@@ -0,0 +1,164 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import com.mapbox.geojson.Point;
+
+/**
+ * Gives the start position of a drone and the sensors it should visit dense integer ids, which are
+ * used as the nodes of the visit order and the indices of the planned legs. The start position is
+ * node 0 and the sensors are nodes 1 to n in the order of their list. Coordinates, readings,
+ * battery state and the visited state are kept in primitive arrays and bit sets indexed by the
+ * node, so looking up a sensor, marking it as visited or checking whether it was visited take
+ * constant time. The reading and battery state of a sensor are only taken when it is read.
+ */
+public class SensorRegistry {
+
+    // The node of the start position of the drone
+    public static final int START_NODE = 0;
+
+    private ArrayList<AirQualitySensor> sensors;
+    private double[] longitudes;
+    private double[] latitudes;
+    // Readings of the sensors that were not read or have low battery are left as NaN
+    private double[] readings;
+    private BitSet lowBattery;
+    private BitSet visited;
+
+    /**
+     * @param start   the position where the drone starts and should return to
+     * @param sensors the sensors the drone should visit
+     */
+    public SensorRegistry(Point start, ArrayList<AirQualitySensor> sensors) {
+
+        var nodeCount = sensors.size() + 1;
+        this.sensors = sensors;
+        this.longitudes = new double[nodeCount];
+        this.latitudes = new double[nodeCount];
+        this.readings = new double[nodeCount];
+        this.lowBattery = new BitSet(nodeCount);
+        this.visited = new BitSet(nodeCount);
+
+        Arrays.fill(this.readings, Double.NaN);
+
+        this.longitudes[START_NODE] = start.longitude();
+        this.latitudes[START_NODE] = start.latitude();
+
+        for (int node = 1; node < nodeCount; node++) {
+            var location = sensors.get(node - 1).getLocationAsPoint();
+            this.longitudes[node] = location.longitude();
+            this.latitudes[node] = location.latitude();
+        }
+    }
+
+    /**
+     * @return the number of nodes, the start position and all the sensors
+     */
+    public int getNodeCount() {
+        return this.longitudes.length;
+    }
+
+    /**
+     * @param node the node of a sensor
+     * @return the sensor
+     */
+    public AirQualitySensor getSensor(int node) {
+        return this.sensors.get(node - 1);
+    }
+
+    /**
+     * @param node a node
+     * @return the longitude of the node
+     */
+    public double getLongitude(int node) {
+        return this.longitudes[node];
+    }
+
+    /**
+     * @param node a node
+     * @return the latitude of the node
+     */
+    public double getLatitude(int node) {
+        return this.latitudes[node];
+    }
+
+    /**
+     * @param node a node
+     * @return the location of the node as a point
+     */
+    public Point getPoint(int node) {
+        return Point.fromLngLat(this.longitudes[node], this.latitudes[node]);
+    }
+
+    /**
+     * @return the locations of all the nodes as points, ordered by node
+     */
+    public ArrayList<Point> getPoints() {
+
+        var points = new ArrayList<Point>(this.getNodeCount());
+        for (int node = 0; node < this.getNodeCount(); node++) {
+            points.add(this.getPoint(node));
+        }
+        return points;
+    }
+
+    /**
+     * @param node the node of a sensor
+     * @return true if the sensor was read and its battery is low, false otherwise
+     */
+    public boolean hasLowBattery(int node) {
+        return this.lowBattery.get(node);
+    }
+
+    /**
+     * @param node the node of a sensor
+     * @return level of air pollution, NaN if the sensor was not read or its battery is low
+     */
+    public double getReading(int node) {
+        return this.readings[node];
+    }
+
+    /**
+     * @param node the node of a sensor
+     * @return true if the sensor was read, false otherwise
+     */
+    public boolean isVisited(int node) {
+        return this.visited.get(node);
+    }
+
+    /**
+     * Marks a sensor as visited and takes its reading, which is not valid if its battery is low.
+     *
+     * @param node the node of a sensor that was read
+     */
+    public void markVisited(int node) {
+
+        var sensor = this.getSensor(node);
+        if (sensor.hasLowBattery()) {
+            this.lowBattery.set(node);
+        } else {
+            this.readings[node] = sensor.getReading();
+        }
+        this.visited.set(node);
+    }
+
+    /**
+     * @param node the node of a sensor
+     * @return properties of the point marker representing the sensor, showing the reading taken
+     *         if it was read
+     */
+    public LinkedHashMap<String, String> getMarkerProperties(int node) {
+        return AirQualitySensor.markerProperties(this.getSensor(node).getLocation(),
+                this.isVisited(node), this.hasLowBattery(node), this.readings[node]);
+    }
+
+    /**
+     * @return the number of sensors that were read
+     */
+    public int getVisitedCount() {
+        return this.visited.cardinality();
+    }
+
+}
@@ -6,44 +6,121 @@ import com.mapbox.geojson.Point;
 import com.mapbox.geojson.Polygon;
 
 /**
- * Provides some basic functions for points and lines in 2D Euclidian space.
+ * Provides some basic functions for points and lines in 2D Euclidian space. Apart from the
+ * functions working with points and polygons, there are overloads working directly with
+ * coordinates, which do not allocate any objects and are meant to be used in performance critical
+ * loops.
  */
 public class Utils2D {
-    
+
     /**
      * @param a the first point
      * @param b the second point
      * @return Euclidian distance between the 2 points
      */
     public static double distance(Point a, Point b) {
+        return distance(a.longitude(), a.latitude(), b.longitude(), b.latitude());
+    }
+
+    /**
+     * @param longitudeA the longitude of the first point
+     * @param latitudeA  the latitude of the first point
+     * @param longitudeB the longitude of the second point
+     * @param latitudeB  the latitude of the second point
+     * @return Euclidian distance between the 2 points
+     */
+    public static double distance(double longitudeA, double latitudeA, double longitudeB,
+            double latitudeB) {
 
         // distance = sqrt((x1-x2)^2 + (y1-y2)^2)
-        return (Math.sqrt(Math.pow(a.latitude() - b.latitude(), 2)
-                + Math.pow(a.longitude() - b.longitude(), 2)));
+        var latitudeDifference = latitudeA - latitudeB;
+        var longitudeDifference = longitudeA - longitudeB;
+
+        return Math.sqrt(latitudeDifference * latitudeDifference
+                + longitudeDifference * longitudeDifference);
     }
 
     /**
      * Moves the point.
-     * 
+     *
      * @param point         the point that is moved
      * @param distance      the distance by which the point is moved
      * @param angleDegrees  the angle in which the point is moved
      * @return result point after the move
      */
     public static Point movePoint(Point point, double distance, double angleDegrees) {
-        
-        // Uses basic trigonometry
-        var radians = Math.toRadians(angleDegrees);
-        var newLatitude = point.latitude() + distance * Math.sin(radians);
-        var newLongitide = point.longitude() + distance * Math.cos(radians);
+
+        var newLatitude = moveLatitude(point.latitude(), distance, angleDegrees);
+        var newLongitide = moveLongitude(point.longitude(), distance, angleDegrees);
         var movedPoint = Point.fromLngLat(newLongitide, newLatitude);
 
         return movedPoint;
     }
-    
+
+    /**
+     * Moves the longitude of a point.
+     *
+     * @param longitude    the longitude of the point that is moved
+     * @param distance     the distance by which the point is moved
+     * @param angleDegrees the angle in which the point is moved
+     * @return longitude of the point after the move
+     */
+    public static double moveLongitude(double longitude, double distance, double angleDegrees) {
+        // Uses basic trigonometry
+        return longitude + distance * Math.cos(Math.toRadians(angleDegrees));
+    }
+
+    /**
+     * Moves the latitude of a point.
+     *
+     * @param latitude     the latitude of the point that is moved
+     * @param distance     the distance by which the point is moved
+     * @param angleDegrees the angle in which the point is moved
+     * @return latitude of the point after the move
+     */
+    public static double moveLatitude(double latitude, double distance, double angleDegrees) {
+        // Uses basic trigonometry
+        return latitude + distance * Math.sin(Math.toRadians(angleDegrees));
+    }
+
+    /**
+     * Copies the coordinates of the outer ring of a polygon to a flat array.
+     *
+     * @param polygon the polygon whose coordinates are copied
+     * @return array of the form [longitude0, latitude0, longitude1, latitude1, ...]
+     */
+    public static double[] toCoordinates(Polygon polygon) {
+
+        var points = polygon.coordinates().get(0);
+        var coordinates = new double[2 * points.size()];
+
+        for (int i = 0; i < points.size(); i++) {
+            coordinates[2 * i] = points.get(i).longitude();
+            coordinates[2 * i + 1] = points.get(i).latitude();
+        }
+        return coordinates;
+    }
+
+    /**
+     * Determines if two line segments intersect in 2D Euclidian space.
+     *
+     * @param startA the start point of the first line segment
+     * @param endA   the end point of the first line segment
+     * @param startB the start point of the second line segment
+     * @param endB   the end point of the second line segment
+     * @return true if the line segments intersect, false otherwise
+     */
+    public static boolean lineIntersectLine(Point startA, Point endA, Point startB, Point endB) {
+
+        return Line2D.linesIntersect(startA.latitude(), startA.longitude(),
+                endA.latitude(), endA.longitude(),
+                startB.latitude(), startB.longitude(),
+                endB.latitude(), endB.longitude());
+    }
+
     /**
      * Determines if a line segment intersects a polygon in 2D Euclidian space.
-     * 
+     *
      * @param start   the start point of a line segment
      * @param end     the end point of a line segment
      * @param polygon the polygon that is checked for intersection
@@ -51,18 +128,34 @@ public class Utils2D {
      */
     private static boolean lineIntersectPolygon(Point start, Point end, Polygon polygon) {
 
+        return lineIntersectPolygon(start.longitude(), start.latitude(), end.longitude(),
+                end.latitude(), toCoordinates(polygon));
+    }
+
+    /**
+     * Determines if a line segment intersects a polygon in 2D Euclidian space.
+     *
+     * @param startLongitude the longitude of the start point of a line segment
+     * @param startLatitude  the latitude of the start point of a line segment
+     * @param endLongitude   the longitude of the end point of a line segment
+     * @param endLatitude    the latitude of the end point of a line segment
+     * @param coordinates    the coordinates of the polygon as given by toCoordinates
+     * @return true if the line segment intersects the polygon, false otherwise
+     */
+    public static boolean lineIntersectPolygon(double startLongitude, double startLatitude,
+            double endLongitude, double endLatitude, double[] coordinates) {
+
         var intersect = false;
-        var polygonPoints = polygon.coordinates().get(0);
-        
+
         // Checks for Intersection between the line segment and any of the sides of a polygon
-        for (int i = 0; i < polygonPoints.size(); i++) {
-
-            intersect = Line2D.linesIntersect(start.latitude(), start.longitude(), 
-                    end.latitude(), end.longitude(), 
-                    polygonPoints.get(i).latitude(),polygonPoints.get(i).longitude(),
-                    polygonPoints.get((i + 1) % polygonPoints.size()).latitude(),
-                    polygonPoints.get((i + 1) % polygonPoints.size()).longitude());
-            
+        for (int i = 0; i < coordinates.length; i += 2) {
+            var next = (i + 2) % coordinates.length;
+
+            intersect = Line2D.linesIntersect(startLatitude, startLongitude,
+                    endLatitude, endLongitude,
+                    coordinates[i + 1], coordinates[i],
+                    coordinates[next + 1], coordinates[next]);
+
             if (intersect) {
                 break;
             }
@@ -70,9 +163,40 @@ public class Utils2D {
         return intersect;
     }
 
+    /**
+     * Determines if a point lies inside a polygon by counting the sides of the polygon crossed by a
+     * ray going from the point towards the east.
+     *
+     * @param longitude   the longitude of the point
+     * @param latitude    the latitude of the point
+     * @param coordinates the coordinates of the polygon as given by toCoordinates
+     * @return true if the point is inside the polygon, false otherwise
+     */
+    public static boolean pointInPolygon(double longitude, double latitude,
+            double[] coordinates) {
+
+        var inside = false;
+
+        for (int i = 0; i < coordinates.length; i += 2) {
+            var next = (i + 2) % coordinates.length;
+            var startLatitude = coordinates[i + 1];
+            var endLatitude = coordinates[next + 1];
+
+            // Only sides that the ray can cross, each of their ends counted on one side only
+            if ((startLatitude > latitude) != (endLatitude > latitude)) {
+                var crossing = coordinates[i] + (latitude - startLatitude)
+                        * (coordinates[next] - coordinates[i]) / (endLatitude - startLatitude);
+                if (crossing > longitude) {
+                    inside = !inside;
+                }
+            }
+        }
+        return inside;
+    }
+
     /**
      * Determines if a line segment intersects any of the polygons in 2D Euclidian space.
-     * 
+     *
      * @param start    the start point of a line segment
      * @param end      the end point of a line segment
      * @param polygons the polygons that are checked for intersection
@@ -0,0 +1,298 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import com.mapbox.geojson.Point;
+import com.mapbox.geojson.Polygon;
+
+/**
+ * Graph of the corners of a set of polygons that are visible from each other, which gives the
+ * shortest paths around the polygons. The shortest path between two points that does not cross any
+ * polygon is a polyline bending only at corners of the polygons, so it is found by Dijkstra's
+ * algorithm over the few corners instead of over the many points the moves of a drone can reach.
+ * The corners are moved slightly away from the polygons on both sides, so that lines between them
+ * do not touch the polygons. The graph is built once per map and is never modified afterwards.
+ */
+public class VisibilityGraph {
+
+    private ObstacleIndex obstacles;
+    // The corners, the i-th one is at (longitudes[i], latitudes[i])
+    private double[] longitudes;
+    private double[] latitudes;
+    // distances[x][y] is the distance between the corners x and y if they are visible from each
+    // other, infinity otherwise
+    private double[][] distances;
+
+    /**
+     * @param obstacles the index of polygons that should not be crossed
+     * @param margin    the distance by which the corners are moved away from the polygons
+     */
+    public VisibilityGraph(ObstacleIndex obstacles, double margin) {
+
+        this.obstacles = obstacles;
+        var longitudes = new ArrayList<Double>();
+        var latitudes = new ArrayList<Double>();
+
+        for (Polygon polygon : obstacles.getPolygons()) {
+            var coordinates = Utils2D.toCoordinates(polygon);
+            var count = coordinates.length / 2;
+            // A closed ring repeats its first corner at the end, which would hide that corner
+            if (count > 1 && coordinates[0] == coordinates[2 * count - 2]
+                    && coordinates[1] == coordinates[2 * count - 1]) {
+                count--;
+            }
+
+            for (int i = 0; i < count; i++) {
+                var previous = (i + count - 1) % count;
+                var next = (i + 1) % count;
+                var longitude = coordinates[2 * i];
+                var latitude = coordinates[2 * i + 1];
+
+                // The corner is moved along the bisector of its angle, to both sides
+                var toPreviousLongitude = coordinates[2 * previous] - longitude;
+                var toPreviousLatitude = coordinates[2 * previous + 1] - latitude;
+                var toNextLongitude = coordinates[2 * next] - longitude;
+                var toNextLatitude = coordinates[2 * next + 1] - latitude;
+                var toPreviousLength = Math.hypot(toPreviousLongitude, toPreviousLatitude);
+                var toNextLength = Math.hypot(toNextLongitude, toNextLatitude);
+                if (toPreviousLength == 0 || toNextLength == 0) {
+                    continue;
+                }
+                var bisectorLongitude = toPreviousLongitude / toPreviousLength
+                        + toNextLongitude / toNextLength;
+                var bisectorLatitude = toPreviousLatitude / toPreviousLength
+                        + toNextLatitude / toNextLength;
+                var bisectorLength = Math.hypot(bisectorLongitude, bisectorLatitude);
+
+                // A straight angle has no bisector between its sides, its normal is used instead
+                if (bisectorLength < 1e-9) {
+                    bisectorLongitude = -toNextLatitude / toNextLength;
+                    bisectorLatitude = toNextLongitude / toNextLength;
+                    bisectorLength = 1;
+                }
+                for (int side = -1; side <= 1; side += 2) {
+                    longitudes.add(longitude + side * margin * bisectorLongitude / bisectorLength);
+                    latitudes.add(latitude + side * margin * bisectorLatitude / bisectorLength);
+                }
+            }
+        }
+
+        var size = longitudes.size();
+        this.longitudes = new double[size];
+        this.latitudes = new double[size];
+        for (int i = 0; i < size; i++) {
+            this.longitudes[i] = longitudes.get(i);
+            this.latitudes[i] = latitudes.get(i);
+        }
+
+        this.distances = new double[size][size];
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < i; j++) {
+                var distance = this.visibleDistance(this.longitudes[i], this.latitudes[i],
+                        this.longitudes[j], this.latitudes[j]);
+                this.distances[i][j] = distance;
+                this.distances[j][i] = distance;
+            }
+        }
+    }
+
+    /**
+     * @return the number of corners in this graph
+     */
+    public int getCornerCount() {
+        return this.longitudes.length;
+    }
+
+    /**
+     * @return distance between two points if the line between them does not cross any polygon,
+     *         infinity otherwise
+     */
+    private double visibleDistance(double startLongitude, double startLatitude,
+            double endLongitude, double endLatitude) {
+
+        if (this.obstacles.lineIntersects(startLongitude, startLatitude, endLongitude,
+                endLatitude)) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return Utils2D.distance(startLongitude, startLatitude, endLongitude, endLatitude);
+    }
+
+    /**
+     * Finds the shortest polyline between two points that bends only at corners of this graph and
+     * does not cross any polygon.
+     *
+     * @param start  the start point
+     * @param target the end point
+     * @return the points where the polyline bends followed by the target, null if there is no such
+     *         polyline
+     */
+    public ArrayList<Point> findWaypoints(Point start, Point target) {
+
+        var size = this.longitudes.length;
+        // The start is node size, the target node size + 1
+        var lengths = new double[size + 2];
+        var previous = new int[size + 2];
+        var done = new boolean[size + 2];
+        Arrays.fill(lengths, Double.POSITIVE_INFINITY);
+        Arrays.fill(previous, -1);
+
+        var fromStart = new double[size + 2];
+        var toTarget = new double[size + 2];
+        for (int i = 0; i < size; i++) {
+            fromStart[i] = this.visibleDistance(start.longitude(), start.latitude(),
+                    this.longitudes[i], this.latitudes[i]);
+            toTarget[i] = this.visibleDistance(this.longitudes[i], this.latitudes[i],
+                    target.longitude(), target.latitude());
+        }
+        toTarget[size] = this.visibleDistance(start.longitude(), start.latitude(),
+                target.longitude(), target.latitude());
+        lengths[size] = 0;
+
+        // Dijkstra's algorithm, the graph is small and dense so no priority queue is needed
+        while (true) {
+            var current = -1;
+            for (int i = 0; i < size + 2; i++) {
+                if (!done[i] && lengths[i] < Double.POSITIVE_INFINITY
+                        && (current < 0 || lengths[i] < lengths[current])) {
+                    current = i;
+                }
+            }
+            if (current < 0) {
+                return null;
+            }
+            if (current == size + 1) {
+                break;
+            }
+            done[current] = true;
+
+            for (int i = 0; i < size + 2; i++) {
+                if (done[i] || i == size) {
+                    continue;
+                }
+                double distance;
+                if (i == size + 1) {
+                    distance = toTarget[current];
+                } else {
+                    distance = current == size ? fromStart[i] : this.distances[current][i];
+                }
+                if (lengths[current] + distance < lengths[i]) {
+                    lengths[i] = lengths[current] + distance;
+                    previous[i] = current;
+                }
+            }
+        }
+
+        // Follows the previous nodes back from the target
+        var waypoints = new ArrayList<Point>();
+        waypoints.add(target);
+        for (int node = previous[size + 1]; node != size; node = previous[node]) {
+            waypoints.add(0, Point.fromLngLat(this.longitudes[node], this.latitudes[node]));
+        }
+        return waypoints;
+    }
+
+    /**
+     * Computes the length of the shortest polyline between two points that does not cross any
+     * polygon, as found by findWaypoints. Apart from the small margin around the corners, no path
+     * between the points is shorter, so it is a much tighter estimate of the length of a leg than
+     * the straight line distance. It is not the heuristic of the path search: the margin makes it
+     * overestimate slightly, which the search does not allow, and computing it at every expanded
+     * node would take more visibility tests than the search saves.
+     *
+     * @param start  the start point
+     * @param target the end point
+     * @return the length of the shortest polyline, infinity if there is none
+     */
+    public double shortestDistance(Point start, Point target) {
+
+        var waypoints = this.findWaypoints(start, target);
+        if (waypoints == null) {
+            return Double.POSITIVE_INFINITY;
+        }
+        var distance = 0.0;
+        var from = start;
+        for (var waypoint : waypoints) {
+            distance += Utils2D.distance(from, waypoint);
+            from = waypoint;
+        }
+        return distance;
+    }
+
+    /**
+     * Finds a path of moves along the shortest polyline between two points. Each straight part of
+     * the polyline is followed by a short path search to the next waypoint, which has to explore
+     * very little since nothing stands in its way. If any part can not be followed, the path is
+     * searched for directly instead. The searches are recorded in the metrics of the arena as a
+     * single leg search.
+     *
+     * @param start         the start point of the path
+     * @param target        the point that the path should lead to
+     * @param range         the range around the target within which the path should end
+     * @param waypointRange the range around each waypoint within which a part ends
+     * @param moves         the model of moves the path can be made of
+     * @param cellSize      the side length of lattice cells used by the path search
+     * @param arena         the storage for the searches
+     * @return path to the target point within range while avoiding the polygons, null if there is
+     *         none
+     */
+    public Path findPathToPoint(Point start, Point target, double range, double waypointRange,
+            MoveModel moves, double cellSize, SearchArena arena) {
+
+        // The parts are searched without metrics and their statistics are added up instead
+        var metrics = arena.getMetrics();
+        arena.setMetrics(null);
+        var startTime = System.nanoTime();
+        var statistics = new int[3];
+        Path path = null;
+
+        try {
+            var waypoints = this.findWaypoints(start, target);
+            // The start may already be within range, which the direct search handles
+            if (waypoints != null && Utils2D.distance(start, target) >= range) {
+                path = new Path(start);
+                var from = start;
+
+                for (int i = 0; i < waypoints.size() && path != null; i++) {
+                    var last = i == waypoints.size() - 1;
+                    var part = Path.findPathToPoint(from, waypoints.get(i),
+                            last ? range : waypointRange, moves, this.obstacles, cellSize, arena);
+                    addStatistics(statistics, arena);
+                    if (part == null) {
+                        path = null;
+                    } else {
+                        path.append(part);
+                        from = path.getEndPoint();
+                    }
+                }
+            }
+            if (path == null) {
+                path = Path.findPathToPoint(start, target, range, moves, this.obstacles, cellSize,
+                        arena);
+                addStatistics(statistics, arena);
+            }
+        } finally {
+            arena.setMetrics(metrics);
+        }
+
+        if (metrics != null) {
+            metrics.recordLegSearch(arena.getOutcome(), statistics[0], statistics[1],
+                    statistics[2], System.nanoTime() - startTime);
+        }
+        return path;
+    }
+
+    /**
+     * Adds the statistics of the last search in an arena to those of the previous ones.
+     *
+     * @param statistics the number of expanded nodes, the peak size of the search space and the
+     *                   number of collision tests of the previous searches
+     * @param arena      the arena of the last search
+     */
+    private static void addStatistics(int[] statistics, SearchArena arena) {
+
+        statistics[0] += arena.getExpandedCount();
+        statistics[1] = Math.max(statistics[1], arena.getFrontierPeak());
+        statistics[2] += arena.getCollisionTestCount();
+    }
+
+}
@@ -1,5 +1,6 @@
 package uk.ac.ed.inf.aqmaps;
 
+import java.util.concurrent.CompletableFuture;
 import com.google.gson.Gson;
 import com.mapbox.geojson.Point;
 
@@ -26,10 +27,45 @@ public class What3Words {
      */
     public What3Words(String words, String port) {
 
-        words = words.replaceAll("\\.", "/");
-        var url = ("http://localhost:" + port + "/words/" + words + "/details.json");
-        var what3words = loadFromUrl(url);
+        this(words);
+        App.await(this.resolveAsync(port, null));
+    }
+
+    /**
+     * Creates what 3 words whose location is not known yet, it has to be resolved before it is
+     * used.
+     * 
+     * @param words the what 3 words separated by dots
+     */
+    public What3Words(String words) {
+        this.words = words;
+    }
 
+    /**
+     * Starts loading the corresponding data of these what 3 words from a server. The location is
+     * known once the returned future completes.
+     * 
+     * @param port    the port at which to connect to the server
+     * @param metrics the metrics that receive the statistics of the requests, may be null
+     * @return future completed once the data is loaded
+     */
+    public CompletableFuture<Void> resolveAsync(String port, RunMetrics metrics) {
+
+        var url = ("http://localhost:" + port + "/words/" + this.words.replaceAll("\\.", "/")
+                + "/details.json");
+
+        // The location of what 3 words never changes
+        return App.readResourceFromURLAsync(url, metrics).thenAccept(this::resolve);
+    }
+
+    /**
+     * Sets the corresponding data of these what 3 words from its JSON format.
+     * 
+     * @param jsonString the data of the what 3 words as loaded from a server
+     */
+    void resolve(String jsonString) {
+
+        var what3words = new Gson().fromJson(jsonString, What3Words.class);
         this.coordinates = what3words.coordinates;
         this.words = what3words.words;
     }
@@ -0,0 +1,109 @@
+package uk.ac.ed.inf.aqmaps;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Runs the batch runner against a synthetic map served by DataServer, with a day whose sensors
+ * the server does not have.
+ */
+public class BatchRunnerTest {
+
+    private static final LocalDate FIRST_DATE = LocalDate.of(2031, 1, 1);
+    private static final LocalDate LAST_DATE = LocalDate.of(2031, 1, 3);
+    // The server has no sensors for this day
+    private static final LocalDate MISSING_DATE = LocalDate.of(2031, 1, 2);
+
+    private TestScenario scenario;
+    private DataServer server;
+
+    @Before
+    public void setUp() throws IOException {
+
+        this.scenario = new TestScenario(7, 4, 6, FIRST_DATE, LAST_DATE);
+        this.server = new DataServer(this.scenario.getRoot(), 0, 2);
+        this.server.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+
+        this.server.close();
+        this.scenario.close();
+        for (var date = FIRST_DATE; !date.isAfter(LAST_DATE); date = date.plusDays(1)) {
+            TestFiles.deleteOutputFiles(date);
+        }
+        TestFiles.deleteRecursively(summaryFile());
+    }
+
+    /**
+     * @return the summary file of the batch
+     */
+    private static File summaryFile() {
+        return new File("summary-" + FIRST_DATE + "-" + LAST_DATE + ".csv");
+    }
+
+    /**
+     * Runs the batch and reads its summary.
+     *
+     * @return the lines of the summary file
+     * @throws Exception if the batch can not be run
+     */
+    private List<String> runBatch() throws Exception {
+
+        var start = this.scenario.getStart();
+        BatchRunner.main(new String[] { FIRST_DATE.toString(), LAST_DATE.toString(),
+                String.valueOf(start.latitude()), String.valueOf(start.longitude()), "5",
+                String.valueOf(this.server.getPort()) });
+        return Files.readAllLines(summaryFile().toPath());
+    }
+
+    /**
+     * @param line a line of the summary file
+     * @return the move count of the day of the line
+     */
+    private static int moveCount(String line) {
+        return Integer.parseInt(line.split(",")[1]);
+    }
+
+    @Test
+    public void failedDayIsRecordedAndOthersStillRun() throws Exception {
+
+        var lines = this.runBatch();
+
+        assertEquals(4, lines.size());
+        assertTrue(lines.get(1).startsWith("2031-01-01,"));
+        assertTrue(lines.get(2).startsWith("2031-01-02,"));
+        assertTrue(lines.get(3).startsWith("2031-01-03,"));
+        assertTrue(moveCount(lines.get(1)) > 0);
+        assertEquals(-1, moveCount(lines.get(2)));
+        assertTrue(moveCount(lines.get(3)) > 0);
+        assertTrue(TestFiles.readingsFile(FIRST_DATE).isFile());
+        assertTrue(TestFiles.readingsFile(LAST_DATE).isFile());
+    }
+
+    @Test
+    public void outputWriteErrorFailsOnlyItsDay() throws Exception {
+
+        // A directory in place of the readings file can not be written
+        Files.createDirectory(TestFiles.readingsFile(FIRST_DATE).toPath());
+
+        var lines = this.runBatch();
+
+        assertEquals(4, lines.size());
+        assertEquals(-1, moveCount(lines.get(1)));
+        assertEquals(-1, moveCount(lines.get(2)));
+        assertTrue(moveCount(lines.get(3)) > 0);
+        assertTrue(TestFiles.readingsFile(LAST_DATE).isFile());
+    }
+
+}
@@ -0,0 +1,128 @@
+package uk.ac.ed.inf.aqmaps;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that DataServer serves the files at its routes only and never anything outside its
+ * directory.
+ */
+public class DataServerTest {
+
+    private static final String SENSORS_PATH = "maps/2031/05/01/air-quality-data.json";
+    private static final String WORDS_PATH = "words/first/sensor/words/details.json";
+    private static final String BUILDINGS_PATH = "buildings/no-fly-zones.geojson";
+
+    private File directory;
+    private File root;
+    private DataServer server;
+
+    @Before
+    public void setUp() throws IOException {
+
+        // The served directory is nested so that a file just outside of it can be requested
+        this.directory = Files.createTempDirectory("aqmaps-server").toFile();
+        this.root = new File(this.directory, "outer/root");
+        for (var path : new String[] { SENSORS_PATH, WORDS_PATH, BUILDINGS_PATH,
+                "words/other.txt" }) {
+            write(new File(this.root, path), "{\"path\":\"" + path + "\"}");
+        }
+        write(new File(this.directory, "details.json"), "{\"secret\":true}");
+
+        this.server = new DataServer(this.root, 0, 2);
+        this.server.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+
+        this.server.close();
+        TestFiles.deleteRecursively(this.directory);
+    }
+
+    /**
+     * @param file    the file to write, its directories are created
+     * @param content the content of the file
+     * @throws IOException if the file can not be written
+     */
+    private static void write(File file, String content) throws IOException {
+
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.writeString(file.toPath(), content, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param method the method of the request
+     * @param path   the path of the request, as sent
+     * @return connection to the server that sent the request
+     * @throws IOException if the request can not be sent
+     */
+    private HttpURLConnection request(String method, String path) throws IOException {
+
+        var url = new URL("http", "localhost", this.server.getPort(), path);
+        var connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod(method);
+        connection.connect();
+        return connection;
+    }
+
+    @Test
+    public void routesAreServed() throws IOException {
+
+        for (var path : new String[] { SENSORS_PATH, WORDS_PATH, BUILDINGS_PATH }) {
+            var connection = this.request("GET", "/" + path);
+            assertEquals(200, connection.getResponseCode());
+            assertEquals("application/json", connection.getContentType());
+            try (var input = connection.getInputStream()) {
+                assertArrayEquals(Files.readAllBytes(new File(this.root, path).toPath()),
+                        input.readAllBytes());
+            }
+        }
+    }
+
+    @Test
+    public void headAnswersWithoutBody() throws IOException {
+
+        var connection = this.request("HEAD", "/" + BUILDINGS_PATH);
+        assertEquals(200, connection.getResponseCode());
+        try (var input = connection.getInputStream()) {
+            assertEquals(0, input.readAllBytes().length);
+        }
+    }
+
+    @Test
+    public void otherPathsAreNotFound() throws IOException {
+
+        // An existing file that is not at a route, a missing file at a route and the root
+        assertEquals(404, this.request("GET", "/words/other.txt").getResponseCode());
+        assertEquals(404, this.request("GET", "/maps/2031/05/02/air-quality-data.json")
+                .getResponseCode());
+        assertEquals(404, this.request("GET", "/").getResponseCode());
+    }
+
+    @Test
+    public void pathsOutsideDirectoryAreNotFound() throws IOException {
+
+        // Matches the route of what 3 words but resolves to the file outside the directory
+        assertEquals(404, this.request("GET", "/words/../../../details.json").getResponseCode());
+    }
+
+    @Test
+    public void otherMethodsAreNotAllowed() throws IOException {
+
+        var connection = this.request("POST", "/" + BUILDINGS_PATH);
+        assertEquals(405, connection.getResponseCode());
+        assertEquals("GET, HEAD", connection.getHeaderField("Allow"));
+    }
+
+}
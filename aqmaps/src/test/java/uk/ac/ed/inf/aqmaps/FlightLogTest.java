@@ -0,0 +1,77 @@
+package uk.ac.ed.inf.aqmaps;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that the flight path log streamed to a file is the same as the one kept in memory and
+ * that its lines describe a connected flight.
+ */
+public class FlightLogTest {
+
+    private static final LocalDate DATE = LocalDate.of(2031, 3, 1);
+
+    private TestScenario scenario;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+
+        this.scenario = new TestScenario(13, 6, 12, DATE);
+        this.file = File.createTempFile("flightpath", ".txt");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+
+        this.scenario.close();
+        Files.deleteIfExists(this.file.toPath());
+    }
+
+    @Test
+    public void fileLogMatchesMemoryLog() throws IOException {
+
+        var inMemory = this.scenario.createDrone(DATE);
+        inMemory.executeReadingRoutine();
+
+        var streamed = this.scenario.createDrone(DATE);
+        try (var flightLog = new FileFlightLog(this.file)) {
+            streamed.setFlightLog(flightLog);
+            streamed.executeReadingRoutine();
+        }
+
+        assertEquals(inMemory.getFlightPathLog(),
+                Files.readString(this.file.toPath(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void linesDescribeConnectedMoves() {
+
+        var drone = this.scenario.createDrone(DATE);
+        drone.executeReadingRoutine();
+        var lines = drone.getFlightPathLog().split("\n");
+
+        assertEquals(drone.getMoveCount(), lines.length);
+        String[] previous = null;
+        for (int i = 0; i < lines.length; i++) {
+            var fields = lines[i].split(",");
+            assertEquals(7, fields.length);
+            assertEquals(i + 1, Integer.parseInt(fields[0]));
+            // Every move starts where the one before it ended
+            if (previous != null) {
+                assertEquals(previous[4], fields[1]);
+                assertEquals(previous[5], fields[2]);
+            }
+            previous = fields;
+        }
+    }
+
+}
@@ -0,0 +1,103 @@
+package uk.ac.ed.inf.aqmaps;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import com.mapbox.geojson.FeatureCollection;
+
+/**
+ * Checks that the readings map written feature by feature is the same as the feature collection
+ * serialized by mapbox, which is how it was written before.
+ */
+public class GeoJsonWriterTest {
+
+    private static final LocalDate DATE = LocalDate.of(2031, 2, 1);
+
+    private TestScenario scenario;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+
+        this.scenario = new TestScenario(11, 6, 12, DATE);
+        this.file = File.createTempFile("readings", ".geojson");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+
+        this.scenario.close();
+        Files.deleteIfExists(this.file.toPath());
+    }
+
+    /**
+     * @param drone a drone that finished its routine
+     * @return the readings map streamed by the drone
+     * @throws IOException if the map can not be written
+     */
+    private String streamed(Drone drone) throws IOException {
+
+        try (var writer = new GeoJsonWriter(this.file)) {
+            drone.writeFeatures(writer);
+        }
+        return Files.readString(this.file.toPath(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param drone a drone that finished its routine
+     * @return the readings map as one feature collection serialized by mapbox
+     */
+    private static String collected(Drone drone) {
+
+        var features = drone.getReadingsAsFeatures();
+        features.add(drone.getFlightPathAsFeature());
+        return FeatureCollection.fromFeatures(features).toJson();
+    }
+
+    @Test
+    public void streamedMapMatchesFeatureCollection() throws IOException {
+
+        var drone = this.scenario.createDrone(DATE);
+        drone.executeReadingRoutine();
+
+        assertEquals(collected(drone), this.streamed(drone));
+    }
+
+    @Test
+    public void streamedMapMatchesFeatureCollectionWithUnreadSensors() throws IOException {
+
+        // Searches of a single expansion give up on most sensors, which stay unread
+        var drone = this.scenario.createDrone(DATE);
+        drone.setLegBudget(1, 60000);
+        drone.executeReadingRoutine();
+
+        assertTrue(drone.getReadSensorCount() < drone.getSensorCount());
+        assertEquals(collected(drone), this.streamed(drone));
+    }
+
+    @Test
+    public void featuresAreWrittenAsMapboxWritesThem() throws IOException {
+
+        var drone = this.scenario.createDrone(DATE);
+        drone.executeReadingRoutine();
+        var features = drone.getReadingsAsFeatures();
+        features.add(drone.getFlightPathAsFeature());
+
+        try (var writer = new GeoJsonWriter(this.file)) {
+            for (var feature : features) {
+                writer.writeFeature(feature);
+            }
+        }
+        assertEquals(FeatureCollection.fromFeatures(features).toJson(),
+                Files.readString(this.file.toPath(), StandardCharsets.UTF_8));
+    }
+
+}
@@ -0,0 +1,360 @@
+package uk.ac.ed.inf.aqmaps;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+import org.junit.Test;
+import com.mapbox.geojson.Point;
+
+/**
+ * Checks the optimizations of the visit order on random points and on given costs.
+ */
+public class GraphTest {
+
+    /**
+     * @param random the source of random numbers
+     * @param count  the number of points
+     * @return random points of the confinement area
+     */
+    private static ArrayList<Point> randomPoints(Random random, int count) {
+
+        var bounds = App.getConfinementBounds();
+        var points = new ArrayList<Point>();
+        for (int i = 0; i < count; i++) {
+            points.add(Point.fromLngLat(bounds[0] + random.nextDouble() * (bounds[2] - bounds[0]),
+                    bounds[1] + random.nextDouble() * (bounds[3] - bounds[1])));
+        }
+        return points;
+    }
+
+    /**
+     * @param points points
+     * @return matrix of the straight line distances between the points
+     */
+    private static double[][] distanceMatrix(ArrayList<Point> points) {
+
+        var matrix = new double[points.size()][points.size()];
+        for (int i = 0; i < points.size(); i++) {
+            for (int j = 0; j < points.size(); j++) {
+                matrix[i][j] = Utils2D.distance(points.get(i), points.get(j));
+            }
+        }
+        return matrix;
+    }
+
+    /**
+     * @param costs the costs of travelling between nodes
+     * @param order a visit order
+     * @return the total cost of the cycle given by the visit order
+     */
+    private static double lengthOf(double[][] costs, int[] order) {
+
+        var length = 0.0;
+        for (int i = 0; i < order.length; i++) {
+            length += costs[order[i]][order[(i + 1) % order.length]];
+        }
+        return length;
+    }
+
+    /**
+     * Checks that a visit order starts with the first node and visits every node once.
+     *
+     * @param order the visit order
+     * @param size  the number of nodes
+     */
+    private static void assertCycle(int[] order, int size) {
+
+        assertEquals(size, order.length);
+        assertEquals(0, order[0]);
+        var visited = new boolean[size];
+        for (var node : order) {
+            assertTrue(!visited[node]);
+            visited[node] = true;
+        }
+    }
+
+    /**
+     * @param costs the costs of travelling between nodes
+     * @param order a visit order
+     * @return the largest improvement of a move that reverses a part of the visit order (2-opt),
+     *         found by trying every such move
+     */
+    private static double bestTwoOptGain(double[][] costs, int[] order) {
+
+        var n = order.length;
+        var best = 0.0;
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 2; j < n; j++) {
+                var a = order[i];
+                var b = order[i + 1];
+                var c = order[j];
+                var d = order[(j + 1) % n];
+                if (d != a) {
+                    best = Math.max(best, costs[a][b] + costs[c][d] - costs[a][c] - costs[b][d]);
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @param costs the costs of travelling between nodes
+     * @param order a visit order
+     * @return the largest improvement of a move that relocates up to three consecutive nodes,
+     *         possibly reversed (Or-opt), found by trying every such move that adds an edge from
+     *         an end of the nodes shorter than what removing them saves, as the search only
+     *         tries those
+     */
+    private static double bestOrOptGain(double[][] costs, int[] order) {
+
+        var n = order.length;
+        var best = 0.0;
+        for (int length = 1; length <= 3; length++) {
+            for (int i = 0; i < n; i++) {
+                var before = order[(i - 1 + n) % n];
+                var first = order[i];
+                var last = order[(i + length - 1) % n];
+                var after = order[(i + length) % n];
+                var removalGain = costs[before][first] + costs[last][after]
+                        - costs[before][after];
+                // Every edge outside of the sequence and its two adjacent edges
+                for (int k = length; k < n - 1; k++) {
+                    var c = order[(i + k) % n];
+                    var e = order[(i + k + 1) % n];
+                    var shortestAdded = Math.min(Math.min(costs[c][first], costs[first][e]),
+                            Math.min(costs[c][last], costs[last][e]));
+                    if (shortestAdded >= removalGain) {
+                        continue;
+                    }
+                    var inserted = Math.min(costs[c][first] + costs[last][e],
+                            costs[c][last] + costs[first][e]);
+                    best = Math.max(best, removalGain + costs[c][e] - inserted);
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @param costs the costs of travelling between nodes
+     * @param order a visit order
+     * @return the largest improvement of a move that swaps two neighbouring parts of the visit
+     *         order without reversing them (3-opt), found by trying every such move
+     */
+    private static double bestThreeOptGain(double[][] costs, int[] order) {
+
+        var n = order.length;
+        var best = 0.0;
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                for (int k = j + 1; k < n; k++) {
+                    var a = order[i];
+                    var a2 = order[i + 1];
+                    var b = order[j];
+                    var b2 = order[j + 1];
+                    var c = order[k];
+                    var c2 = order[(k + 1) % n];
+                    best = Math.max(best, costs[a][a2] + costs[b][b2] + costs[c][c2]
+                            - costs[a][b2] - costs[c][a2] - costs[b][c2]);
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @param costs the costs of travelling between nodes
+     * @return the length of the shortest cycle, found by trying every visit order
+     */
+    private static double bruteForceLength(double[][] costs) {
+
+        var order = new int[costs.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        return bruteForceLength(costs, order, 1);
+    }
+
+    /**
+     * @param costs the costs of travelling between nodes
+     * @param order a visit order whose nodes before a position are fixed
+     * @param fixed the number of fixed nodes
+     * @return the length of the shortest cycle that starts with the fixed nodes
+     */
+    private static double bruteForceLength(double[][] costs, int[] order, int fixed) {
+
+        if (fixed == order.length) {
+            return lengthOf(costs, order);
+        }
+        var best = Double.POSITIVE_INFINITY;
+        for (int i = fixed; i < order.length; i++) {
+            var temp = order[fixed];
+            order[fixed] = order[i];
+            order[i] = temp;
+            best = Math.min(best, bruteForceLength(costs, order, fixed + 1));
+            order[i] = order[fixed];
+            order[fixed] = temp;
+        }
+        return best;
+    }
+
+    @Test
+    public void costMatrixGivesSameOrderAsItsPoints() {
+
+        var points = randomPoints(new Random(1), 33);
+        var fromPoints = new Graph(points);
+        var fromCosts = new Graph(distanceMatrix(points));
+
+        for (var graph : new Graph[] { fromPoints, fromCosts }) {
+            graph.toGreedyOrder();
+            graph.swapOptimizeOrder(100);
+            assertCycle(graph.getVisitOrder(), points.size());
+        }
+        assertArrayEquals(fromPoints.getVisitOrder(), fromCosts.getVisitOrder());
+        assertEquals(fromPoints.getVisitOrderLength(), fromCosts.getVisitOrderLength(), 0);
+    }
+
+    @Test
+    public void orderAvoidsLegsThatCostMore() {
+
+        // The corners of a square, the shortest cycle goes around it
+        var points = new ArrayList<Point>();
+        points.add(Point.fromLngLat(0, 0));
+        points.add(Point.fromLngLat(1, 0));
+        points.add(Point.fromLngLat(1, 1));
+        points.add(Point.fromLngLat(0, 1));
+        var costs = distanceMatrix(points);
+        // A building stands between the second and the third corner, so that flying around the
+        // square costs more than crossing it
+        costs[1][2] = 100;
+        costs[2][1] = 100;
+
+        var graph = new Graph(costs);
+        graph.toGreedyOrder();
+        graph.swapOptimizeOrder(100);
+        var order = graph.getVisitOrder();
+
+        assertCycle(order, points.size());
+        assertEquals(lengthOf(costs, order), graph.getVisitOrderLength(), 0);
+        assertEquals(2 + 2 * Math.sqrt(2), graph.getVisitOrderLength(), 1e-12);
+    }
+
+    @Test
+    public void localSearchLeavesNoImprovingMove() {
+
+        for (long seed = 1; seed <= 10; seed++) {
+            var points = randomPoints(new Random(seed), 60);
+            var costs = distanceMatrix(points);
+            var graph = new Graph(points);
+            graph.toGreedyOrder();
+            var greedyLength = graph.getVisitOrderLength();
+
+            // Every other node is a neighbour, so no move is missed for want of a near node
+            graph.localSearchOptimizeOrder(points.size() - 1);
+            var order = graph.getVisitOrder();
+
+            assertCycle(order, points.size());
+            assertEquals(lengthOf(costs, order), graph.getVisitOrderLength(), 1e-12);
+            assertTrue(graph.getVisitOrderLength() < greedyLength);
+            assertTrue(graph.getMovesApplied() > 0);
+            assertEquals(0, bestTwoOptGain(costs, order), 1e-9);
+            assertEquals(0, bestOrOptGain(costs, order), 1e-9);
+            assertEquals(0, bestThreeOptGain(costs, order), 1e-9);
+        }
+    }
+
+    @Test
+    public void multiStartOrderDoesNotDependOnThreads() {
+
+        var points = randomPoints(new Random(4), 50);
+        int[] expected = null;
+
+        for (var threads : new int[] { 1, 4, 4 }) {
+            var graph = new Graph(points);
+            graph.toGreedyOrder();
+            var greedyLength = graph.getVisitOrderLength();
+            graph.multiStartOptimizeOrder(7, 8, threads, 10);
+            var order = graph.getVisitOrder();
+
+            assertCycle(order, points.size());
+            assertTrue(graph.getVisitOrderLength() < greedyLength);
+            if (expected == null) {
+                expected = order;
+            }
+            assertArrayEquals(expected, order);
+        }
+    }
+
+    @Test
+    public void heldKarpMatchesBruteForce() {
+
+        for (long seed = 1; seed <= 5; seed++) {
+            var points = randomPoints(new Random(seed), 8);
+            var costs = distanceMatrix(points);
+            var expected = bruteForceLength(costs);
+
+            for (var threads : new int[] { 1, 4 }) {
+                var graph = new Graph(points);
+                graph.toGreedyOrder();
+                assertTrue(graph.exactOptimizeOrder(10000, threads));
+                assertCycle(graph.getVisitOrder(), points.size());
+                assertEquals(expected, graph.getVisitOrderLength(), 1e-12);
+                assertEquals(graph.getVisitOrderLength(), graph.getLowerBound(), 0);
+            }
+        }
+    }
+
+    @Test
+    public void branchAndBoundFindsTheConvexCycle() {
+
+        // Around points in convex position the shortest cycle follows the hull
+        var count = 24;
+        var angles = new ArrayList<Double>();
+        for (int i = 0; i < count; i++) {
+            angles.add(2 * Math.PI * i / count);
+        }
+        Collections.shuffle(angles, new Random(5));
+        var points = new ArrayList<Point>();
+        for (var angle : angles) {
+            points.add(Point.fromLngLat(0.001 * Math.cos(angle), 0.002 * Math.sin(angle)));
+        }
+        var hull = new int[count];
+        for (int i = 0; i < count; i++) {
+            hull[i] = angles.indexOf(2 * Math.PI * i / count);
+        }
+        var expected = lengthOf(distanceMatrix(points), hull);
+
+        var graph = new Graph(points);
+        graph.toGreedyOrder();
+        assertTrue(graph.exactOptimizeOrder(60000, 1));
+        assertCycle(graph.getVisitOrder(), count);
+        assertEquals(expected, graph.getVisitOrderLength(), 1e-12);
+        assertEquals(graph.getVisitOrderLength(), graph.getLowerBound(), 0);
+    }
+
+    @Test
+    public void branchAndBoundDoesNotDependOnItsStart() {
+
+        var points = randomPoints(new Random(6), 20);
+        var greedy = new Graph(points);
+        greedy.toGreedyOrder();
+        var optimized = new Graph(points);
+        optimized.toGreedyOrder();
+        optimized.localSearchOptimizeOrder(10);
+        var heuristicLength = optimized.getVisitOrderLength();
+
+        // A poor and a good first cycle lead to equally long proven shortest cycles
+        for (var graph : new Graph[] { greedy, optimized }) {
+            assertTrue(graph.exactOptimizeOrder(60000, 1));
+            assertCycle(graph.getVisitOrder(), points.size());
+            assertEquals(graph.getVisitOrderLength(), graph.getLowerBound(), 0);
+        }
+        assertEquals(greedy.getVisitOrderLength(), optimized.getVisitOrderLength(), 1e-9);
+        assertTrue(optimized.getVisitOrderLength() <= heuristicLength);
+    }
+
+}
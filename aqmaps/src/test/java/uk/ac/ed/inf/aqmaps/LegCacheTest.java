@@ -0,0 +1,270 @@
+package uk.ac.ed.inf.aqmaps;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import com.mapbox.geojson.Point;
+
+/**
+ * Checks that cached legs give the same paths as the path search, also after the cache was saved
+ * and loaded back, that a leg starting elsewhere in the same lattice cell is replayed from its own
+ * start, and that legs are searched for again when anything they depend on changes.
+ */
+public class LegCacheTest {
+
+    private static final LocalDate DATE = LocalDate.of(2031, 6, 3);
+    private static final MoveModel MOVES = Drone.MOVE_MODEL;
+    private static final double RANGE = Drone.READING_RANGE;
+    private static final double CELL_SIZE = Drone.SEARCH_CELL_SIZE;
+    private static final int MAX_LEGS = 1000;
+
+    private TestScenario scenario;
+    private ObstacleIndex noFlyZones;
+    private ArrayList<Point> points;
+    private SearchArena arena;
+    private File directory;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+
+        this.scenario = new TestScenario(23, 10, 20, DATE);
+        this.noFlyZones = new ObstacleIndex(this.scenario.loadNoFlyZones());
+        this.points = new ArrayList<Point>();
+        this.points.add(this.scenario.getStart());
+        this.points.addAll(AirQualitySensor.toPoints(this.scenario.loadSensors(DATE)).subList(0,
+                5));
+        this.arena = new SearchArena();
+        this.directory = Files.createTempDirectory("aqmaps-legs").toFile();
+        this.file = new File(this.directory, "legs.cache");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+
+        this.scenario.close();
+        TestFiles.deleteRecursively(this.directory);
+    }
+
+    /**
+     * Finds the paths of the legs between every ordered pair of points through a cache.
+     *
+     * @param cache the cache
+     * @return the paths, null for legs without a path
+     */
+    private ArrayList<Path> findLegs(LegCache cache) {
+
+        var paths = new ArrayList<Path>();
+        for (var start : this.points) {
+            for (var target : this.points) {
+                if (start != target) {
+                    paths.add(cache.findPathToPoint(start, target, RANGE, MOVES, this.noFlyZones,
+                            CELL_SIZE, this.arena));
+                }
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * @param expected paths
+     * @param actual   paths that should be made of the same moves
+     */
+    private static void assertSamePaths(ArrayList<Path> expected, ArrayList<Path> actual) {
+
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertNotNull(actual.get(i));
+            assertEquals(expected.get(i).getMoveDirections(), actual.get(i).getMoveDirections());
+            assertEquals(expected.get(i).getPoints(), actual.get(i).getPoints());
+        }
+    }
+
+    /**
+     * @return point inside one of the buildings of the map
+     */
+    private Point pointInsideBuilding() {
+
+        var start = this.scenario.getStart();
+        for (var polygon : this.noFlyZones.getPolygons()) {
+            var coordinates = Utils2D.toCoordinates(polygon);
+            var longitude = 0.0;
+            var latitude = 0.0;
+            // The first corner is repeated at the end of the ring
+            var count = coordinates.length / 2 - 1;
+            for (int i = 0; i < count; i++) {
+                longitude += coordinates[2 * i] / count;
+                latitude += coordinates[2 * i + 1] / count;
+            }
+            // The confinement area is told apart by containing the start position
+            if (Utils2D.pointInPolygon(longitude, latitude, coordinates)
+                    && !Utils2D.pointInPolygon(start.longitude(), start.latitude(), coordinates)) {
+                return Point.fromLngLat(longitude, latitude);
+            }
+        }
+        throw new IllegalStateException("No building contains its centroid.");
+    }
+
+    @Test
+    public void cachedLegsMatchPathSearch() {
+
+        var cache = new LegCache(null, MAX_LEGS);
+        var searched = findLegs(cache);
+        var legCount = searched.size();
+        assertEquals(legCount, cache.getMissCount());
+
+        var index = 0;
+        for (var start : this.points) {
+            for (var target : this.points) {
+                if (start != target) {
+                    var path = Path.findPathToPoint(start, target, RANGE, MOVES,
+                            this.noFlyZones, CELL_SIZE, new SearchArena());
+                    assertEquals(path.getPoints(), searched.get(index++).getPoints());
+                }
+            }
+        }
+
+        // A leg taken from the cache expands no nodes, but tells how its search ended
+        this.arena.setOutcome(SearchArena.Outcome.EXHAUSTED);
+        assertSamePaths(searched, findLegs(cache));
+        assertEquals(legCount, cache.getHitCount());
+        assertEquals(legCount, cache.getMissCount());
+        assertEquals(SearchArena.Outcome.FOUND, this.arena.getOutcome());
+        assertEquals(0, this.arena.getNodeCount());
+    }
+
+    @Test
+    public void savedLegsAreLoadedBack() throws IOException {
+
+        var cache = new LegCache(this.file, MAX_LEGS);
+        var searched = findLegs(cache);
+        cache.save();
+
+        // The temporary file the cache was written to was moved into place
+        assertArrayEquals(new String[] { this.file.getName() }, this.directory.list());
+
+        var loaded = LegCache.load(this.file, MAX_LEGS);
+        assertSamePaths(searched, findLegs(loaded));
+        assertEquals(searched.size(), loaded.getHitCount());
+        assertEquals(0, loaded.getMissCount());
+
+        // Saving again replaces the file
+        loaded.save();
+        assertArrayEquals(new String[] { this.file.getName() }, this.directory.list());
+        assertSamePaths(searched, findLegs(LegCache.load(this.file, MAX_LEGS)));
+    }
+
+    @Test
+    public void cacheWithoutFileIsNotSaved() throws IOException {
+
+        var cache = new LegCache(null, MAX_LEGS);
+        findLegs(cache);
+        cache.save();
+        assertEquals(0, this.directory.list().length);
+    }
+
+    @Test
+    public void damagedFileGivesEmptyCache() throws IOException {
+
+        Files.write(this.file.toPath(), new byte[] { 1, 2, 3 });
+        var cache = LegCache.load(this.file, MAX_LEGS);
+        var searched = findLegs(cache);
+
+        assertEquals(searched.size(), cache.getMissCount());
+        assertEquals(0, cache.getHitCount());
+        assertEquals(0, LegCache.load(new File(this.directory, "missing"), MAX_LEGS)
+                .getHitCount());
+    }
+
+    @Test
+    public void legFromSameCellIsReplayedFromItsStart() {
+
+        var cache = new LegCache(null, MAX_LEGS);
+        var target = this.points.get(1);
+        var start = this.scenario.getStart();
+        var column = Math.floor(start.longitude() / CELL_SIZE);
+        var row = Math.floor(start.latitude() / CELL_SIZE);
+        var first = Point.fromLngLat((column + 0.25) * CELL_SIZE, (row + 0.25) * CELL_SIZE);
+        var second = Point.fromLngLat((column + 0.75) * CELL_SIZE, (row + 0.75) * CELL_SIZE);
+
+        var searched = cache.findPathToPoint(first, target, RANGE, MOVES, this.noFlyZones,
+                CELL_SIZE, this.arena);
+        var replayed = cache.findPathToPoint(second, target, RANGE, MOVES, this.noFlyZones,
+                CELL_SIZE, this.arena);
+
+        assertEquals(1, cache.getHitCount());
+        assertEquals(searched.getMoveDirections(), replayed.getMoveDirections());
+        // The moves are made again from the actual start
+        assertEquals(second, replayed.getPoints().get(0));
+        var end = replayed.getPoints().get(replayed.getPoints().size() - 1);
+        assertTrue(Utils2D.distance(end, target) < RANGE);
+    }
+
+    @Test
+    public void legWithoutPathIsCached() {
+
+        var cache = new LegCache(null, MAX_LEGS);
+        var inside = this.pointInsideBuilding();
+        var target = this.scenario.getStart();
+
+        assertNull(cache.findPathToPoint(inside, target, RANGE, MOVES, this.noFlyZones,
+                CELL_SIZE, this.arena));
+        this.arena.setOutcome(SearchArena.Outcome.FOUND);
+        assertNull(cache.findPathToPoint(inside, target, RANGE, MOVES, this.noFlyZones,
+                CELL_SIZE, this.arena));
+
+        assertEquals(1, cache.getHitCount());
+        assertEquals(SearchArena.Outcome.UNREACHABLE, this.arena.getOutcome());
+    }
+
+    @Test
+    public void changedLegsAreSearchedAgain() {
+
+        var cache = new LegCache(null, MAX_LEGS);
+        var start = this.points.get(0);
+        var target = this.points.get(1);
+        cache.findPathToPoint(start, target, RANGE, MOVES, this.noFlyZones, CELL_SIZE,
+                this.arena);
+
+        // Other obstacles, range, move model and lattice cell size each make a different leg
+        var noFlyZones = this.scenario.loadNoFlyZones();
+        var buildings = new ObstacleIndex(new ArrayList<>(noFlyZones.subList(0,
+                noFlyZones.size() - 1)));
+        cache.findPathToPoint(start, target, RANGE, MOVES, buildings, CELL_SIZE, this.arena);
+        cache.findPathToPoint(start, target, RANGE / 2, MOVES, this.noFlyZones, CELL_SIZE,
+                this.arena);
+        cache.findPathToPoint(start, target, RANGE, new MoveModel(MOVES.getMoveLength(), 20),
+                this.noFlyZones, CELL_SIZE, this.arena);
+        cache.findPathToPoint(start, target, RANGE, MOVES, this.noFlyZones, 2 * CELL_SIZE,
+                this.arena);
+
+        assertEquals(0, cache.getHitCount());
+        assertEquals(5, cache.getMissCount());
+    }
+
+    @Test
+    public void leastRecentlyUsedLegIsEvicted() {
+
+        var cache = new LegCache(null, 2);
+        var start = this.points.get(0);
+        for (var i : new int[] { 1, 2, 1, 3, 1, 2 }) {
+            cache.findPathToPoint(start, this.points.get(i), RANGE, MOVES, this.noFlyZones,
+                    CELL_SIZE, this.arena);
+        }
+        // The leg to the second point was evicted by the third one, the first kept being used
+        assertEquals(2, cache.getHitCount());
+        assertEquals(4, cache.getMissCount());
+    }
+
+}
@@ -0,0 +1,113 @@
+package uk.ac.ed.inf.aqmaps;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import com.mapbox.geojson.Point;
+
+/**
+ * Checks that the legs planned between all pairs of points on several threads have the same number
+ * of moves as the legs found by searching for them one after another.
+ */
+public class LegPlannerTest {
+
+    private static final LocalDate DATE = LocalDate.of(2031, 6, 2);
+    private static final MoveModel MOVES = Drone.MOVE_MODEL;
+    private static final double CELL_SIZE = Drone.SEARCH_CELL_SIZE;
+    private static final int POINT_COUNT = 10;
+
+    private TestScenario scenario;
+    private ObstacleIndex noFlyZones;
+    private ArrayList<Point> points;
+    private double[] ranges;
+
+    @Before
+    public void setUp() throws IOException {
+
+        this.scenario = new TestScenario(17, 10, 30, DATE);
+        this.noFlyZones = new ObstacleIndex(this.scenario.loadNoFlyZones());
+        var sensors = AirQualitySensor.toPoints(this.scenario.loadSensors(DATE));
+
+        // The start and some sensors, with the ranges the drone plans its legs with
+        this.points = new ArrayList<Point>();
+        this.points.add(this.scenario.getStart());
+        this.points.addAll(sensors.subList(0, POINT_COUNT - 1));
+        this.ranges = new double[POINT_COUNT];
+        for (int i = 0; i < POINT_COUNT; i++) {
+            this.ranges[i] = i == 0 ? 0.0001 : Drone.READING_RANGE;
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        this.scenario.close();
+    }
+
+    /**
+     * Checks planned legs against a search for every leg on its own.
+     *
+     * @param legs the planned legs
+     */
+    private void assertSameAsSequential(LegPlanner.Legs legs) {
+
+        var arena = new SearchArena();
+        for (int from = 0; from < POINT_COUNT; from++) {
+            for (int to = 0; to < POINT_COUNT; to++) {
+                if (from == to) {
+                    continue;
+                }
+                var path = Path.findPathToPoint(this.points.get(from), this.points.get(to),
+                        this.ranges[to], MOVES, this.noFlyZones, CELL_SIZE, arena);
+                var expected = path == null ? -1 : path.getMoveDirections().size();
+                assertEquals(expected, legs.getMoveCount(from, to));
+            }
+        }
+    }
+
+    @Test
+    public void parallelLegsMatchSequentialSearches() {
+
+        for (var parallelism : new int[] { 1, 4 }) {
+            var planner = new LegPlanner(MOVES, this.noFlyZones, CELL_SIZE, parallelism);
+            assertSameAsSequential(planner.planAllPairs(this.points, this.ranges));
+        }
+    }
+
+    @Test
+    public void cachedLegsMatchSequentialSearches() {
+
+        var cache = new LegCache(null, 1000);
+        var planner = new LegPlanner(MOVES, this.noFlyZones, CELL_SIZE, 4, cache);
+
+        // The second time every leg comes from the cache
+        assertSameAsSequential(planner.planAllPairs(this.points, this.ranges));
+        assertSameAsSequential(planner.planAllPairs(this.points, this.ranges));
+        assertEquals(POINT_COUNT * (POINT_COUNT - 1), cache.getMissCount());
+        assertEquals(POINT_COUNT * (POINT_COUNT - 1), cache.getHitCount());
+    }
+
+    @Test
+    public void costMatrixAveragesBothDirections() {
+
+        var planner = new LegPlanner(MOVES, this.noFlyZones, CELL_SIZE, 4);
+        var legs = planner.planAllPairs(this.points, this.ranges);
+        var costs = legs.toSymmetricCostMatrix(1000);
+
+        for (int i = 0; i < POINT_COUNT; i++) {
+            assertEquals(0, costs[i][i], 0);
+            for (int j = 0; j < POINT_COUNT; j++) {
+                if (i != j) {
+                    assertEquals(costs[j][i], costs[i][j], 0);
+                    assertEquals((legs.getMoveCount(i, j) + legs.getMoveCount(j, i)) / 2.0,
+                            costs[i][j], 0);
+                }
+            }
+        }
+    }
+
+}
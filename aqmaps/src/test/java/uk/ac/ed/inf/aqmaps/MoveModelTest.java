@@ -0,0 +1,76 @@
+package uk.ac.ed.inf.aqmaps;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Checks that the precomputed moves of the drone are exactly the moves it makes when it flies.
+ */
+public class MoveModelTest {
+
+    private static final MoveModel MOVES = Drone.MOVE_MODEL;
+
+    @Test
+    public void directionsAreEveryStepOfFullAngle() {
+
+        var directions = MOVES.getDirections();
+        assertEquals(360 / MOVES.getDirectionStep(), directions.length);
+        for (int i = 0; i < directions.length; i++) {
+            assertEquals(i * MOVES.getDirectionStep(), directions[i]);
+        }
+    }
+
+    @Test
+    public void offsetsAreTheMovesOfTheDrone() {
+
+        var longitude = -3.188396;
+        var latitude = 55.944425;
+        var directions = MOVES.getDirections();
+
+        for (int i = 0; i < directions.length; i++) {
+            var longitudeOffset = MOVES.getLongitudeOffsets()[i];
+            var latitudeOffset = MOVES.getLatitudeOffsets()[i];
+
+            // The drone flies the paths found with the offsets, so they must give the very same
+            // points as its own moves
+            assertEquals(Utils2D.moveLongitude(longitude, MOVES.getMoveLength(), directions[i]),
+                    longitude + longitudeOffset, 0);
+            assertEquals(Utils2D.moveLatitude(latitude, MOVES.getMoveLength(), directions[i]),
+                    latitude + latitudeOffset, 0);
+            assertEquals(MOVES.getMoveLength(), Utils2D.distance(0, 0, longitudeOffset,
+                    latitudeOffset), 1e-15);
+        }
+    }
+
+    @Test
+    public void onlyListedDirectionsAreAllowed() {
+
+        var allowed = 0;
+        for (int direction = -10; direction < 370; direction++) {
+            var listed = direction >= 0 && direction < 360
+                    && direction % MOVES.getDirectionStep() == 0;
+            assertEquals(listed, MOVES.isAllowed(direction));
+            if (listed) {
+                allowed++;
+            }
+        }
+        assertEquals(MOVES.getDirections().length, allowed);
+        assertFalse(MOVES.isAllowed(360));
+    }
+
+    @Test
+    public void stepThatDoesNotDivideFullAngleStopsBelowIt() {
+
+        var moves = new MoveModel(0.0003, 7);
+        var directions = moves.getDirections();
+
+        assertEquals(52, directions.length);
+        assertEquals(357, directions[directions.length - 1]);
+        assertTrue(moves.isAllowed(357));
+        assertFalse(moves.isAllowed(360));
+    }
+
+}
@@ -0,0 +1,128 @@
+package uk.ac.ed.inf.aqmaps;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import com.mapbox.geojson.Point;
+import com.mapbox.geojson.Polygon;
+
+/**
+ * Checks that the grid of the obstacle index gives the same answers as testing a line segment
+ * against every side of every polygon, whatever the size of its cells.
+ */
+public class ObstacleIndexTest {
+
+    private static final int SEGMENT_COUNT = 20000;
+
+    private TestScenario scenario;
+    private ArrayList<Polygon> noFlyZones;
+    // The buildings without the confinement area, so that segments can leave the grid
+    private ArrayList<Polygon> buildings;
+
+    @Before
+    public void setUp() throws IOException {
+
+        this.scenario = new TestScenario(29, 15, 0);
+        this.noFlyZones = this.scenario.loadNoFlyZones();
+        this.buildings = new ArrayList<Polygon>(this.noFlyZones.subList(0,
+                this.noFlyZones.size() - 1));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        this.scenario.close();
+    }
+
+    /**
+     * @param random the source of random numbers
+     * @return random line segments from a fraction of a move long up to across the whole map,
+     *         some of them starting or ending beyond the confinement area
+     */
+    private static ArrayList<Point[]> randomSegments(Random random) {
+
+        var bounds = App.getConfinementBounds();
+        var margin = 0.001;
+        var width = bounds[2] - bounds[0] + 2 * margin;
+        var height = bounds[3] - bounds[1] + 2 * margin;
+        var segments = new ArrayList<Point[]>();
+
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            var start = Point.fromLngLat(bounds[0] - margin + random.nextDouble() * width,
+                    bounds[1] - margin + random.nextDouble() * height);
+            var length = (i % 20 == 0 ? 0.005 : 0.0006) * random.nextDouble();
+            var angle = 2 * Math.PI * random.nextDouble();
+            segments.add(new Point[] { start,
+                    Point.fromLngLat(start.longitude() + length * Math.cos(angle),
+                            start.latitude() + length * Math.sin(angle)) });
+        }
+        return segments;
+    }
+
+    /**
+     * Checks an index against the brute force test on random line segments.
+     *
+     * @param polygons the polygons of the index
+     * @param index    the index
+     * @param seed     the seed of the line segments
+     */
+    private static void assertSameAsBruteForce(ArrayList<Polygon> polygons, ObstacleIndex index,
+            long seed) {
+
+        var intersecting = 0;
+        for (var segment : randomSegments(new Random(seed))) {
+            var start = segment[0];
+            var end = segment[1];
+            var expected = Utils2D.lineIntersectPolygons(start, end, polygons);
+
+            assertEquals(expected, index.lineIntersects(start, end));
+            assertEquals(expected, index.lineIntersects(start.longitude(), start.latitude(),
+                    end.longitude(), end.latitude()));
+            if (expected) {
+                intersecting++;
+            }
+        }
+        // Both answers were given often enough for the comparison to mean something
+        assertTrue(intersecting > SEGMENT_COUNT / 20);
+        assertTrue(intersecting < SEGMENT_COUNT - SEGMENT_COUNT / 20);
+    }
+
+    @Test
+    public void defaultGridMatchesBruteForce() {
+
+        assertSameAsBruteForce(this.noFlyZones, new ObstacleIndex(this.noFlyZones), 1);
+        assertSameAsBruteForce(this.buildings, new ObstacleIndex(this.buildings), 2);
+    }
+
+    @Test
+    public void gridOfAnyCellSizeMatchesBruteForce() {
+
+        // From cells much smaller than a move to a single cell holding every side
+        for (var cellSize : new double[] { 0.00005, 0.001, 1 }) {
+            assertSameAsBruteForce(this.buildings, new ObstacleIndex(this.buildings, cellSize), 3);
+        }
+    }
+
+    @Test
+    public void edgesAndContentHashDescribeThePolygons() {
+
+        var index = new ObstacleIndex(this.noFlyZones);
+        var edgeCount = 0;
+        for (var polygon : this.noFlyZones) {
+            edgeCount += Utils2D.toCoordinates(polygon).length / 2;
+        }
+
+        assertEquals(edgeCount, index.getEdgeCount());
+        assertEquals(index.getContentHash(),
+                new ObstacleIndex(this.scenario.loadNoFlyZones(), 0.001).getContentHash());
+        assertNotEquals(index.getContentHash(),
+                new ObstacleIndex(this.buildings).getContentHash());
+    }
+
+}
@@ -0,0 +1,235 @@
+package uk.ac.ed.inf.aqmaps;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import com.mapbox.geojson.Point;
+
+/**
+ * Checks the occupancy grid of the map of the benchmarks against the no-fly zones it was built
+ * from, and that a saved grid is loaded back the same or rejected if it was damaged.
+ */
+public class OccupancyGridTest {
+
+    // The start position of the benchmarks, in the free space of their map
+    private static final Point START = Point.fromLngLat(-3.188396, 55.944425);
+    // A point deep inside the first building of the map
+    private static final Point INSIDE = Point.fromLngLat(-3.18925, 55.94515);
+    private static final double CELL_SIZE = Drone.DEFAULT_OCCUPANCY_CELL_SIZE;
+    private static final double RANGE = Drone.READING_RANGE;
+    private static final int SEGMENT_COUNT = 100000;
+
+    private ObstacleIndex noFlyZones;
+    private OccupancyGrid grid;
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+
+        try (var input = this.getClass().getResourceAsStream("fixture/no-fly-zones.geojson")) {
+            var polygons = App.parsePolygons(
+                    new String(input.readAllBytes(), StandardCharsets.UTF_8));
+            polygons.add(App.getConfinementArea());
+            this.noFlyZones = new ObstacleIndex(polygons);
+        }
+        this.grid = new OccupancyGrid(this.noFlyZones, START, CELL_SIZE);
+        this.directory = Files.createTempDirectory("aqmaps-grids").toFile();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        TestFiles.deleteRecursively(this.directory);
+    }
+
+    /**
+     * @param random the source of random numbers
+     * @return random point of the confinement area or slightly beyond it
+     */
+    private static Point randomPoint(Random random) {
+
+        var bounds = App.getConfinementBounds();
+        var margin = 0.0005;
+        return Point.fromLngLat(
+                bounds[0] - margin + random.nextDouble() * (bounds[2] - bounds[0] + 2 * margin),
+                bounds[1] - margin + random.nextDouble() * (bounds[3] - bounds[1] + 2 * margin));
+    }
+
+    /**
+     * @param random the source of random numbers
+     * @return random line segments, most of them a few cells long and some of them much longer
+     */
+    private static ArrayList<Point[]> randomSegments(Random random) {
+
+        var segments = new ArrayList<Point[]>();
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            var start = randomPoint(random);
+            var length = (i % 10 == 0 ? 100 : 10) * CELL_SIZE * random.nextDouble();
+            var angle = 2 * Math.PI * random.nextDouble();
+            segments.add(new Point[] { start,
+                    Point.fromLngLat(start.longitude() + length * Math.cos(angle),
+                            start.latitude() + length * Math.sin(angle)) });
+        }
+        return segments;
+    }
+
+    /**
+     * @param grid  an occupancy grid
+     * @param start the start point of a line segment
+     * @param end   the end point of a line segment
+     * @return the answer of the grid for the line segment
+     */
+    private static boolean isFree(OccupancyGrid grid, Point start, Point end) {
+        return grid.isFree(start.longitude(), start.latitude(), end.longitude(), end.latitude());
+    }
+
+    /**
+     * @param grid a grid with the same map as the one of the test
+     * @return point whose surroundings within the range are all free cells
+     */
+    private static Point freeTarget(OccupancyGrid grid) {
+
+        var random = new Random(2);
+        while (true) {
+            var point = randomPoint(random);
+            var reach = Point.fromLngLat(point.longitude() + RANGE + CELL_SIZE, point.latitude());
+            if (isFree(grid, point, reach)) {
+                return point;
+            }
+        }
+    }
+
+    /**
+     * Changes a single bit of a file.
+     *
+     * @param file     the file
+     * @param position the position of the byte the bit is in
+     * @throws IOException if the file can not be changed
+     */
+    private static void flipBit(File file, long position) throws IOException {
+
+        try (var output = new RandomAccessFile(file, "rw")) {
+            output.seek(position);
+            var value = output.readByte();
+            output.seek(position);
+            output.writeByte(value ^ 1);
+        }
+    }
+
+    @Test
+    public void freeSegmentsDoNotIntersectNoFlyZones() {
+
+        var free = 0;
+        for (var segment : randomSegments(new Random(1))) {
+            if (isFree(this.grid, segment[0], segment[1])) {
+                assertFalse(this.noFlyZones.lineIntersects(segment[0], segment[1]));
+                free++;
+            }
+        }
+        // Many of the short segments lie in free space, so the check was not vacuous
+        assertTrue(free > SEGMENT_COUNT / 10);
+    }
+
+    @Test
+    public void freeSegmentsDoNotIntersectGeneratedBuildings() throws IOException {
+
+        // Rotated rectangles and polygons test the classification of sides that are not straight
+        try (var scenario = new TestScenario(23, 12, 0)) {
+            var noFlyZones = new ObstacleIndex(scenario.loadNoFlyZones());
+            var grid = new OccupancyGrid(noFlyZones, scenario.getStart(), CELL_SIZE);
+
+            for (var segment : randomSegments(new Random(3))) {
+                if (isFree(grid, segment[0], segment[1])) {
+                    assertFalse(noFlyZones.lineIntersects(segment[0], segment[1]));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void startInBlockedCellReachesOnlyCellsThatAreNotFree() {
+
+        var target = freeTarget(this.grid);
+        assertEquals(OccupancyGrid.BLOCKED, this.grid.getState(INSIDE.longitude(),
+                INSIDE.latitude()));
+
+        // Inside a building the drone can only get to its sides, never out into free space
+        assertFalse(this.grid.mayReach(INSIDE, target, RANGE));
+        assertTrue(this.grid.mayReach(INSIDE, INSIDE, RANGE));
+        assertTrue(this.grid.mayReach(START, target, RANGE));
+        assertFalse(this.grid.mayReach(START, INSIDE, RANGE));
+    }
+
+    @Test
+    public void savedGridLoadsTheSame() throws IOException {
+
+        var file = new File(this.directory, "saved.grid");
+        this.grid.save(file);
+        var loaded = OccupancyGrid.load(file);
+
+        assertEquals(this.grid.getObstacleHash(), loaded.getObstacleHash());
+        assertEquals(this.grid.getSignature(), loaded.getSignature());
+        assertEquals(this.grid.getCellSize(), loaded.getCellSize(), 0);
+        assertEquals(this.grid.getRegionCount(), loaded.getRegionCount());
+
+        var target = freeTarget(this.grid);
+        var random = new Random(4);
+        for (var segment : randomSegments(random)) {
+            var start = segment[0];
+            var end = segment[1];
+            assertEquals(this.grid.getState(start.longitude(), start.latitude()),
+                    loaded.getState(start.longitude(), start.latitude()));
+            assertEquals(isFree(this.grid, start, end), isFree(loaded, start, end));
+            assertEquals(this.grid.mayReach(start, end, RANGE), loaded.mayReach(start, end,
+                    RANGE));
+            assertEquals(this.grid.mayReach(start, target, RANGE), loaded.mayReach(start,
+                    target, RANGE));
+        }
+        // No temporary file is left next to the grid
+        assertEquals(1, this.directory.list().length);
+    }
+
+    @Test
+    public void damagedGridIsRejected() throws IOException {
+
+        var file = new File(this.directory, "damaged.grid");
+        this.grid.save(file);
+        // A single bit of the cells is enough, any of them could let moves through a building
+        flipBit(file, file.length() / 2);
+
+        try {
+            OccupancyGrid.load(file);
+            fail("A damaged grid was loaded.");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("damaged"));
+        }
+    }
+
+    @Test
+    public void damagedSavedGridIsBuiltAgain() throws IOException {
+
+        OccupancyGrid.loadOrBuild(this.directory, this.noFlyZones, START, CELL_SIZE);
+        var files = this.directory.listFiles();
+        assertEquals(1, files.length);
+        var saved = Files.readAllBytes(files[0].toPath());
+        flipBit(files[0], files[0].length() - 1);
+
+        var grid = OccupancyGrid.loadOrBuild(this.directory, this.noFlyZones, START, CELL_SIZE);
+        assertEquals(this.grid.getRegionCount(), grid.getRegionCount());
+        // The grid built again replaced the damaged one
+        assertArrayEquals(saved, Files.readAllBytes(files[0].toPath()));
+    }
+
+}
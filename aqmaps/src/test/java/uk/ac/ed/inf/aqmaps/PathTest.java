@@ -0,0 +1,181 @@
+package uk.ac.ed.inf.aqmaps;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import com.mapbox.geojson.Point;
+
+/**
+ * Checks that the leg search finds paths made of allowed moves that avoid the no-fly zones and end
+ * within range of their targets, and that it expands every lattice cell at most once, which also
+ * makes it give up on targets that can not be reached.
+ */
+public class PathTest {
+
+    private static final LocalDate DATE = LocalDate.of(2031, 6, 1);
+    private static final MoveModel MOVES = Drone.MOVE_MODEL;
+    private static final double RANGE = Drone.READING_RANGE;
+    private static final double CELL_SIZE = Drone.SEARCH_CELL_SIZE;
+
+    private TestScenario scenario;
+    private ObstacleIndex noFlyZones;
+    private ArrayList<Point> sensors;
+    private SearchArena arena;
+    private VisibilityGraph shortestPaths;
+
+    @Before
+    public void setUp() throws IOException {
+
+        this.scenario = new TestScenario(11, 10, 30, DATE);
+        this.noFlyZones = new ObstacleIndex(this.scenario.loadNoFlyZones());
+        this.sensors = AirQualitySensor.toPoints(this.scenario.loadSensors(DATE));
+        this.arena = new SearchArena();
+        this.shortestPaths = new VisibilityGraph(this.noFlyZones, 0);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        this.scenario.close();
+    }
+
+    /**
+     * Checks that a path starts at a point, that each of its moves has the move length, an allowed
+     * direction and does not cross the no-fly zones, and that it ends within range of a target.
+     *
+     * @param path   the path
+     * @param start  the point the path should start at
+     * @param target the point the path should end close to
+     */
+    private void assertValid(Path path, Point start, Point target) {
+
+        var points = path.getPoints();
+        var directions = path.getMoveDirections();
+        assertEquals(start, points.get(0));
+        assertEquals(points.size() - 1, directions.size());
+
+        for (int i = 0; i < directions.size(); i++) {
+            var from = points.get(i);
+            var to = points.get(i + 1);
+            assertTrue(MOVES.isAllowed(directions.get(i)));
+            assertEquals(MOVES.getMoveLength(), Utils2D.distance(from, to), 1e-12);
+            assertFalse(this.noFlyZones.lineIntersects(from, to));
+        }
+        assertTrue(Utils2D.distance(points.get(points.size() - 1), target) < RANGE);
+    }
+
+    /**
+     * @return point inside one of the buildings of the map
+     */
+    private Point pointInsideBuilding() {
+
+        for (var polygon : this.noFlyZones.getPolygons()) {
+            var coordinates = Utils2D.toCoordinates(polygon);
+            var longitude = 0.0;
+            var latitude = 0.0;
+            // The first corner is repeated at the end of the ring
+            var count = coordinates.length / 2 - 1;
+            for (int i = 0; i < count; i++) {
+                longitude += coordinates[2 * i] / count;
+                latitude += coordinates[2 * i + 1] / count;
+            }
+            // The confinement area contains the whole map, so it is told apart by containing
+            // the start position
+            var start = this.scenario.getStart();
+            if (Utils2D.pointInPolygon(longitude, latitude, coordinates)
+                    && !Utils2D.pointInPolygon(start.longitude(), start.latitude(), coordinates)) {
+                return Point.fromLngLat(longitude, latitude);
+            }
+        }
+        throw new IllegalStateException("No building contains its centroid.");
+    }
+
+    /**
+     * @return the number of distinct lattice cells of the nodes of the last search in the arena
+     */
+    private int countReachedCells() {
+
+        var cells = new HashSet<String>();
+        for (int node = 0; node < this.arena.getNodeCount(); node++) {
+            cells.add((long) Math.floor(this.arena.getLongitude(node) / CELL_SIZE) + ","
+                    + (long) Math.floor(this.arena.getLatitude(node) / CELL_SIZE));
+        }
+        return cells.size();
+    }
+
+    @Test
+    public void pathsBetweenSensorsAreValid() {
+
+        var found = 0;
+        for (int i = 0; i + 1 < this.sensors.size(); i++) {
+            var start = this.sensors.get(i);
+            var target = this.sensors.get(i + 1);
+            var path = Path.findPathToPoint(start, target, RANGE, MOVES, this.noFlyZones,
+                    CELL_SIZE, this.arena);
+
+            if (path != null) {
+                assertEquals(SearchArena.Outcome.FOUND, this.arena.getOutcome());
+                assertValid(path, start, target);
+                // No path of moves is shorter than the straight line to the edge of the range,
+                // and the search expanding the most promising node first is never far off the
+                // shortest way around the buildings
+                var length = path.getMoveDirections().size() * MOVES.getMoveLength();
+                assertTrue(length > Utils2D.distance(start, target) - RANGE);
+                assertTrue(length < 2 * this.shortestPaths.shortestDistance(start, target)
+                        + MOVES.getMoveLength());
+                found++;
+            }
+        }
+        // The sensors are placed outside the buildings, so nearly all of them can be reached
+        assertTrue(found > this.sensors.size() / 2);
+    }
+
+    @Test
+    public void targetWithinRangeStillNeedsMoves() {
+
+        // The drone moves before every reading, so the start itself never ends a path
+        var start = this.scenario.getStart();
+        var target = Point.fromLngLat(start.longitude() + RANGE / 2, start.latitude());
+        var path = Path.findPathToPoint(start, target, RANGE, MOVES, this.noFlyZones, CELL_SIZE,
+                this.arena);
+
+        assertNotNull(path);
+        assertEquals(SearchArena.Outcome.FOUND, this.arena.getOutcome());
+        assertFalse(path.getMoveDirections().isEmpty());
+        assertValid(path, start, target);
+    }
+
+    @Test
+    public void noCellIsExpandedTwice() {
+
+        var start = this.scenario.getStart();
+        for (var target : this.sensors) {
+            Path.findPathToPoint(start, target, RANGE, MOVES, this.noFlyZones, CELL_SIZE,
+                    this.arena);
+            assertTrue(this.arena.getExpandedCount() <= countReachedCells());
+        }
+    }
+
+    @Test
+    public void searchFromInsideBuildingEndsUnreachable() {
+
+        // Without the closed set the search would move back and forth inside the building forever
+        var inside = this.pointInsideBuilding();
+        var path = Path.findPathToPoint(inside, this.scenario.getStart(), RANGE, MOVES,
+                this.noFlyZones, CELL_SIZE, this.arena);
+
+        assertNull(path);
+        assertEquals(SearchArena.Outcome.UNREACHABLE, this.arena.getOutcome());
+        assertTrue(this.arena.getExpandedCount() <= countReachedCells());
+    }
+
+}
@@ -0,0 +1,67 @@
+package uk.ac.ed.inf.aqmaps;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.CompletableFuture;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks where the resource cache stores resources, with downloads that complete at once.
+ */
+public class ResourceCacheTest {
+
+    private static final String PATH = "/buildings/no-fly-zones.geojson";
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        this.directory = Files.createTempDirectory("aqmaps-resources").toFile();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        TestFiles.deleteRecursively(this.directory);
+    }
+
+    @Test
+    public void resourcesOfDifferentServersAreKeptApart() {
+
+        var cache = new ResourceCache(this.directory, false);
+        var first = cache.readStringAsync("http://localhost:80" + PATH,
+                () -> CompletableFuture.completedFuture("first")).join();
+        var second = cache.readStringAsync("http://localhost:8765" + PATH,
+                () -> CompletableFuture.completedFuture("second")).join();
+        var stored = cache.readStringAsync("http://localhost:80" + PATH,
+                () -> CompletableFuture.failedFuture(new IllegalStateException())).join();
+
+        assertEquals("first", first);
+        assertEquals("second", second);
+        assertEquals("first", stored);
+        assertTrue(new File(this.directory, "localhost_80" + PATH).isFile());
+        assertTrue(new File(this.directory, "localhost_8765" + PATH).isFile());
+    }
+
+    @Test
+    public void failedStoreLeavesNoTemporaryFile() throws IOException {
+
+        // A directory that is not empty can not be replaced by the resource
+        var blocked = new File(this.directory, "localhost_80" + PATH);
+        Files.createDirectories(new File(blocked, "content").toPath());
+
+        var cache = new ResourceCache(this.directory, false);
+        var content = cache.readStringAsync("http://localhost:80" + PATH,
+                () -> CompletableFuture.completedFuture("content")).join();
+
+        assertEquals("content", content);
+        assertArrayEquals(new String[] { blocked.getName() }, blocked.getParentFile().list());
+    }
+
+}
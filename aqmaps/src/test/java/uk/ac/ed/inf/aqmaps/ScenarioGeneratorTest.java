@@ -0,0 +1,129 @@
+package uk.ac.ed.inf.aqmaps;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.stream.Collectors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import com.mapbox.geojson.Point;
+
+/**
+ * Checks that the generated maps are determined by the seed, keep the sensors outside the
+ * buildings and can be read whatever the default locale is.
+ */
+public class ScenarioGeneratorTest {
+
+    private static final LocalDate DATE = LocalDate.of(2031, 4, 1);
+
+    private ArrayList<TestScenario> scenarios;
+    private Locale defaultLocale;
+
+    @Before
+    public void setUp() {
+
+        this.scenarios = new ArrayList<TestScenario>();
+        this.defaultLocale = Locale.getDefault();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+
+        Locale.setDefault(this.defaultLocale);
+        for (var scenario : this.scenarios) {
+            scenario.close();
+        }
+    }
+
+    /**
+     * @param seed the seed of the generator
+     * @return map of eight buildings and twenty sensors on the test day, deleted after the test
+     * @throws IOException if the map can not be written
+     */
+    private TestScenario generate(long seed) throws IOException {
+
+        var scenario = new TestScenario(seed, 8, 20, DATE);
+        this.scenarios.add(scenario);
+        return scenario;
+    }
+
+    /**
+     * @param root the directory of a map
+     * @return the paths of the files of the map relative to the directory, in order
+     * @throws IOException if the directory can not be listed
+     */
+    private static ArrayList<String> listFiles(File root) throws IOException {
+
+        try (var paths = Files.walk(root.toPath())) {
+            return paths.filter(Files::isRegularFile)
+                    .map(path -> root.toPath().relativize(path).toString()).sorted()
+                    .collect(Collectors.toCollection(ArrayList::new));
+        }
+    }
+
+    @Test
+    public void sameSeedGivesSameMap() throws IOException {
+
+        var first = this.generate(3);
+        var second = this.generate(3);
+        var files = listFiles(first.getRoot());
+
+        assertEquals(files, listFiles(second.getRoot()));
+        for (var file : files) {
+            assertArrayEquals(file, Files.readAllBytes(new File(first.getRoot(), file).toPath()),
+                    Files.readAllBytes(new File(second.getRoot(), file).toPath()));
+        }
+        assertEquals(first.getStart(), second.getStart());
+    }
+
+    @Test
+    public void sensorsAndStartAreOutsideBuildings() throws IOException {
+
+        var scenario = this.generate(17);
+        var buildings = App.parsePolygons(Files.readString(
+                new File(scenario.getRoot(), "buildings/no-fly-zones.geojson").toPath()));
+        var points = new ArrayList<Point>();
+        points.add(scenario.getStart());
+        for (var sensor : scenario.loadSensors(DATE)) {
+            points.add(sensor.getLocationAsPoint());
+        }
+
+        assertFalse(buildings.isEmpty());
+        assertEquals(21, points.size());
+        for (var point : points) {
+            for (var building : buildings) {
+                assertFalse(Utils2D.pointInPolygon(point.longitude(), point.latitude(),
+                        Utils2D.toCoordinates(building)));
+            }
+        }
+    }
+
+    @Test
+    public void readingsUseDecimalPointInAnyLocale() throws IOException {
+
+        // Germany writes decimals with a comma, which the drone could not parse
+        Locale.setDefault(Locale.GERMANY);
+        var scenario = this.generate(5);
+        var sensors = scenario.loadSensors(DATE);
+
+        var read = 0;
+        for (var sensor : sensors) {
+            if (!sensor.hasLowBattery()) {
+                var reading = sensor.getReading();
+                assertTrue(0 <= reading && reading <= 256);
+                read++;
+            }
+        }
+        assertTrue(read > 0);
+    }
+
+}
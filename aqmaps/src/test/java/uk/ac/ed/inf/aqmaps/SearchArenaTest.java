@@ -0,0 +1,114 @@
+package uk.ac.ed.inf.aqmaps;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.PriorityQueue;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks the search space heap and the hash table of reached cells of the search arena against
+ * the collections of the standard library, well beyond their initial capacity.
+ */
+public class SearchArenaTest {
+
+    private static final int NODE_COUNT = 20000;
+
+    private SearchArena arena;
+
+    @Before
+    public void setUp() {
+        this.arena = new SearchArena();
+    }
+
+    @Test
+    public void searchSpacePollsLowestHeuristicValueFirst() {
+
+        var random = new Random(1);
+        var expected = new PriorityQueue<Double>();
+
+        // Pushes and polls are interleaved as in a search, which polls one node per expansion
+        for (int i = 0; i < NODE_COUNT; i++) {
+            var value = random.nextInt(1000) / 10.0;
+            // The length of a node is its heuristic value, so a polled node tells its value
+            this.arena.push(this.arena.addNode(i, -i, value, value, i - 1, 0));
+            expected.add(value);
+            if (i % 3 == 0) {
+                assertEquals(expected.poll(), this.arena.getLength(this.arena.poll()), 0);
+            }
+        }
+        assertEquals(expected.size(), this.arena.getSearchSpaceSize());
+        while (!expected.isEmpty()) {
+            assertEquals(expected.poll(), this.arena.getLength(this.arena.poll()), 0);
+        }
+        assertTrue(this.arena.isSearchSpaceEmpty());
+        assertTrue(this.arena.getFrontierPeak() > NODE_COUNT / 2);
+    }
+
+    @Test
+    public void nodesKeepTheirFieldsWhenTheArenaGrows() {
+
+        for (int i = 0; i < NODE_COUNT; i++) {
+            assertEquals(i, this.arena.addNode(i, -i, 2 * i, 3 * i, i - 1, i % 36));
+        }
+        assertEquals(NODE_COUNT, this.arena.getNodeCount());
+        for (int i = 0; i < NODE_COUNT; i++) {
+            assertEquals(i, this.arena.getLongitude(i), 0);
+            assertEquals(-i, this.arena.getLatitude(i), 0);
+            assertEquals(2 * i, this.arena.getLength(i), 0);
+            assertEquals(i - 1, this.arena.getParent(i));
+            assertEquals(i % 36, this.arena.getDirection(i));
+        }
+    }
+
+    @Test
+    public void cellsKeepTheShortestLengthUntilClosed() {
+
+        var random = new Random(2);
+        var lengths = new HashMap<Long, Double>();
+        var closed = new HashSet<Long>();
+
+        for (int i = 0; i < 10 * NODE_COUNT; i++) {
+            // Keys far apart and close together, as cells of the lattice are
+            var key = random.nextBoolean() ? random.nextInt(NODE_COUNT)
+                    : (long) random.nextInt(NODE_COUNT) << 32;
+            if (random.nextInt(4) == 0) {
+                assertEquals(closed.add(key), this.arena.closeCell(key));
+            } else {
+                var length = random.nextInt(100);
+                var shorter = !closed.contains(key)
+                        && length < lengths.getOrDefault(key, Double.POSITIVE_INFINITY);
+                assertEquals(shorter, this.arena.offerCell(key, length));
+                if (shorter) {
+                    lengths.put(key, (double) length);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void resetForgetsNodesAndCells() {
+
+        for (int generation = 0; generation < 100; generation++) {
+            this.arena.reset();
+            assertEquals(0, this.arena.getNodeCount());
+            assertTrue(this.arena.isSearchSpaceEmpty());
+            assertEquals(0, this.arena.getFrontierPeak());
+
+            // Every cell is new again, whatever the previous searches did with it
+            for (long key = 0; key < 500; key++) {
+                assertTrue(this.arena.offerCell(key, generation));
+                assertFalse(this.arena.offerCell(key, generation));
+                assertTrue(this.arena.closeCell(key));
+                assertFalse(this.arena.offerCell(key, -1));
+            }
+            this.arena.push(this.arena.addNode(0, 0, 0, 0, -1, 0));
+        }
+    }
+
+}
@@ -0,0 +1,92 @@
+package uk.ac.ed.inf.aqmaps;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import org.junit.Before;
+import org.junit.Test;
+import com.mapbox.geojson.Point;
+
+/**
+ * Checks the node ids, the visited state and the readings kept by the sensor registry.
+ */
+public class SensorRegistryTest {
+
+    private static final Point START = Point.fromLngLat(-3.1880, 55.9440);
+    // A sensor with a valid reading and two with low battery, as the server lists them
+    private static final String SENSORS = "[{\"location\":\"first.sensor.words\","
+            + "\"battery\":87.5,\"reading\":\"140.25\"},"
+            + "{\"location\":\"second.sensor.words\",\"battery\":4.2,\"reading\":\"null\"},"
+            + "{\"location\":\"third.sensor.words\",\"battery\":9.9,\"reading\":\"NaN\"}]";
+
+    private ArrayList<AirQualitySensor> sensors;
+    private SensorRegistry registry;
+
+    @Before
+    public void setUp() throws IOException {
+
+        var input = new ByteArrayInputStream(SENSORS.getBytes(StandardCharsets.UTF_8));
+        this.sensors = AirQualitySensor.loadList(input, location -> {
+            var index = location.getWords().startsWith("first") ? 1
+                    : location.getWords().startsWith("second") ? 2 : 3;
+            location.resolve("{\"words\":\"" + location.getWords() + "\",\"coordinates\":"
+                    + "{\"lng\":" + (-3.1880 + 0.0005 * index) + ",\"lat\":55.9440}}");
+            return CompletableFuture.completedFuture(null);
+        });
+        this.registry = new SensorRegistry(START, this.sensors);
+    }
+
+    @Test
+    public void startIsNodeZeroAndSensorsFollowInOrder() {
+
+        assertEquals(4, this.registry.getNodeCount());
+        assertEquals(START, this.registry.getPoint(SensorRegistry.START_NODE));
+        for (int node = 1; node < this.registry.getNodeCount(); node++) {
+            assertEquals(this.sensors.get(node - 1), this.registry.getSensor(node));
+            assertEquals(-3.1880 + 0.0005 * node, this.registry.getLongitude(node), 1e-12);
+        }
+    }
+
+    @Test
+    public void readingsAreOnlyKnownOnceRead() {
+
+        for (int node = 1; node < this.registry.getNodeCount(); node++) {
+            assertFalse(this.registry.isVisited(node));
+            assertFalse(this.registry.hasLowBattery(node));
+            assertTrue(Double.isNaN(this.registry.getReading(node)));
+        }
+
+        this.registry.markVisited(1);
+        this.registry.markVisited(2);
+
+        assertEquals(2, this.registry.getVisitedCount());
+        assertEquals(140.25, this.registry.getReading(1), 0);
+        assertFalse(this.registry.hasLowBattery(1));
+        assertTrue(Double.isNaN(this.registry.getReading(2)));
+        assertTrue(this.registry.hasLowBattery(2));
+        assertFalse(this.registry.isVisited(3));
+        assertFalse(this.registry.hasLowBattery(3));
+    }
+
+    @Test
+    public void markersMatchTheSensors() {
+
+        this.registry.markVisited(1);
+        this.registry.markVisited(3);
+
+        for (int node = 1; node < this.registry.getNodeCount(); node++) {
+            assertEquals(this.sensors.get(node - 1).getMarkerProperties(
+                    this.registry.isVisited(node)), this.registry.getMarkerProperties(node));
+        }
+        assertEquals("#ffc000", this.registry.getMarkerProperties(1).get("marker-color"));
+        assertEquals("cross", this.registry.getMarkerProperties(3).get("marker-symbol"));
+        assertEquals("#aaaaaa", this.registry.getMarkerProperties(2).get("marker-color"));
+    }
+
+}
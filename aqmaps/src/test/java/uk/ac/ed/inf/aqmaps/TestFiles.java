@@ -0,0 +1,62 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.Comparator;
+
+/**
+ * Helpers for the files that tests create and the output files of the drone.
+ */
+class TestFiles {
+
+    /**
+     * Deletes a file, or a directory with everything in it, if it exists.
+     *
+     * @param file the file or directory
+     * @throws IOException if the directory can not be listed
+     */
+    static void deleteRecursively(File file) throws IOException {
+
+        if (!file.exists()) {
+            return;
+        }
+        // The contents of a directory come after it and are deleted before it
+        try (var paths = Files.walk(file.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).map(java.nio.file.Path::toFile)
+                    .forEach(File::delete);
+        }
+    }
+
+    /**
+     * @param date the day of a routine
+     * @return suffix of the names of the output files of the routine on the day
+     */
+    private static String suffix(LocalDate date) {
+        return String.format("%02d-%02d-%04d", date.getDayOfMonth(), date.getMonthValue(),
+                date.getYear());
+    }
+
+    /**
+     * @param date the day of a routine
+     * @return the readings output file of the routine on the day
+     */
+    static File readingsFile(LocalDate date) {
+        return new File("readings-" + suffix(date) + ".geojson");
+    }
+
+    /**
+     * Deletes the output files of the routine on a day.
+     *
+     * @param date the day of the routine
+     * @throws IOException if they can not be deleted
+     */
+    static void deleteOutputFiles(LocalDate date) throws IOException {
+
+        deleteRecursively(new File("flightpath-" + suffix(date) + ".txt"));
+        deleteRecursively(readingsFile(date));
+        deleteRecursively(new File("metrics-" + suffix(date) + ".json"));
+    }
+
+}
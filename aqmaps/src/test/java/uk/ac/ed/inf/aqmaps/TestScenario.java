@@ -0,0 +1,116 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import com.mapbox.geojson.Point;
+import com.mapbox.geojson.Polygon;
+
+/**
+ * A synthetic map written by ScenarioGenerator to a temporary directory, which tests load straight
+ * from its files or serve with DataServer. It is deleted when closed.
+ */
+class TestScenario implements Closeable {
+
+    private File root;
+    private Point start;
+
+    /**
+     * Generates the map of a range of days.
+     *
+     * @param seed        the seed of the generator
+     * @param buildings   the number of buildings
+     * @param sensorCount the number of sensors of every day
+     * @param dates       the days that get sensors
+     * @throws IOException if the files can not be written
+     */
+    TestScenario(long seed, int buildings, int sensorCount, LocalDate... dates)
+            throws IOException {
+
+        this.root = Files.createTempDirectory("aqmaps-scenario").toFile();
+        var generator = new ScenarioGenerator(App.getConfinementBounds(), seed);
+        generator.placeBuildings(buildings);
+        generator.writeNoFlyZones(this.root);
+        for (var date : dates) {
+            generator.writeSensors(this.root, date, sensorCount);
+        }
+        this.start = generator.randomFreePoint();
+    }
+
+    /**
+     * @return the directory of the map
+     */
+    File getRoot() {
+        return this.root;
+    }
+
+    /**
+     * @return a point outside the buildings where a drone can start
+     */
+    Point getStart() {
+        return this.start;
+    }
+
+    /**
+     * @param path the path of a file relative to the directory of the map
+     * @return the content of the file
+     */
+    private String read(String path) {
+
+        try {
+            return Files.readString(new File(this.root, path).toPath(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the buildings together with the confinement area, as App loads them
+     */
+    ArrayList<Polygon> loadNoFlyZones() {
+
+        var noFlyZones = App.parsePolygons(this.read("buildings/no-fly-zones.geojson"));
+        noFlyZones.add(App.getConfinementArea());
+        return noFlyZones;
+    }
+
+    /**
+     * @param date a day that has sensors
+     * @return the sensors of the day with their locations resolved
+     */
+    ArrayList<AirQualitySensor> loadSensors(LocalDate date) {
+
+        var path = String.format("maps/%04d/%02d/%02d/air-quality-data.json", date.getYear(),
+                date.getMonthValue(), date.getDayOfMonth());
+        try (var input = new FileInputStream(new File(this.root, path))) {
+            return AirQualitySensor.loadList(input, location -> {
+                location.resolve(this.read(
+                        "words/" + location.getWords().replace('.', '/') + "/details.json"));
+                return CompletableFuture.completedFuture(null);
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @param date a day that has sensors
+     * @return drone at the start position with the no-fly zones and sensors of the day
+     */
+    Drone createDrone(LocalDate date) {
+        return new Drone(this.start, this.loadNoFlyZones(), this.loadSensors(date));
+    }
+
+    @Override
+    public void close() throws IOException {
+        TestFiles.deleteRecursively(this.root);
+    }
+
+}
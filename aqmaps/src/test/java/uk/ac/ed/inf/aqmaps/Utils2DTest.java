@@ -0,0 +1,133 @@
+package uk.ac.ed.inf.aqmaps;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import com.mapbox.geojson.Point;
+import com.mapbox.geojson.Polygon;
+
+/**
+ * Checks that the overloads of Utils2D working with coordinates give the same answers as those
+ * working with points and polygons.
+ */
+public class Utils2DTest {
+
+    private static final int CASE_COUNT = 10000;
+    // An L-shaped building, concave so that a segment can pass its inner corner
+    private static final Polygon BUILDING = Polygon.fromLngLats(List.of(List.of(
+            Point.fromLngLat(-3.1900, 55.9440), Point.fromLngLat(-3.1880, 55.9440),
+            Point.fromLngLat(-3.1880, 55.9445), Point.fromLngLat(-3.1890, 55.9445),
+            Point.fromLngLat(-3.1890, 55.9455), Point.fromLngLat(-3.1900, 55.9455),
+            Point.fromLngLat(-3.1900, 55.9440))));
+
+    /**
+     * @param random the source of random numbers
+     * @return random point around the building
+     */
+    private static Point randomPoint(Random random) {
+        return Point.fromLngLat(-3.1910 + 0.004 * random.nextDouble(),
+                55.9430 + 0.0035 * random.nextDouble());
+    }
+
+    /**
+     * @param start   the start point of a line segment
+     * @param end     the end point of a line segment
+     * @param polygon a polygon
+     * @return true if the line segment intersects a side of the polygon, tested one side at a time
+     */
+    private static boolean intersectsSide(Point start, Point end, Polygon polygon) {
+
+        var ring = polygon.coordinates().get(0);
+        for (int i = 0; i + 1 < ring.size(); i++) {
+            if (Utils2D.lineIntersectLine(start, end, ring.get(i), ring.get(i + 1))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void coordinatesAreFlattenedInOrder() {
+
+        var coordinates = Utils2D.toCoordinates(BUILDING);
+        var ring = BUILDING.coordinates().get(0);
+
+        assertEquals(2 * ring.size(), coordinates.length);
+        for (int i = 0; i < ring.size(); i++) {
+            assertEquals(ring.get(i).longitude(), coordinates[2 * i], 0);
+            assertEquals(ring.get(i).latitude(), coordinates[2 * i + 1], 0);
+        }
+    }
+
+    @Test
+    public void distanceAndMovesMatchPointOverloads() {
+
+        var random = new Random(1);
+        for (int i = 0; i < CASE_COUNT; i++) {
+            var a = randomPoint(random);
+            var b = randomPoint(random);
+            var angle = 10 * random.nextInt(36);
+            var moved = Utils2D.movePoint(a, 0.0003, angle);
+
+            assertEquals(Utils2D.distance(a, b), Utils2D.distance(a.longitude(), a.latitude(),
+                    b.longitude(), b.latitude()), 0);
+            assertEquals(moved.longitude(), Utils2D.moveLongitude(a.longitude(), 0.0003, angle),
+                    0);
+            assertEquals(moved.latitude(), Utils2D.moveLatitude(a.latitude(), 0.0003, angle), 0);
+            assertEquals(0.0003, Utils2D.distance(a, moved), 1e-12);
+        }
+    }
+
+    @Test
+    public void lineIntersectionMatchesPointOverloads() {
+
+        var coordinates = Utils2D.toCoordinates(BUILDING);
+        var polygons = new ArrayList<Polygon>(List.of(BUILDING));
+        var random = new Random(2);
+        var intersecting = 0;
+
+        for (int i = 0; i < CASE_COUNT; i++) {
+            var start = randomPoint(random);
+            var end = randomPoint(random);
+            var expected = intersectsSide(start, end, BUILDING);
+
+            assertEquals(expected, Utils2D.lineIntersectPolygons(start, end, polygons));
+            assertEquals(expected, Utils2D.lineIntersectPolygon(start.longitude(),
+                    start.latitude(), end.longitude(), end.latitude(), coordinates));
+            if (expected) {
+                intersecting++;
+            }
+        }
+        assertTrue(intersecting > 0 && intersecting < CASE_COUNT);
+    }
+
+    @Test
+    public void pointInPolygonFollowsTheConcaveOutline() {
+
+        var coordinates = Utils2D.toCoordinates(BUILDING);
+
+        // Inside both arms of the L, and in the notch between them which is outside
+        assertTrue(Utils2D.pointInPolygon(-3.1885, 55.9442, coordinates));
+        assertTrue(Utils2D.pointInPolygon(-3.1895, 55.9450, coordinates));
+        assertFalse(Utils2D.pointInPolygon(-3.1885, 55.9450, coordinates));
+        assertFalse(Utils2D.pointInPolygon(-3.1905, 55.9442, coordinates));
+
+        // A segment from a point inside to a point outside crosses a side
+        var random = new Random(3);
+        for (int i = 0; i < CASE_COUNT; i++) {
+            var a = randomPoint(random);
+            var b = randomPoint(random);
+            var insideA = Utils2D.pointInPolygon(a.longitude(), a.latitude(), coordinates);
+            var insideB = Utils2D.pointInPolygon(b.longitude(), b.latitude(), coordinates);
+            if (insideA != insideB) {
+                assertTrue(intersectsSide(a, b, BUILDING));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,168 @@
+package uk.ac.ed.inf.aqmaps;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import com.mapbox.geojson.Point;
+
+/**
+ * Checks that the shortest polylines of the visibility graph go around the no-fly zones and are
+ * never shorter than the straight line, and that the paths of moves following them are valid and
+ * recorded as one leg search each.
+ */
+public class VisibilityGraphTest {
+
+    private static final LocalDate DATE = LocalDate.of(2031, 6, 4);
+    private static final MoveModel MOVES = Drone.MOVE_MODEL;
+    private static final double RANGE = Drone.READING_RANGE;
+    private static final double CELL_SIZE = Drone.SEARCH_CELL_SIZE;
+    private static final double MARGIN = 0.00005;
+
+    private TestScenario scenario;
+    private ObstacleIndex noFlyZones;
+    private ArrayList<Point> sensors;
+    private VisibilityGraph graph;
+    private SearchArena arena;
+    private RunMetrics metrics;
+
+    @Before
+    public void setUp() throws IOException {
+
+        this.scenario = new TestScenario(31, 12, 25, DATE);
+        this.noFlyZones = new ObstacleIndex(this.scenario.loadNoFlyZones());
+        this.sensors = AirQualitySensor.toPoints(this.scenario.loadSensors(DATE));
+        this.graph = new VisibilityGraph(this.noFlyZones, MARGIN);
+        this.metrics = new RunMetrics();
+        this.arena = new SearchArena();
+        this.arena.setMetrics(this.metrics);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        this.scenario.close();
+    }
+
+    /**
+     * @return the number of leg searches recorded in the metrics, whatever their outcome
+     */
+    private long countLegSearches() {
+
+        var count = 0L;
+        for (var outcome : SearchArena.Outcome.values()) {
+            count += this.metrics.getLegSearches(outcome);
+        }
+        return count;
+    }
+
+    @Test
+    public void everyCornerIsMovedToBothSides() {
+
+        var corners = 0;
+        for (var polygon : this.noFlyZones.getPolygons()) {
+            // The rings of the buildings repeat their first corner at the end, that of the
+            // confinement area does not, and every corner counts once
+            corners += new HashSet<Point>(polygon.coordinates().get(0)).size();
+        }
+        assertEquals(2 * corners, this.graph.getCornerCount());
+    }
+
+    @Test
+    public void waypointsGoAroundTheNoFlyZones() {
+
+        var detours = 0;
+        for (var start : this.sensors) {
+            for (var target : this.sensors) {
+                var waypoints = this.graph.findWaypoints(start, target);
+                if (start == target || waypoints == null) {
+                    continue;
+                }
+                assertEquals(target, waypoints.get(waypoints.size() - 1));
+                var from = start;
+                for (var waypoint : waypoints) {
+                    assertFalse(this.noFlyZones.lineIntersects(from, waypoint));
+                    from = waypoint;
+                }
+
+                // The straight line is the shortest polyline whenever it is clear
+                var straight = Utils2D.distance(start, target);
+                var shortest = this.graph.shortestDistance(start, target);
+                if (this.noFlyZones.lineIntersects(start, target)) {
+                    assertTrue(shortest > straight);
+                    detours++;
+                } else {
+                    assertEquals(1, waypoints.size());
+                    assertEquals(straight, shortest, 0);
+                }
+            }
+        }
+        assertTrue(detours > 0);
+    }
+
+    @Test
+    public void pathsAlongWaypointsAreValid() {
+
+        var start = this.scenario.getStart();
+        var searches = 0;
+        for (var target : this.sensors) {
+            var path = this.graph.findPathToPoint(start, target, RANGE, MOVES.getMoveLength(),
+                    MOVES, CELL_SIZE, this.arena);
+            searches++;
+
+            // However many parts the path was searched in, it counts as one leg
+            assertEquals(searches, countLegSearches());
+            assertSame(this.metrics, this.arena.getMetrics());
+            if (path == null) {
+                continue;
+            }
+            assertEquals(SearchArena.Outcome.FOUND, this.arena.getOutcome());
+            var points = path.getPoints();
+            var directions = path.getMoveDirections();
+            assertEquals(start, points.get(0));
+            for (int i = 0; i < directions.size(); i++) {
+                assertTrue(MOVES.isAllowed(directions.get(i)));
+                assertEquals(MOVES.getMoveLength(), Utils2D.distance(points.get(i),
+                        points.get(i + 1)), 1e-12);
+                assertFalse(this.noFlyZones.lineIntersects(points.get(i), points.get(i + 1)));
+            }
+            assertTrue(Utils2D.distance(points.get(points.size() - 1), target) < RANGE);
+        }
+        assertEquals(this.sensors.size(), this.metrics.getLegSearches(
+                SearchArena.Outcome.FOUND));
+        assertTrue(this.metrics.getNodesExpanded() > 0);
+    }
+
+    @Test
+    public void searchFromInsideBuildingIsOneFailedLegSearch() {
+
+        // No polyline leads out of a building, and neither does the direct search that follows
+        var building = this.noFlyZones.getPolygons().get(0);
+        var coordinates = Utils2D.toCoordinates(building);
+        var count = coordinates.length / 2 - 1;
+        var longitude = 0.0;
+        var latitude = 0.0;
+        for (int i = 0; i < count; i++) {
+            longitude += coordinates[2 * i] / count;
+            latitude += coordinates[2 * i + 1] / count;
+        }
+        var inside = Point.fromLngLat(longitude, latitude);
+        assertTrue(Utils2D.pointInPolygon(longitude, latitude, coordinates));
+
+        var path = this.graph.findPathToPoint(inside, this.scenario.getStart(), RANGE,
+                MOVES.getMoveLength(), MOVES, CELL_SIZE, this.arena);
+
+        assertNull(path);
+        assertEquals(1, countLegSearches());
+        assertEquals(1, this.metrics.getLegSearches(SearchArena.Outcome.UNREACHABLE));
+    }
+
+}